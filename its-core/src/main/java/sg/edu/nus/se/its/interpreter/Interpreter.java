@@ -6,6 +6,7 @@ import sg.edu.nus.se.its.model.Input;
 import sg.edu.nus.se.its.model.Memory;
 import sg.edu.nus.se.its.model.Operation;
 import sg.edu.nus.se.its.model.Program;
+import sg.edu.nus.se.its.model.SlotMemory;
 import sg.edu.nus.se.its.model.Variable;
 
 /**
@@ -29,4 +30,40 @@ public interface Interpreter {
 
   public void setTimeout(int timeout);
 
+  /**
+   * Creates the memory frame for executing the given function. Interpreters that opt into
+   * slot-indexed memory return a {@link SlotMemory} for the function's symbol table.
+   *
+   * @param function function to execute
+   * @return new, empty memory
+   */
+  public default Memory createMemory(Function function) {
+    return new Memory();
+  }
+
+  /**
+   * Evaluates the given expression to a long value. Arithmetic and comparison operations over
+   * numeric or character constants and numeric variables are evaluated without boxing, reading
+   * variables held unboxed by a {@link SlotMemory} directly; other expressions are executed and
+   * their result is converted.
+   *
+   * @param executable expression to evaluate
+   * @param memory current memory
+   * @return result as long
+   */
+  public default long executeAsLong(Executable executable, Memory memory) {
+    return PrimitiveEvaluator.evaluateLong(this, executable, memory);
+  }
+
+  /**
+   * Evaluates the given expression to a double value, like {@link #executeAsLong}.
+   *
+   * @param executable expression to evaluate
+   * @param memory current memory
+   * @return result as double
+   */
+  public default double executeAsDouble(Executable executable, Memory memory) {
+    return PrimitiveEvaluator.evaluateDouble(this, executable, memory);
+  }
+
 }
@@ -0,0 +1,220 @@
+package sg.edu.nus.se.its.interpreter;
+
+import java.util.List;
+import sg.edu.nus.se.its.model.Constant;
+import sg.edu.nus.se.its.model.Expression;
+import sg.edu.nus.se.its.model.Memory;
+import sg.edu.nus.se.its.model.Opcode;
+import sg.edu.nus.se.its.model.Operation;
+import sg.edu.nus.se.its.model.SlotMemory;
+import sg.edu.nus.se.its.model.Variable;
+
+/**
+ * Evaluates arithmetic and comparison expressions without boxing, for
+ * {@link Interpreter#executeAsLong} and {@link Interpreter#executeAsDouble}. Constants have the
+ * values of {@link Constant}, and variables are read from the primitive lane of a
+ * {@link SlotMemory}, or as boxed numbers through the interpreter. Integral operands are combined
+ * in 64-bit arithmetic, and an integral operand is converted to double if the other operand is
+ * floating. Comparisons yield 1 or 0.
+ *
+ * <p>Integer division and remainder differ between C and Python, so they are left to the
+ * interpreter, like division by zero and all other operators. Since only constants and variables
+ * are read before such an operator is found, the whole expression is then executed by the
+ * interpreter without side effects having happened twice.
+ */
+final class PrimitiveEvaluator {
+
+  private final Interpreter interpreter;
+  private final Memory memory;
+
+  /**
+   * Value of the last evaluated expression, in longValue unless it is floating.
+   */
+  private boolean floating;
+  private long longValue;
+  private double doubleValue;
+
+  private PrimitiveEvaluator(Interpreter interpreter, Memory memory) {
+    this.interpreter = interpreter;
+    this.memory = memory;
+  }
+
+  static long evaluateLong(Interpreter interpreter, Executable executable, Memory memory) {
+    PrimitiveEvaluator evaluator = new PrimitiveEvaluator(interpreter, memory);
+    if (evaluator.evaluate(executable)) {
+      return evaluator.floating ? (long) evaluator.doubleValue : evaluator.longValue;
+    }
+    return SlotMemory.toLong(interpreter.execute(executable, memory));
+  }
+
+  static double evaluateDouble(Interpreter interpreter, Executable executable, Memory memory) {
+    PrimitiveEvaluator evaluator = new PrimitiveEvaluator(interpreter, memory);
+    if (evaluator.evaluate(executable)) {
+      return evaluator.floating ? evaluator.doubleValue : evaluator.longValue;
+    }
+    return SlotMemory.toDouble(interpreter.execute(executable, memory));
+  }
+
+  /**
+   * Evaluates the given expression into the value fields.
+   *
+   * @return false if the expression has to be executed by the interpreter
+   */
+  private boolean evaluate(Executable executable) {
+    if (executable instanceof Constant) {
+      return readConstant((Constant) executable);
+    } else if (executable instanceof Variable) {
+      return readVariable((Variable) executable);
+    } else if (executable instanceof Operation) {
+      return evaluateOperation((Operation) executable);
+    }
+    return false;
+  }
+
+  private boolean readConstant(Constant constant) {
+    switch (constant.getKind()) {
+      case INTEGER:
+      case CHARACTER:
+        return setLong(constant.getLongValue());
+      case FLOATING:
+        return setDouble(constant.getDoubleValue());
+      default:
+        return false;
+    }
+  }
+
+  private boolean readVariable(Variable variable) {
+    if (memory instanceof SlotMemory) {
+      SlotMemory frame = (SlotMemory) memory;
+      int slot = frame.getSymbolTable().slotOf(variable.getName());
+      if (frame.isPrimitive(slot)) {
+        return frame.getValueType(slot) == SlotMemory.ValueType.DOUBLE
+            ? setDouble(frame.getDouble(slot)) : setLong(frame.getLong(slot));
+      }
+    }
+    Object value = interpreter.execute(variable, memory);
+    if (value instanceof Double || value instanceof Float) {
+      return setDouble(((Number) value).doubleValue());
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+        || value instanceof Byte) {
+      return setLong(((Number) value).longValue());
+    } else if (value instanceof Character) {
+      return setLong((Character) value);
+    } else if (value instanceof Boolean) {
+      return setLong((Boolean) value ? 1 : 0);
+    }
+    return false;
+  }
+
+  private boolean evaluateOperation(Operation operation) {
+    Opcode opcode = operation.getOpcode();
+    List<Expression> args = operation.getArgs();
+    if (args.size() == 1 && (opcode == Opcode.ADD || opcode == Opcode.SUB)) {
+      if (!evaluate(args.get(0))) {
+        return false;
+      }
+      if (opcode == Opcode.SUB) {
+        longValue = -longValue;
+        doubleValue = -doubleValue;
+      }
+      return true;
+    }
+    if (args.size() != 2 || !isBinary(opcode) || !evaluate(args.get(0))) {
+      return false;
+    }
+    boolean leftFloating = floating;
+    long leftLong = longValue;
+    double leftDouble = doubleValue;
+    if (!evaluate(args.get(1))) {
+      return false;
+    }
+    if (leftFloating || floating) {
+      return combine(opcode, leftFloating ? leftDouble : leftLong,
+          floating ? doubleValue : longValue);
+    }
+    return combine(opcode, leftLong, longValue);
+  }
+
+  private static boolean isBinary(Opcode opcode) {
+    switch (opcode) {
+      case ADD:
+      case SUB:
+      case MUL:
+      case DIV:
+      case FLOOR_DIV:
+        return true;
+      default:
+        return opcode.getCategory() == Opcode.Category.COMPARISON;
+    }
+  }
+
+  private boolean combine(Opcode opcode, long left, long right) {
+    switch (opcode) {
+      case ADD:
+        return setLong(left + right);
+      case SUB:
+        return setLong(left - right);
+      case MUL:
+        return setLong(left * right);
+      case FLOOR_DIV:
+        return right != 0 && setLong(Math.floorDiv(left, right));
+      case LT:
+        return setBoolean(left < right);
+      case LE:
+        return setBoolean(left <= right);
+      case GT:
+        return setBoolean(left > right);
+      case GE:
+        return setBoolean(left >= right);
+      case EQ:
+        return setBoolean(left == right);
+      case NE:
+        return setBoolean(left != right);
+      default:
+        return false;
+    }
+  }
+
+  private boolean combine(Opcode opcode, double left, double right) {
+    switch (opcode) {
+      case ADD:
+        return setDouble(left + right);
+      case SUB:
+        return setDouble(left - right);
+      case MUL:
+        return setDouble(left * right);
+      case DIV:
+        return right != 0 && setDouble(left / right);
+      case LT:
+        return setBoolean(left < right);
+      case LE:
+        return setBoolean(left <= right);
+      case GT:
+        return setBoolean(left > right);
+      case GE:
+        return setBoolean(left >= right);
+      case EQ:
+        return setBoolean(left == right);
+      case NE:
+        return setBoolean(left != right);
+      default:
+        return false;
+    }
+  }
+
+  private boolean setLong(long value) {
+    floating = false;
+    longValue = value;
+    return true;
+  }
+
+  private boolean setDouble(double value) {
+    floating = true;
+    doubleValue = value;
+    return true;
+  }
+
+  private boolean setBoolean(boolean value) {
+    return setLong(value ? 1 : 0);
+  }
+}
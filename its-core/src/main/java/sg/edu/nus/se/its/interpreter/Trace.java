@@ -1,36 +1,360 @@
 package sg.edu.nus.se.its.interpreter;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 import sg.edu.nus.se.its.model.Memory;
 
 /**
- * Execution trace as result of program execution during interpretation.
+ * Execution trace as result of program execution during interpretation. The entries are indexed by
+ * location when they are added, so the occurrences of a location are found without scanning the
+ * trace. A trace can be read by any number of threads once it is complete.
+ *
+ * <p>By default, each entry keeps the memory it was added with. A delta-encoded trace instead
+ * stores a copy of the memory only at every n-th entry (keyframe), and the changed variables at
+ * all other entries, which is much smaller when a location updates few variables. Their memory is
+ * reconstructed when {@link TraceEntry#getMem()} is called.
  */
 public class Trace implements Iterable<TraceEntry> {
   private List<TraceEntry> entries = new ArrayList<>();
 
+  /**
+   * Modifiable view of the entries, see {@link #getEntries()}.
+   */
+  private final List<TraceEntry> entryList = new EntryList();
+
+  /**
+   * Indices of the entries of each location, in the order of the trace.
+   */
+  private final Map<Integer, Occurrences> occurrences = new HashMap<>();
+
+  /**
+   * Cursor of {@link #getUnique(int)}, created on first use.
+   */
+  private Cursor uniqueCursor;
+
+  /**
+   * Number of entries per keyframe, or 0 if each entry keeps its memory.
+   */
+  private final int keyframeInterval;
+
+  /**
+   * State of the last added entry of a delta-encoded trace, to compute the next changes.
+   */
+  private Memory current;
+
+  /**
+   * Whether the trace has delta entries, which refer to their indices.
+   */
+  private boolean hasDeltas;
+
+  /**
+   * Creates a trace whose entries keep the memory they are added with.
+   */
+  public Trace() {
+    this.keyframeInterval = 0;
+  }
+
+  /**
+   * Creates a delta-encoded trace with a keyframe at every given number of entries. The memories
+   * passed to {@link #add(String, int, Memory)} are not retained, so they may be modified later.
+   *
+   * @param keyframeInterval - number of entries per keyframe, at least 1
+   */
+  public Trace(int keyframeInterval) {
+    if (keyframeInterval < 1) {
+      throw new RuntimeException(String.format("Invalid keyframe interval %d", keyframeInterval));
+    }
+    this.keyframeInterval = keyframeInterval;
+  }
+
+  /**
+   * Growable list of entry indices of one location. Locations are numbered by their first
+   * occurrence, so that cursors can keep their positions in an array.
+   */
+  private static final class Occurrences {
+    private final int slot;
+    private int[] indices = new int[4];
+    private int size;
+
+    Occurrences(int slot) {
+      this.slot = slot;
+    }
+
+    void add(int index) {
+      if (size == indices.length) {
+        indices = Arrays.copyOf(indices, size * 2);
+      }
+      indices[size++] = index;
+    }
+  }
+
+  /**
+   * Position in the occurrences of each location of a trace. Each cursor returns every entry of a
+   * location once, in the order of the trace, independently of other cursors. A cursor is not
+   * thread-safe, but several cursors can read the same trace concurrently.
+   */
+  public final class Cursor {
+    /**
+     * Number of returned entries by location slot, sized on first use.
+     */
+    private int[] positions = new int[0];
+
+    private Cursor() {}
+
+    /**
+     * Returns the next entry for the given location that this cursor has not returned yet.
+     *
+     * @param location - program location to match
+     * @return TraceEntry object, or null if all entries of the location were returned
+     */
+    public TraceEntry next(int location) {
+      Occurrences locationOccurrences = occurrences.get(location);
+      if (locationOccurrences == null) {
+        return null;
+      }
+      int slot = locationOccurrences.slot;
+      int position = slot < positions.length ? positions[slot] : 0;
+      if (position >= locationOccurrences.size) {
+        return null;
+      }
+      if (slot >= positions.length) {
+        positions = Arrays.copyOf(positions, Math.max(slot + 1, occurrences.size()));
+      }
+      positions[slot] = position + 1;
+      return entries.get(locationOccurrences.indices[position]);
+    }
+
+    /**
+     * Returns whether {@link #next(int)} would return an entry for the given location.
+     */
+    public boolean hasNext(int location) {
+      Occurrences locationOccurrences = occurrences.get(location);
+      if (locationOccurrences == null) {
+        return false;
+      }
+      int slot = locationOccurrences.slot;
+      return (slot < positions.length ? positions[slot] : 0) < locationOccurrences.size;
+    }
+  }
+
+  /**
+   * Appends an entry to the trace.
+   */
   public void add(String fnc, int loc, Memory mem) {
-    entries.add(new TraceEntry(fnc, loc, mem));
+    int index = entries.size();
+    addOccurrence(loc, index);
+    if (keyframeInterval == 0) {
+      entries.add(new TraceEntry(fnc, loc, mem));
+    } else if (index % keyframeInterval == 0 || mem == null || current == null) {
+      entries.add(new TraceEntry(fnc, loc, mem == null ? null : mem.copy()));
+      current = mem == null ? null : mem.copy();
+    } else {
+      addDelta(fnc, loc, index, mem);
+    }
+  }
+
+  /**
+   * Adds an entry with the differences between the given memory and the previous one.
+   */
+  private void addDelta(String fnc, int loc, int index, Memory mem) {
+    Map<String, Object> changes = new HashMap<>(4);
+    int retained = 0;
+    for (Map.Entry<String, Object> variable : mem.entrySet()) {
+      String name = variable.getKey();
+      Object value = variable.getValue();
+      if (current.containsKey(name)) {
+        retained++;
+        if (Objects.equals(current.get(name), value)) {
+          continue;
+        }
+      }
+      changes.put(name, value);
+    }
+    Set<String> removed = null;
+    if (retained < current.size()) {
+      removed = new HashSet<>(4);
+      for (String name : current.keySet()) {
+        if (!mem.containsKey(name)) {
+          removed.add(name);
+        }
+      }
+      for (String name : removed) {
+        current.remove(name);
+      }
+    }
+    current.putAll(changes);
+    entries.add(new TraceEntry(fnc, loc, this, index, changes, removed));
+    hasDeltas = true;
+  }
+
+  private void addOccurrence(int loc, int index) {
+    Occurrences locationOccurrences = occurrences.get(loc);
+    if (locationOccurrences == null) {
+      locationOccurrences = new Occurrences(occurrences.size());
+      occurrences.put(loc, locationOccurrences);
+    }
+    locationOccurrences.add(index);
+  }
+
+  /**
+   * Turns the delta entries into entries that keep their memory, before the entries are moved.
+   * The next added entry is a keyframe.
+   */
+  private void materialize() {
+    current = null;
+    if (!hasDeltas) {
+      return;
+    }
+    Memory mem = null;
+    for (TraceEntry entry : entries) {
+      if (!entry.isDelta()) {
+        mem = entry.getStoredMem();
+        continue;
+      }
+      Memory copy = mem == null ? new Memory() : mem.copy();
+      if (entry.getStoredRemoved() != null) {
+        for (String name : entry.getStoredRemoved()) {
+          copy.remove(name);
+        }
+      }
+      copy.putAll(entry.getStoredChanges());
+      entry.materialize(copy);
+      mem = copy;
+    }
+    hasDeltas = false;
+  }
+
+  /**
+   * Rebuilds the occurrences of the locations after the entries were modified, and restarts
+   * {@link #getUnique(int)}.
+   */
+  private void reindex() {
+    occurrences.clear();
+    uniqueCursor = null;
+    for (int i = 0; i < entries.size(); i++) {
+      addOccurrence(entries.get(i).getLocation(), i);
+    }
+  }
+
+  /**
+   * List of the entries that keeps the occurrences up to date when it is modified.
+   */
+  private final class EntryList extends AbstractList<TraceEntry> {
+    @Override
+    public TraceEntry get(int index) {
+      return entries.get(index);
+    }
+
+    @Override
+    public int size() {
+      return entries.size();
+    }
+
+    @Override
+    public TraceEntry set(int index, TraceEntry entry) {
+      materialize();
+      TraceEntry previous = entries.set(index, entry);
+      reindex();
+      return previous;
+    }
+
+    @Override
+    public void add(int index, TraceEntry entry) {
+      materialize();
+      entries.add(index, entry);
+      modCount++;
+      reindex();
+    }
+
+    @Override
+    public TraceEntry remove(int index) {
+      materialize();
+      TraceEntry previous = entries.remove(index);
+      modCount++;
+      reindex();
+      return previous;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+      materialize();
+      entries.subList(fromIndex, toIndex).clear();
+      modCount++;
+      reindex();
+    }
+  }
+
+  /**
+   * Reconstructs the memory of the delta entry at the given index from the preceding keyframe.
+   */
+  Memory reconstruct(int index) {
+    int keyframe = index;
+    while (entries.get(keyframe).isDelta()) {
+      keyframe--;
+    }
+    Memory mem = entries.get(keyframe).getStoredMem().copy();
+    for (int i = keyframe + 1; i <= index; i++) {
+      TraceEntry entry = entries.get(i);
+      if (entry.getStoredRemoved() != null) {
+        for (String name : entry.getStoredRemoved()) {
+          mem.remove(name);
+        }
+      }
+      mem.putAll(entry.getStoredChanges());
+    }
+    return mem;
+  }
+
+  /**
+   * Returns the value of a variable at the delta entry at the given index, looking back through
+   * the changes to the preceding keyframe.
+   */
+  Object valueAt(int index, String variableName) {
+    for (int i = index; ; i--) {
+      TraceEntry entry = entries.get(i);
+      if (!entry.isDelta()) {
+        return entry.getStoredMem().getValueForVariable(variableName);
+      }
+      Map<String, Object> changes = entry.getStoredChanges();
+      if (changes.containsKey(variableName)) {
+        return changes.get(variableName);
+      }
+      if (entry.getStoredRemoved() != null && entry.getStoredRemoved().contains(variableName)) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Returns a new cursor at the start of the trace.
+   */
+  public Cursor cursor() {
+    return new Cursor();
   }
 
   /**
    * Returns the matching TraceEntry for the given location id. We iterate trace entries in a way
    * that every TracEntry object is only returned once for the matching location. If a TraceEntry
-   * was already returned then this method would search for the next matching entry.
+   * was already returned then this method would search for the next matching entry. The returned
+   * entries are tracked by a cursor of this trace; independent readers use {@link #cursor()}.
    *
    * @param location - program location to match
    * @return TraceEntry object
    */
-  public TraceEntry getUnique(int location) {
-    for (TraceEntry entry : getEntries()) {
-      if (entry.getLocation() == location && entry.setChecked()) {
-        return entry;
-      }
+  public synchronized TraceEntry getUnique(int location) {
+    if (uniqueCursor == null) {
+      uniqueCursor = new Cursor();
     }
-    return null;
+    return uniqueCursor.next(location);
   }
 
   /**
@@ -41,9 +365,10 @@ public class Trace implements Iterable<TraceEntry> {
    */
   public List<TraceEntry> getAll(int location) {
     List<TraceEntry> matchingTraceEntry = new ArrayList<>();
-    for (TraceEntry entry : getEntries()) {
-      if (entry.getLocation() == location) {
-        matchingTraceEntry.add(entry);
+    Occurrences locationOccurrences = occurrences.get(location);
+    if (locationOccurrences != null) {
+      for (int i = 0; i < locationOccurrences.size; i++) {
+        matchingTraceEntry.add(entries.get(locationOccurrences.indices[i]));
       }
     }
     return matchingTraceEntry;
@@ -55,7 +380,7 @@ public class Trace implements Iterable<TraceEntry> {
 
   @Override
   public Iterator<TraceEntry> iterator() {
-    return entries.iterator();
+    return getEntries().iterator();
   }
 
   @Override
@@ -65,8 +390,13 @@ public class Trace implements Iterable<TraceEntry> {
     return String.format("Trace [%s]", entryString);
   }
 
+  /**
+   * Returns the entries in the order of the trace. The list can be modified, which rebuilds the
+   * index of the entries, turns delta entries into entries that keep their memory, and restarts
+   * {@link #getUnique(int)}. Cursors created before the modification must not be used after it.
+   */
   public List<TraceEntry> getEntries() {
-    return entries;
+    return entryList;
   }
 
   public int size() {
@@ -1,9 +1,14 @@
 package sg.edu.nus.se.its.interpreter;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import sg.edu.nus.se.its.model.Memory;
 
 /**
- * Entry to a trace object.
+ * Entry to a trace object. In a delta-encoded trace, see {@link Trace#Trace(int)}, an entry that is
+ * no keyframe holds only the variables that changed since the previous entry, and its memory is
+ * reconstructed on demand.
  */
 public class TraceEntry {
 
@@ -14,8 +19,24 @@ public class TraceEntry {
    */
   private int location;
 
+  /**
+   * Memory of the entry, which is not set for a delta entry.
+   */
   private Memory mem;
 
+  /**
+   * Trace and position of a delta entry, from which its memory is reconstructed.
+   */
+  private Trace trace;
+  private int index;
+
+  /**
+   * Values of the variables that changed since the previous entry, and the variables that were
+   * removed, or null if none were removed. Only set for delta entries.
+   */
+  private Map<String, Object> changes;
+  private Set<String> removed;
+
   /**
    * Flag to determine whether this trace entry was already checked during error localization.
    */
@@ -31,6 +52,19 @@ public class TraceEntry {
     this.isChecked = false;
   }
 
+  /**
+   * Creates a delta entry at the given index of the trace.
+   */
+  TraceEntry(String functionName, int loc, Trace trace, int index, Map<String, Object> changes,
+      Set<String> removed) {
+    this.functionName = functionName;
+    this.location = loc;
+    this.trace = trace;
+    this.index = index;
+    this.changes = changes;
+    this.removed = removed;
+  }
+
   public String getFunctionName() {
     return functionName;
   }
@@ -42,15 +76,87 @@ public class TraceEntry {
     return location;
   }
 
+  /**
+   * Returns the memory at this entry. The memory of a delta entry is reconstructed from the
+   * preceding keyframe on each call, so reading single variables with {@link #getValueForVariable}
+   * is cheaper.
+   */
   public Memory getMem() {
+    return trace == null ? mem : trace.reconstruct(index);
+  }
+
+  /**
+   * Returns the value of the given variable at this entry, or null if it has no value. A delta
+   * entry looks the variable up in the changes back to the preceding keyframe, without
+   * reconstructing the memory.
+   */
+  public Object getValueForVariable(String variableName) {
+    if (trace != null) {
+      return trace.valueAt(index, variableName);
+    }
+    return mem == null ? null : mem.getValueForVariable(variableName);
+  }
+
+  /**
+   * Returns whether this entry holds only the changes since the previous entry.
+   */
+  public boolean isDelta() {
+    return trace != null;
+  }
+
+  /**
+   * Returns the values of the variables that changed since the previous entry, or null if this is
+   * no delta entry.
+   */
+  public Map<String, Object> getChanges() {
+    return changes == null ? null : Collections.unmodifiableMap(changes);
+  }
+
+  /**
+   * Returns the variables that were removed since the previous entry, or null if this is no delta
+   * entry.
+   */
+  public Set<String> getRemoved() {
+    if (trace == null) {
+      return null;
+    }
+    return removed == null ? Collections.emptySet() : Collections.unmodifiableSet(removed);
+  }
+
+  /**
+   * Turns a delta entry into an entry that keeps the given memory, when the entries of its trace
+   * are moved.
+   */
+  void materialize(Memory mem) {
+    this.mem = mem;
+    this.trace = null;
+    this.changes = null;
+    this.removed = null;
+  }
+
+  /**
+   * Stored state without copies, for the reconstruction by the trace.
+   */
+  Memory getStoredMem() {
     return mem;
   }
 
+  Map<String, Object> getStoredChanges() {
+    return changes;
+  }
+
+  Set<String> getStoredRemoved() {
+    return removed;
+  }
+
   /**
    * Sets the "isChecked" flag to true and returns whether there was any change in its value.
    *
    * @return true if the trace entry was previously unchecked, otherwise false
+   * @deprecated {@link Trace#getUnique(int)} no longer marks entries; use a {@link Trace.Cursor}
+   *     to visit each entry of a location once
    */
+  @Deprecated
   public boolean setChecked() {
     boolean returnValue = !isChecked;
     isChecked = true;
@@ -59,6 +165,7 @@ public class TraceEntry {
 
   @Override
   public String toString() {
-    return String.format("(fnc=%s, loc=%d, mem=%s)", this.functionName, this.location, this.mem);
+    return String.format("(fnc=%s, loc=%d, mem=%s)", this.functionName, this.location,
+        getMem());
   }
 }
@@ -0,0 +1,400 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.Arrays;
+
+/**
+ * Dominator tree, post-dominator tree and natural loops of a {@link ControlFlowGraph}. All methods
+ * take and return indices of the graph, which are only valid as long as the graph is not modified;
+ * {@link Function#getCfgAnalysis()} therefore drops its analysis on every change of the graph.
+ *
+ * <p>Dominators are computed with the iterative algorithm of Cooper, Harvey and Kennedy, which is
+ * near-linear on the reducible graphs produced from structured code. Post-dominators are computed
+ * on the reversed graph with a virtual exit that succeeds every location without transitions.
+ * Locations that are unreachable from the entry have no dominators, and locations that cannot
+ * reach any exit have no post-dominators.
+ */
+public class CfgAnalysis {
+
+  /**
+   * Marker for a missing index.
+   */
+  public static final int NONE = ControlFlowGraph.NONE;
+
+  private static final int[] EMPTY = new int[0];
+
+  private final ControlFlowGraph cfg;
+
+  private final Tree dominators;
+
+  private final Tree postDominators;
+
+  /**
+   * Header index of the innermost loop containing each index, or NONE.
+   */
+  private final int[] innermostLoop;
+
+  /**
+   * Number of loops containing each index.
+   */
+  private final int[] depths;
+
+  /**
+   * Sorted body indices for every loop header, or null.
+   */
+  private final int[][] loopBodies;
+
+  private final int[] loopHeaders;
+
+  /**
+   * Analyzes the given graph.
+   *
+   * @param cfg control flow graph
+   * @param entry index of the entry location, or NONE
+   */
+  public CfgAnalysis(ControlFlowGraph cfg, int entry) {
+    this.cfg = cfg;
+    int size = cfg.size();
+    int exit = size;
+    int[][] successors = new int[size + 1][];
+    int[][] predecessors = new int[size + 1][];
+    int[][] reverseSuccessors = new int[size + 1][];
+    int[][] reversePredecessors = new int[size + 1][];
+    int exitCount = 0;
+    for (int i = 0; i < size; i++) {
+      successors[i] = successorsOf(i);
+      predecessors[i] = cfg.predecessors(i);
+      if (successors[i].length == 0) {
+        exitCount++;
+      }
+    }
+    successors[exit] = EMPTY;
+    predecessors[exit] = EMPTY;
+    int[] exits = new int[exitCount];
+    for (int i = 0, j = 0; i < size; i++) {
+      reverseSuccessors[i] = predecessors[i];
+      if (successors[i].length == 0) {
+        exits[j++] = i;
+        reversePredecessors[i] = new int[] {exit};
+      } else {
+        reversePredecessors[i] = successors[i];
+      }
+    }
+    reverseSuccessors[exit] = exits;
+    reversePredecessors[exit] = EMPTY;
+
+    this.dominators = new Tree(entry, successors, predecessors);
+    this.postDominators = new Tree(exit, reverseSuccessors, reversePredecessors);
+
+    this.innermostLoop = new int[size];
+    this.depths = new int[size];
+    this.loopBodies = new int[size][];
+    Arrays.fill(innermostLoop, NONE);
+    int[] marks = new int[size];
+    int[] worklist = new int[size];
+    int headerCount = 0;
+    for (int header = 0; header < size; header++) {
+      if (computeLoop(header, predecessors, marks, worklist)) {
+        headerCount++;
+      }
+    }
+    this.loopHeaders = new int[headerCount];
+    for (int header = 0, j = 0; header < size; header++) {
+      if (loopBodies[header] != null) {
+        loopHeaders[j++] = header;
+      }
+    }
+  }
+
+  public ControlFlowGraph getCfg() {
+    return cfg;
+  }
+
+  /**
+   * Returns whether the given index is reachable from the entry.
+   */
+  public boolean isReachable(int index) {
+    return dominators.contains(index);
+  }
+
+  /**
+   * Returns the immediate dominator of the given index, or NONE for the entry and unreachable
+   * indices.
+   */
+  public int immediateDominator(int index) {
+    return dominators.parent(index);
+  }
+
+  /**
+   * Returns whether the first index dominates the second one, i.e., whether every path from the
+   * entry to the second index passes the first one. Every reachable index dominates itself.
+   */
+  public boolean dominates(int dominator, int index) {
+    return dominators.isAncestor(dominator, index);
+  }
+
+  /**
+   * Returns the immediate post-dominator of the given index, or NONE if the index is an exit or
+   * cannot reach an exit. For a branching location, this is the location where the branches join.
+   */
+  public int immediatePostDominator(int index) {
+    int parent = postDominators.parent(index);
+    return parent == cfg.size() ? NONE : parent;
+  }
+
+  /**
+   * Returns whether the first index post-dominates the second one, i.e., whether every path from
+   * the second index to an exit passes the first one.
+   */
+  public boolean postDominates(int postDominator, int index) {
+    return postDominators.isAncestor(postDominator, index);
+  }
+
+  /**
+   * Returns the indices of all loop headers, in ascending order.
+   */
+  public int[] getLoopHeaders() {
+    return loopHeaders.clone();
+  }
+
+  /**
+   * Returns whether the given index is the header of a natural loop.
+   */
+  public boolean isLoopHeader(int index) {
+    checkIndex(index);
+    return loopBodies[index] != null;
+  }
+
+  /**
+   * Returns the indices of the natural loop with the given header, including the header, in
+   * ascending order, or an empty array if the index is no loop header. Loops sharing a header are
+   * merged.
+   */
+  public int[] getLoopBody(int header) {
+    return isLoopHeader(header) ? loopBodies[header].clone() : EMPTY;
+  }
+
+  /**
+   * Returns the header of the innermost loop containing the given index, or NONE.
+   */
+  public int innermostLoopHeader(int index) {
+    checkIndex(index);
+    return innermostLoop[index];
+  }
+
+  /**
+   * Returns the number of loops containing the given index, i.e., 0 outside of any loop.
+   */
+  public int nestingDepth(int index) {
+    checkIndex(index);
+    return depths[index];
+  }
+
+  private int[] successorsOf(int index) {
+    int t = cfg.successor(index, true);
+    int f = cfg.successor(index, false);
+    if (t == NONE) {
+      return f == NONE ? EMPTY : new int[] {f};
+    }
+    return f == NONE || f == t ? new int[] {t} : new int[] {t, f};
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= cfg.size()) {
+      throw new IndexOutOfBoundsException(
+          String.format("Index %d out of bounds for size %d", index, cfg.size()));
+    }
+  }
+
+  /**
+   * Collects the natural loop of the given header, i.e., all indices that reach a back edge into
+   * the header without passing it, and updates the depth and the innermost loop of its body.
+   *
+   * @param marks marks the body of the loop with the given header by header + 1
+   * @param worklist buffer of the graph size
+   * @return whether the index is a loop header
+   */
+  private boolean computeLoop(int header, int[][] predecessors, int[] marks, int[] worklist) {
+    if (!isReachable(header)) {
+      return false;
+    }
+    int mark = header + 1;
+    int count = 0;
+    for (int latch : predecessors[header]) {
+      if (!dominates(header, latch)) {
+        continue;
+      }
+      if (count == 0) {
+        marks[header] = mark;
+        worklist[count++] = header;
+      }
+      if (marks[latch] != mark) {
+        marks[latch] = mark;
+        worklist[count++] = latch;
+      }
+    }
+    if (count == 0) {
+      return false;
+    }
+    for (int i = 1; i < count; i++) {
+      for (int pred : predecessors[worklist[i]]) {
+        if (marks[pred] != mark && isReachable(pred)) {
+          marks[pred] = mark;
+          worklist[count++] = pred;
+        }
+      }
+    }
+    int[] body = Arrays.copyOf(worklist, count);
+    Arrays.sort(body);
+    for (int index : body) {
+      depths[index]++;
+      // a loop nested in another loop has a smaller body
+      if (innermostLoop[index] == NONE || loopBodies[innermostLoop[index]].length > count) {
+        innermostLoop[index] = header;
+      }
+    }
+    loopBodies[header] = body;
+    return true;
+  }
+
+  /**
+   * Dominator tree over the nodes reachable from a root, with DFS intervals for constant-time
+   * ancestor queries.
+   */
+  private static final class Tree {
+    private final int[] parents;
+    private final int[] enter;
+    private final int[] exit;
+
+    Tree(int root, int[][] successors, int[][] predecessors) {
+      int size = successors.length;
+      parents = new int[size];
+      enter = new int[size];
+      exit = new int[size];
+      Arrays.fill(parents, NONE);
+      if (root == NONE) {
+        return;
+      }
+
+      int[] postorder = new int[size];
+      Arrays.fill(postorder, NONE);
+      int[] order = postorder(root, successors, postorder);
+
+      parents[root] = root;
+      boolean changed = true;
+      while (changed) {
+        changed = false;
+        for (int i = order.length - 2; i >= 0; i--) {
+          int node = order[i];
+          int idom = NONE;
+          for (int pred : predecessors[node]) {
+            if (parents[pred] == NONE) {
+              continue;
+            }
+            idom = idom == NONE ? pred : intersect(pred, idom, postorder);
+          }
+          if (parents[node] != idom) {
+            parents[node] = idom;
+            changed = true;
+          }
+        }
+      }
+      parents[root] = NONE;
+      number(root, order);
+    }
+
+    boolean contains(int node) {
+      return exit[node] != 0;
+    }
+
+    int parent(int node) {
+      return parents[node];
+    }
+
+    boolean isAncestor(int ancestor, int node) {
+      return contains(ancestor) && contains(node) && enter[ancestor] <= enter[node]
+          && exit[node] <= exit[ancestor];
+    }
+
+    private int intersect(int first, int second, int[] postorder) {
+      while (first != second) {
+        while (postorder[first] < postorder[second]) {
+          first = parents[first];
+        }
+        while (postorder[second] < postorder[first]) {
+          second = parents[second];
+        }
+      }
+      return first;
+    }
+
+    /**
+     * Returns the reachable nodes in postorder, and stores the postorder number of each node.
+     */
+    private static int[] postorder(int root, int[][] successors, int[] numbers) {
+      int[] order = new int[successors.length];
+      int count = 0;
+      int[] stack = new int[successors.length];
+      int[] next = new int[successors.length];
+      boolean[] visited = new boolean[successors.length];
+      int top = 0;
+      stack[0] = root;
+      visited[root] = true;
+      while (top >= 0) {
+        int node = stack[top];
+        if (next[node] < successors[node].length) {
+          int succ = successors[node][next[node]++];
+          if (!visited[succ]) {
+            visited[succ] = true;
+            stack[++top] = succ;
+          }
+        } else {
+          top--;
+          numbers[node] = count;
+          order[count++] = node;
+        }
+      }
+      return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Assigns DFS enter and exit times (starting at 1) over the tree.
+     */
+    private void number(int root, int[] nodes) {
+      int size = parents.length;
+      int[] childCounts = new int[size + 1];
+      for (int node : nodes) {
+        if (parents[node] != NONE) {
+          childCounts[parents[node] + 1]++;
+        }
+      }
+      for (int i = 0; i < size; i++) {
+        childCounts[i + 1] += childCounts[i];
+      }
+      int[] children = new int[nodes.length];
+      int[] fill = Arrays.copyOf(childCounts, size);
+      for (int node : nodes) {
+        if (parents[node] != NONE) {
+          children[fill[parents[node]]++] = node;
+        }
+      }
+
+      int[] stack = new int[nodes.length];
+      int[] next = Arrays.copyOf(childCounts, size);
+      int top = 0;
+      int clock = 1;
+      stack[0] = root;
+      enter[root] = clock++;
+      while (top >= 0) {
+        int node = stack[top];
+        if (next[node] < childCounts[node + 1]) {
+          int child = children[next[node]++];
+          enter[child] = clock++;
+          stack[++top] = child;
+        } else {
+          exit[node] = clock++;
+          top--;
+        }
+      }
+    }
+  }
+}
@@ -1,7 +1,11 @@
 package sg.edu.nus.se.its.model;
 
+import java.io.IOException;
+import java.math.BigInteger;
 import java.util.List;
 import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import sg.edu.nus.se.its.interpreter.Interpreter;
 
 /**
@@ -9,8 +13,51 @@ import sg.edu.nus.se.its.interpreter.Interpreter;
  */
 public class Constant extends Expression {
 
+  /**
+   * Kinds of constant literals.
+   */
+  public enum Kind {
+    /**
+     * Integer literal in C or Python syntax, e.g., 42, -1, 010 (octal), 0x1F, 0b101, 0o17 or 10UL.
+     */
+    INTEGER,
+    /**
+     * Floating point literal, e.g., 1.5, .5, 1e-3 or 1.5f.
+     */
+    FLOATING,
+    /**
+     * Character literal in single quotes with C escape sequences, e.g., 'a', '\n' or '\x41'.
+     */
+    CHARACTER,
+    /**
+     * String literal in double quotes, or in single quotes unless it is a single character, as in
+     * Python.
+     */
+    STRING,
+    /**
+     * Any other value, e.g., the markers "?" and "EOF".
+     */
+    OTHER
+  }
+
+  /**
+   * Sign, digits with radix prefix, and C suffix of an integer literal.
+   */
+  private static final Pattern INTEGER = Pattern.compile(
+      "([-+]?)(0[xX][0-9a-fA-F]+|0[bB][01]+|0[oO][0-7]+|0[0-7]*|[1-9]\\d*)"
+          + "([uU](ll|LL|l|L)?|(ll|LL|l|L)[uU]?)?");
+
+  private static final Pattern FLOATING =
+      Pattern.compile("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?[fFdDlL]?");
+
   private String value;
 
+  /**
+   * Parsed value, computed on first access. The value never changes, so it does not need to be
+   * invalidated.
+   */
+  private transient Literal literal;
+
   public Constant(String value, int line, boolean statement, List<?> original) {
     super(line, original);
     this.value = value;
@@ -25,6 +72,80 @@ public class Constant extends Expression {
     return value;
   }
 
+  /**
+   * Returns the kind of literal of this constant. The value is parsed once, on the first call of
+   * this method or one of the typed getters.
+   */
+  public Kind getKind() {
+    return literal().kind;
+  }
+
+  /**
+   * Returns whether this constant is an integer or floating point literal.
+   */
+  public boolean isNumeric() {
+    Kind kind = getKind();
+    return kind == Kind.INTEGER || kind == Kind.FLOATING;
+  }
+
+  /**
+   * Returns the value of an integer, floating point or character literal as long. Floating point
+   * values are truncated and characters are converted to their code.
+   */
+  public long getLongValue() {
+    return numeric().longValue;
+  }
+
+  /**
+   * Returns the value of an integer, floating point or character literal as double.
+   */
+  public double getDoubleValue() {
+    return numeric().doubleValue;
+  }
+
+  /**
+   * Returns the unescaped character of a character literal.
+   */
+  public char getCharValue() {
+    Literal parsed = literal();
+    if (parsed.kind != Kind.CHARACTER) {
+      throw new RuntimeException(String.format("Not a character literal: %s", value));
+    }
+    return (char) parsed.longValue;
+  }
+
+  /**
+   * Returns the content of a string literal without the quotes, or the value of any other
+   * constant. Escape sequences are kept, as the interpreters print them unchanged.
+   */
+  public String getStringValue() {
+    Literal parsed = literal();
+    return parsed.kind == Kind.STRING ? parsed.string : value;
+  }
+
+  private Literal literal() {
+    Literal parsed = literal;
+    if (parsed == null) {
+      parsed = Literal.parse(value);
+      literal = parsed;
+    }
+    return parsed;
+  }
+
+  private Literal numeric() {
+    Literal parsed = literal();
+    if (parsed.kind != Kind.INTEGER && parsed.kind != Kind.FLOATING
+        && parsed.kind != Kind.CHARACTER) {
+      throw new RuntimeException(String.format("Not a numeric literal: %s", value));
+    }
+    return parsed;
+  }
+
+  @Override
+  void freezeNode() {
+    literal();
+  }
+
   @Override
   public String toString(boolean withOriginalField) {
     if (withOriginalField) {
@@ -33,6 +154,19 @@ public class Constant extends Expression {
     return value;
   }
 
+  @Override
+  public void writeTo(Appendable out, boolean withOriginalField) throws IOException {
+    out.append(value);
+    if (withOriginalField) {
+      writeOriginal(out);
+    }
+  }
+
+  @Override
+  public Expression deepCopy() {
+    return new Constant(value, getLineNumber(), false, copyOriginal());
+  }
+
   @Override
   public String getType() {
     return getClass().getSimpleName();
@@ -56,4 +190,166 @@ public class Constant extends Expression {
   public int hashCode() {
     return Objects.hash(value);
   }
+
+  /**
+   * Immutable parse result, so that it can be shared between threads without synchronization.
+   */
+  private static final class Literal {
+    private static final Literal OTHER = new Literal(Kind.OTHER, 0, 0, null);
+
+    private final Kind kind;
+    private final long longValue;
+    private final double doubleValue;
+    private final String string;
+
+    private Literal(Kind kind, long longValue, double doubleValue, String string) {
+      this.kind = kind;
+      this.longValue = longValue;
+      this.doubleValue = doubleValue;
+      this.string = string;
+    }
+
+    static Literal parse(String value) {
+      if (value == null || value.isEmpty()) {
+        return OTHER;
+      }
+      int length = value.length();
+      char first = value.charAt(0);
+      if (length >= 2 && first == '"' && value.charAt(length - 1) == '"') {
+        return new Literal(Kind.STRING, 0, 0, value.substring(1, length - 1));
+      }
+      if (length >= 2 && first == '\'' && value.charAt(length - 1) == '\'') {
+        String content = value.substring(1, length - 1);
+        long code = parseCharacter(content);
+        return code < 0 ? new Literal(Kind.STRING, 0, 0, content)
+            : new Literal(Kind.CHARACTER, code, code, null);
+      }
+      Matcher integer = INTEGER.matcher(value);
+      if (integer.matches()) {
+        BigInteger parsed = parseInteger(integer.group(2));
+        if (integer.group(1).equals("-")) {
+          parsed = parsed.negate();
+        }
+        if (parsed.bitLength() < Long.SIZE) {
+          return new Literal(Kind.INTEGER, parsed.longValue(), parsed.longValue(), null);
+        }
+        // too large for a long, falls back to a floating point value
+        return new Literal(Kind.FLOATING, parsed.longValue(), parsed.doubleValue(), null);
+      }
+      if (FLOATING.matcher(value).matches()) {
+        char last = value.charAt(length - 1);
+        double parsed = Double.parseDouble(
+            last == 'l' || last == 'L' ? value.substring(0, length - 1) : value);
+        return new Literal(Kind.FLOATING, (long) parsed, parsed, null);
+      }
+      return OTHER;
+    }
+
+    /**
+     * Parses the digits of an integer literal, which are octal if they start with 0, or have a
+     * radix prefix.
+     */
+    private static BigInteger parseInteger(String digits) {
+      if (digits.length() < 2 || digits.charAt(0) != '0') {
+        return new BigInteger(digits);
+      }
+      switch (digits.charAt(1)) {
+        case 'x':
+        case 'X':
+          return new BigInteger(digits.substring(2), 16);
+        case 'b':
+        case 'B':
+          return new BigInteger(digits.substring(2), 2);
+        case 'o':
+        case 'O':
+          return new BigInteger(digits.substring(2), 8);
+        default:
+          return new BigInteger(digits.substring(1), 8);
+      }
+    }
+
+    /**
+     * Returns the code of the single, possibly escaped character of a character literal without
+     * its quotes, or -1 if the content is not a single character. Escape sequences follow C, i.e.,
+     * simple escapes such as \n, octal escapes such as \101, hexadecimal escapes such as \x41, and
+     * universal character names such as \u00e9.
+     */
+    private static long parseCharacter(String content) {
+      int length = content.length();
+      if (length == 0) {
+        return -1;
+      }
+      if (content.charAt(0) != '\\') {
+        return length == 1 ? content.charAt(0) : -1;
+      }
+      if (length == 1) {
+        return -1;
+      }
+      char escape = content.charAt(1);
+      int end = 2;
+      long code;
+      switch (escape) {
+        case 'n':
+          code = '\n';
+          break;
+        case 't':
+          code = '\t';
+          break;
+        case 'r':
+          code = '\r';
+          break;
+        case 'a':
+          code = 7;
+          break;
+        case 'b':
+          code = '\b';
+          break;
+        case 'f':
+          code = '\f';
+          break;
+        case 'v':
+          code = 11;
+          break;
+        case '\\':
+        case '\'':
+        case '"':
+        case '?':
+          code = escape;
+          break;
+        case 'x':
+          while (end < length && Character.digit(content.charAt(end), 16) >= 0) {
+            end++;
+          }
+          if (end == 2 || end > 10) {
+            return -1;
+          }
+          code = Long.parseLong(content.substring(2, end), 16);
+          break;
+        case 'u':
+        case 'U':
+          end = escape == 'u' ? 6 : 10;
+          if (length != end) {
+            return -1;
+          }
+          try {
+            code = Long.parseLong(content.substring(2, end), 16);
+          } catch (NumberFormatException e) {
+            return -1;
+          }
+          break;
+        default:
+          end = 1;
+          while (end < length && end < 4 && content.charAt(end) >= '0'
+              && content.charAt(end) <= '7') {
+            end++;
+          }
+          if (end == 1) {
+            return -1;
+          }
+          code = Long.parseLong(content.substring(1, end), 8);
+          break;
+      }
+      return end == length ? code : -1;
+    }
+  }
 }
@@ -0,0 +1,376 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Dense, int-indexed view of the control flow of a {@link Function}. Every location is assigned an
+ * index in {@code [0, size())}, and successors, predecessors and location descriptions are stored
+ * in arrays addressed by that index. Indices are compact but not stable: removing a location moves
+ * the last location into the freed index.
+ *
+ * <p>Location ids can be any int. Compact ids are mapped to indices by an array, which is offset by
+ * the smallest id; ids that are too sparse for an array are mapped by a hash table instead.
+ *
+ * <p>The graph is read-only for callers; only its Function updates it, together with its tables.
+ */
+public class ControlFlowGraph {
+
+  /**
+   * Marker for a missing location, index, or transition.
+   */
+  public static final int NONE = -1;
+
+  private static final int[] NO_PREDECESSORS = new int[0];
+
+  /**
+   * Flags of the transitions that exist at an index.
+   */
+  private static final byte HAS_TRUE = 1;
+  private static final byte HAS_FALSE = 2;
+
+  /**
+   * Minimum number of id slots of the index array. Beyond that, the array may have at most this
+   * many slots per location before the index switches to a hash table.
+   */
+  private static final int DENSE_SLOTS = 64;
+  private static final int SLOTS_PER_LOCATION = 8;
+
+  private int size;
+
+  /**
+   * Location id for every index.
+   */
+  private int[] locations;
+
+  /**
+   * Index for every location id from base, or NONE if the location does not exist. Not used once
+   * sparseIndices is set.
+   */
+  private int[] indices;
+  private int base;
+
+  /**
+   * Index for every location id, if the ids are too sparse for the array.
+   */
+  private Map<Integer, Integer> sparseIndices;
+
+  /**
+   * Location ids of the true and false successors for every index, valid if the corresponding flag
+   * is set.
+   */
+  private int[] trueTargets;
+  private int[] falseTargets;
+  private byte[] transitions;
+
+  private String[] descs;
+
+  /**
+   * Predecessor indices for every index. Computed on demand and dropped on every transition change.
+   */
+  private int[][] predecessors;
+
+  /**
+   * Creates an empty graph with room for the given number of locations.
+   */
+  ControlFlowGraph(int capacity) {
+    int initial = Math.max(capacity, 4);
+    this.locations = new int[initial];
+    this.trueTargets = new int[initial];
+    this.falseTargets = new int[initial];
+    this.transitions = new byte[initial];
+    this.descs = new String[initial];
+    this.indices = new int[initial + 1];
+    Arrays.fill(this.indices, NONE);
+  }
+
+  /**
+   * Builds the graph for the given transition and description tables, as stored in a Function.
+   * Locations are indexed in ascending order of their ids.
+   */
+  public static ControlFlowGraph build(Map<Integer, ? extends Map<Boolean, Integer>> loctrans,
+      Map<Integer, String> locdescs) {
+    ControlFlowGraph cfg = new ControlFlowGraph(loctrans.size());
+    for (int loc : new TreeSet<>(loctrans.keySet())) {
+      Map<Boolean, Integer> trans = loctrans.get(loc);
+      cfg.addLocation(loc, locdescs.get(loc));
+      if (trans != null) {
+        cfg.setTransitions(loc, trans.get(true), trans.get(false));
+      }
+    }
+    return cfg;
+  }
+
+  /**
+   * Returns the number of locations in the graph.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the index of the given location id, or NONE if the location does not exist.
+   */
+  public int indexOf(int loc) {
+    if (sparseIndices != null) {
+      Integer index = sparseIndices.get(loc);
+      return index == null ? NONE : index;
+    }
+    long offset = (long) loc - base;
+    if (offset < 0 || offset >= indices.length) {
+      return NONE;
+    }
+    return indices[(int) offset];
+  }
+
+  public boolean contains(int loc) {
+    return indexOf(loc) != NONE;
+  }
+
+  /**
+   * Returns the location id stored at the given index.
+   */
+  public int locationAt(int index) {
+    checkIndex(index);
+    return locations[index];
+  }
+
+  /**
+   * Returns the location description stored at the given index.
+   */
+  public String descriptionAt(int index) {
+    checkIndex(index);
+    return descs[index];
+  }
+
+  /**
+   * Returns whether the given index has a transition for the given branch.
+   */
+  public boolean hasTransition(int index, boolean cond) {
+    checkIndex(index);
+    return (transitions[index] & (cond ? HAS_TRUE : HAS_FALSE)) != 0;
+  }
+
+  /**
+   * Returns the location id of the successor of the given index for the given branch, or NONE if
+   * there is no such transition. Since NONE is also a valid location id, use
+   * {@link #hasTransition} to tell them apart.
+   */
+  public int successorLocation(int index, boolean cond) {
+    if (!hasTransition(index, cond)) {
+      return NONE;
+    }
+    return cond ? trueTargets[index] : falseTargets[index];
+  }
+
+  /**
+   * Returns the index of the successor of the given index for the given branch, or NONE if there
+   * is no such transition or the target location does not exist.
+   */
+  public int successor(int index, boolean cond) {
+    return hasTransition(index, cond) ? indexOf(successorLocation(index, cond)) : NONE;
+  }
+
+  /**
+   * Returns the number of outgoing transitions at the given index.
+   */
+  public int transitionCount(int index) {
+    checkIndex(index);
+    return Integer.bitCount(transitions[index]);
+  }
+
+  /**
+   * Returns the indices of all locations with a transition into the given index. A location that
+   * branches to the same target on both edges is listed once. The returned array must not be
+   * modified.
+   */
+  public int[] predecessors(int index) {
+    checkIndex(index);
+    if (predecessors == null) {
+      computePredecessors();
+    }
+    return predecessors[index];
+  }
+
+  /**
+   * Adds a location without transitions. Adding an existing location only updates its
+   * description.
+   *
+   * @return index of the location
+   */
+  int addLocation(int loc, String desc) {
+    int index = indexOf(loc);
+    if (index != NONE) {
+      descs[index] = desc;
+      return index;
+    }
+    ensureCapacity(size + 1);
+    index = size++;
+    locations[index] = loc;
+    transitions[index] = 0;
+    descs[index] = desc;
+    setIndex(loc, index);
+    predecessors = null;
+    return index;
+  }
+
+  /**
+   * Replaces both outgoing transitions of a location, adding the location if it is unknown.
+   *
+   * @param loc location to update
+   * @param trueLocation target of the true branch, nullable
+   * @param falseLocation target of the false branch, nullable
+   */
+  void setTransitions(int loc, Integer trueLocation, Integer falseLocation) {
+    int index = indexOf(loc);
+    if (index == NONE) {
+      index = addLocation(loc, null);
+    }
+    trueTargets[index] = trueLocation == null ? NONE : trueLocation;
+    falseTargets[index] = falseLocation == null ? NONE : falseLocation;
+    transitions[index] = (byte) ((trueLocation == null ? 0 : HAS_TRUE)
+        | (falseLocation == null ? 0 : HAS_FALSE));
+    predecessors = null;
+  }
+
+  /**
+   * Removes one outgoing transition of a location, if the location exists.
+   */
+  void removeTransition(int loc, boolean cond) {
+    int index = indexOf(loc);
+    if (index == NONE) {
+      return;
+    }
+    transitions[index] &= cond ? ~HAS_TRUE : ~HAS_FALSE;
+    predecessors = null;
+  }
+
+  /**
+   * Removes a location. Transitions of other locations that point to it are kept, like in the
+   * transition table of the Function.
+   */
+  void removeLocation(int loc) {
+    int index = indexOf(loc);
+    if (index == NONE) {
+      return;
+    }
+    int last = --size;
+    if (index != last) {
+      locations[index] = locations[last];
+      trueTargets[index] = trueTargets[last];
+      falseTargets[index] = falseTargets[last];
+      transitions[index] = transitions[last];
+      descs[index] = descs[last];
+      setIndex(locations[index], index);
+    }
+    descs[last] = null;
+    setIndex(loc, NONE);
+    predecessors = null;
+  }
+
+  private void computePredecessors() {
+    int[] counts = new int[size];
+    for (int i = 0; i < size; i++) {
+      int t = successor(i, true);
+      int f = successor(i, false);
+      if (t != NONE) {
+        counts[t]++;
+      }
+      if (f != NONE && f != t) {
+        counts[f]++;
+      }
+    }
+    int[][] result = new int[size][];
+    for (int i = 0; i < size; i++) {
+      result[i] = counts[i] == 0 ? NO_PREDECESSORS : new int[counts[i]];
+      counts[i] = 0;
+    }
+    for (int i = 0; i < size; i++) {
+      int t = successor(i, true);
+      int f = successor(i, false);
+      if (t != NONE) {
+        result[t][counts[t]++] = i;
+      }
+      if (f != NONE && f != t) {
+        result[f][counts[f]++] = i;
+      }
+    }
+    predecessors = result;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= locations.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, locations.length * 2);
+    locations = Arrays.copyOf(locations, newCapacity);
+    trueTargets = Arrays.copyOf(trueTargets, newCapacity);
+    falseTargets = Arrays.copyOf(falseTargets, newCapacity);
+    transitions = Arrays.copyOf(transitions, newCapacity);
+    descs = Arrays.copyOf(descs, newCapacity);
+  }
+
+  /**
+   * Maps a location id to an index, or removes it for NONE.
+   */
+  private void setIndex(int loc, int index) {
+    if (sparseIndices == null && index != NONE) {
+      ensureLocationRange(loc);
+    }
+    if (sparseIndices != null) {
+      if (index == NONE) {
+        sparseIndices.remove(loc);
+      } else {
+        sparseIndices.put(loc, index);
+      }
+    } else {
+      indices[(int) ((long) loc - base)] = index;
+    }
+  }
+
+  /**
+   * Extends the index array to cover the given location id, or switches to a hash table if the
+   * array would become too sparse.
+   */
+  private void ensureLocationRange(int loc) {
+    long offset = (long) loc - base;
+    if (offset >= 0 && offset < indices.length) {
+      return;
+    }
+    if (size == 1) {
+      // only the new location is indexed, so the array can be moved to it
+      Arrays.fill(indices, NONE);
+      base = loc;
+      return;
+    }
+    long low = Math.min(base, loc);
+    long high = Math.max((long) base + indices.length - 1, loc);
+    long span = high - low + 1;
+    if (span > Math.max(DENSE_SLOTS, (long) SLOTS_PER_LOCATION * size)) {
+      sparseIndices = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        sparseIndices.put(locations[i], i);
+      }
+      indices = null;
+      return;
+    }
+    int length = (int) Math.min(Math.max(span, 2L * indices.length),
+        Math.max(DENSE_SLOTS, (long) SLOTS_PER_LOCATION * size));
+    // leave the free slots on the side that grows
+    int newBase = loc < base ? (int) Math.max(Integer.MIN_VALUE, high - length + 1) : base;
+    int[] newIndices = new int[length];
+    Arrays.fill(newIndices, NONE);
+    System.arraycopy(indices, 0, newIndices, base - newBase, indices.length);
+    indices = newIndices;
+    base = newBase;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(
+          String.format("Index %d out of bounds for size %d", index, size));
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.javatuples.Pair;
+
+/**
+ * Index of the variables defined (assigned) and used (read) at each location of a
+ * {@link Function}, and of the locations that define and use each variable. Variables are
+ * identified by {@link Variable#getName()}, i.e., primed variables are distinct from unprimed ones.
+ * The index is updated per location, so that changing the expressions of one location does not
+ * require scanning the whole function again. All returned sets are read-only views, and only the
+ * Function updates the index.
+ */
+public class DefUseIndex {
+
+  private final Map<Integer, Set<String>> writes = new HashMap<>();
+
+  private final Map<Integer, Set<String>> reads = new HashMap<>();
+
+  private final Map<String, Set<Integer>> defs = new HashMap<>();
+
+  private final Map<String, Set<Integer>> uses = new HashMap<>();
+
+  /**
+   * Builds the index for all locations of the given function.
+   */
+  public static DefUseIndex forFunction(Function function) {
+    DefUseIndex index = new DefUseIndex();
+    for (int loc : function.getLocations()) {
+      index.setLocation(loc, function.getExprs(loc));
+    }
+    return index;
+  }
+
+  /**
+   * Returns the locations that assign the given variable.
+   */
+  public Set<Integer> getDefinitions(String var) {
+    return view(defs.get(var));
+  }
+
+  /**
+   * Returns the locations whose expressions read the given variable.
+   */
+  public Set<Integer> getUses(String var) {
+    return view(uses.get(var));
+  }
+
+  /**
+   * Returns the variables assigned at the given location.
+   */
+  public Set<String> getWrites(int loc) {
+    return view(writes.get(loc));
+  }
+
+  /**
+   * Returns the variables read by the expressions at the given location.
+   */
+  public Set<String> getReads(int loc) {
+    return view(reads.get(loc));
+  }
+
+  /**
+   * Returns all variables that are defined or used in the function.
+   */
+  public Set<String> getVariables() {
+    Set<String> variables = new HashSet<>(defs.keySet());
+    variables.addAll(uses.keySet());
+    return variables;
+  }
+
+  /**
+   * Replaces the entries of the given location by the given expressions.
+   *
+   * @param loc location
+   * @param exprs assignments of the location, or null to remove the location
+   */
+  void setLocation(int loc, List<Pair<String, Expression>> exprs) {
+    removeLocation(loc);
+    if (exprs == null) {
+      return;
+    }
+    for (Pair<String, Expression> pair : exprs) {
+      addExpression(loc, pair.getValue0(), pair.getValue1());
+    }
+  }
+
+  /**
+   * Adds the assignment of the given expression to the given variable at the given location.
+   */
+  void addExpression(int loc, String var, Expression expr) {
+    add(writes, defs, loc, var);
+    if (expr == null) {
+      return;
+    }
+    expr.walk(new ExpressionVisitor() {
+      @Override
+      public boolean enter(Expression node) {
+        if (node instanceof Variable) {
+          add(reads, uses, loc, ((Variable) node).getName());
+        }
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Removes all entries of the given location.
+   */
+  void removeLocation(int loc) {
+    remove(writes, defs, loc);
+    remove(reads, uses, loc);
+  }
+
+  private static void add(Map<Integer, Set<String>> byLocation,
+      Map<String, Set<Integer>> byVariable, int loc, String var) {
+    byLocation.computeIfAbsent(loc, key -> new HashSet<>()).add(var);
+    byVariable.computeIfAbsent(var, key -> new HashSet<>()).add(loc);
+  }
+
+  private static void remove(Map<Integer, Set<String>> byLocation,
+      Map<String, Set<Integer>> byVariable, int loc) {
+    Set<String> vars = byLocation.remove(loc);
+    if (vars == null) {
+      return;
+    }
+    for (String var : vars) {
+      Set<Integer> locs = byVariable.get(var);
+      locs.remove(loc);
+      if (locs.isEmpty()) {
+        byVariable.remove(var);
+      }
+    }
+  }
+
+  private static <T> Set<T> view(Set<T> set) {
+    return set == null ? Collections.emptySet() : Collections.unmodifiableSet(set);
+  }
+}
@@ -1,7 +1,12 @@
 package sg.edu.nus.se.its.model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 import sg.edu.nus.se.its.interpreter.Executable;
 import sg.edu.nus.se.its.util.JsonSerializable;
 
@@ -20,6 +25,11 @@ public abstract class Expression implements Executable, JsonSerializable {
    */
   private List<?> original;
 
+  /**
+   * Whether this expression and all its arguments are read-only, see {@link #freeze()}.
+   */
+  private transient boolean frozen;
+
   /**
    * Initiates an expression.
    *
@@ -40,6 +50,42 @@ public abstract class Expression implements Executable, JsonSerializable {
     return String.format("%s{%s, %s}", s, line, original);
   }
 
+  /**
+   * Appends the suffix of {@link #exprOriginal(String)}, if any.
+   */
+  protected void writeOriginal(Appendable out) throws IOException {
+    if (original != null) {
+      out.append('{').append(String.valueOf(line)).append(", ").append(String.valueOf(original))
+          .append('}');
+    }
+  }
+
+  /**
+   * Appends the string representation of this expression, see {@link #toString(boolean)}.
+   * Subclasses override this to write their representation without intermediate strings.
+   *
+   * @param out destination of the representation
+   * @param withOriginalField denotes if original field is to be included
+   * @throws IOException if appending fails
+   */
+  public void writeTo(Appendable out, boolean withOriginalField) throws IOException {
+    out.append(toString(withOriginalField));
+  }
+
+  /**
+   * Returns the representation written by {@link #writeTo(Appendable, boolean)}.
+   */
+  String render(boolean withOriginalField) {
+    StringBuilder builder = new StringBuilder();
+    try {
+      writeTo(builder, withOriginalField);
+    } catch (IOException e) {
+      // StringBuilder does not throw
+      throw new UncheckedIOException(e);
+    }
+    return builder.toString();
+  }
+
   /**
    * Method call to get string representation of expression. The original field is included by
    * default.
@@ -62,6 +108,13 @@ public abstract class Expression implements Executable, JsonSerializable {
     return line;
   }
 
+  /**
+   * Returns the original names of a "primed" expression, or null.
+   */
+  public List<?> getOriginal() {
+    return original;
+  }
+
   public Expression prime() {
     return this;
   }
@@ -96,4 +149,88 @@ public abstract class Expression implements Executable, JsonSerializable {
   public Object clone() throws CloneNotSupportedException {
     return this;
   }
+
+  /**
+   * Makes this expression and all its arguments read-only, so that it can be shared between
+   * threads and programs. Caches of the nodes are computed eagerly and no method modifies a frozen
+   * expression afterwards: in-place setters throw an UnsupportedOperationException, while
+   * {@link #prime()}, {@link #unprime()}, {@link #replace} and {@link #rewrite} return modified
+   * copies of the frozen nodes on the changed paths. Copies made by {@link #deepCopy()} and
+   * {@link #clone()} are not frozen.
+   *
+   * @return this expression
+   */
+  public Expression freeze() {
+    walk(new ExpressionVisitor() {
+      @Override
+      public boolean enter(Expression node) {
+        if (node.frozen) {
+          return false;
+        }
+        node.freezeNode();
+        if (node.original != null) {
+          node.original = Collections.unmodifiableList(new ArrayList<>(node.original));
+        }
+        node.frozen = true;
+        return true;
+      }
+    });
+    return this;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Prepares this node, but not its arguments, for being frozen, e.g., by computing its caches.
+   */
+  void freezeNode() {}
+
+  /**
+   * Throws an UnsupportedOperationException if this expression is frozen.
+   */
+  void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException(
+          String.format("Expression %s is frozen", toString(false)));
+    }
+  }
+
+  /**
+   * Walks this expression once with all given visitors, see {@link ExpressionWalker#walk}.
+   */
+  public void walk(ExpressionVisitor... visitors) {
+    ExpressionWalker.walk(this, visitors);
+  }
+
+  /**
+   * Rewrites this expression bottom-up in place, see {@link ExpressionWalker#rewrite}. Frozen
+   * operations are copied instead of being modified.
+   *
+   * @param rewriter function from a node to its replacement
+   * @return the replacement of this expression
+   */
+  public Expression rewrite(UnaryOperator<Expression> rewriter) {
+    return ExpressionWalker.rewrite(this, rewriter);
+  }
+
+  /**
+   * Computes a value for this expression bottom-up, see {@link ExpressionWalker#fold}.
+   */
+  public <R> R fold(ExpressionFolder<R> folder) {
+    return ExpressionWalker.fold(this, folder);
+  }
+
+  /**
+   * Creates a structural copy of this expression that shares no mutable state with it, including
+   * the line number and the original field.
+   *
+   * @return copied expression
+   */
+  public abstract Expression deepCopy();
+
+  protected List<?> copyOriginal() {
+    return original == null ? null : new ArrayList<>(original);
+  }
 }
@@ -0,0 +1,23 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.List;
+
+/**
+ * Computes a value for an expression bottom-up from the values of its arguments, see
+ * {@link ExpressionWalker#fold(Expression, ExpressionFolder)}.
+ *
+ * @param <R> type of the computed values
+ */
+public interface ExpressionFolder<R> {
+
+  /**
+   * Returns the value of an expression without arguments, i.e., any expression but an Operation.
+   */
+  R leaf(Expression expr);
+
+  /**
+   * Returns the value of an operation, given the values of its arguments. The argument list is a
+   * view that is only valid during this call and must not be kept.
+   */
+  R node(Operation operation, List<R> args);
+}
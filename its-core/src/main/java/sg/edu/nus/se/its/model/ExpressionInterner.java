@@ -0,0 +1,205 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.javatuples.Pair;
+
+/**
+ * Hash-consing factory for expressions. Structurally identical expressions are mapped to one
+ * shared instance, so that interned expressions can be compared by reference and their structural
+ * hash is computed only once.
+ *
+ * <p>Interned expressions are shared between all their users and are therefore frozen, see
+ * {@link Expression#freeze()}: {@link Expression#prime()} and {@link Expression#replace} return
+ * modified copies of them, while in-place setters throw an UnsupportedOperationException. The
+ * interner is not thread-safe.
+ */
+public class ExpressionInterner {
+
+  /**
+   * Whether expressions that only differ in their source line are considered identical. In that
+   * case, the first interned expression determines the line number of the shared instance.
+   */
+  private final boolean ignoreLineNumbers;
+
+  private final Map<Key, Expression> table = new HashMap<>();
+
+  /**
+   * Structural hash of every interned instance.
+   */
+  private final Map<Expression, Integer> hashes = new IdentityHashMap<>();
+
+  public ExpressionInterner() {
+    this(false);
+  }
+
+  public ExpressionInterner(boolean ignoreLineNumbers) {
+    this.ignoreLineNumbers = ignoreLineNumbers;
+  }
+
+  /**
+   * Returns the shared instance that is structurally identical to the given expression. The given
+   * expression is not modified.
+   *
+   * @param expr expression to intern
+   * @return interned expression
+   */
+  public Expression intern(Expression expr) {
+    if (expr == null || hashes.containsKey(expr)) {
+      return expr;
+    }
+    Expression[] children = null;
+    if (expr instanceof Operation) {
+      List<Expression> args = ((Operation) expr).getArgs();
+      children = new Expression[args.size()];
+      for (int i = 0; i < children.length; i++) {
+        children[i] = intern(args.get(i));
+      }
+    }
+    Key key = new Key(expr, children);
+    Expression shared = table.get(key);
+    if (shared == null) {
+      shared = create(expr, children).freeze();
+      table.put(key, shared);
+      hashes.put(shared, key.hash);
+    }
+    return shared;
+  }
+
+  /**
+   * Replaces all expressions of the given function by their interned instances.
+   */
+  public void intern(Function function) {
+    for (int loc : new ArrayList<>(function.getLocations())) {
+      List<Pair<String, Expression>> exprs = function.getExprs(loc);
+      ArrayList<Pair<String, Expression>> interned = new ArrayList<>(exprs.size());
+      for (Pair<String, Expression> pair : exprs) {
+        interned.add(new Pair<>(pair.getValue0(), intern(pair.getValue1())));
+      }
+      function.replaceLocExpressions(loc, interned);
+    }
+  }
+
+  /**
+   * Replaces all expressions of all functions of the given program by their interned instances.
+   */
+  public void intern(Program program) {
+    for (Function function : program.getFncs().values()) {
+      intern(function);
+    }
+  }
+
+  /**
+   * Returns whether the given instance is owned by this interner.
+   */
+  public boolean isInterned(Expression expr) {
+    return hashes.containsKey(expr);
+  }
+
+  /**
+   * Returns the structural hash of the given expression, which is cached for interned instances.
+   */
+  public int structuralHash(Expression expr) {
+    Integer hash = hashes.get(expr);
+    if (hash != null) {
+      return hash;
+    }
+    return hashes.get(intern(expr));
+  }
+
+  /**
+   * Returns the number of distinct expressions interned so far.
+   */
+  public int size() {
+    return table.size();
+  }
+
+  private Expression create(Expression expr, Expression[] children) {
+    List<?> original = expr.getOriginal() == null ? null : new ArrayList<>(expr.getOriginal());
+    if (expr instanceof Operation) {
+      return new Operation(((Operation) expr).getName(), Arrays.asList(children),
+          expr.getLineNumber(), original);
+    } else if (expr instanceof Variable) {
+      Variable variable = new Variable(((Variable) expr).getUnprimedName(), expr.getLineNumber(),
+          original);
+      variable.setPrimed(((Variable) expr).isPrimed());
+      return variable;
+    } else if (expr instanceof Constant) {
+      return new Constant(((Constant) expr).getValue(), expr.getLineNumber(), false, original);
+    }
+    throw new RuntimeException(
+        String.format("Unknown expression type: %s", expr.getClass().getSimpleName()));
+  }
+
+  /**
+   * Structural identity of one node, given the interned instances of its children.
+   */
+  private final class Key {
+    private final Class<?> type;
+    private final String label;
+    private final boolean primed;
+    private final int line;
+    private final List<?> original;
+    private final Expression[] children;
+    private final int hash;
+
+    Key(Expression expr, Expression[] children) {
+      this.type = expr.getClass();
+      if (expr instanceof Operation) {
+        this.label = ((Operation) expr).getName();
+      } else if (expr instanceof Variable) {
+        this.label = ((Variable) expr).getUnprimedName();
+      } else if (expr instanceof Constant) {
+        this.label = ((Constant) expr).getValue();
+      } else {
+        this.label = null;
+      }
+      this.primed = expr instanceof Variable && ((Variable) expr).isPrimed();
+      this.line = ignoreLineNumbers ? 0 : expr.getLineNumber();
+      this.original = expr.getOriginal();
+      this.children = children;
+
+      int h = Objects.hash(type.getName(), label, primed, line, original);
+      if (children != null) {
+        for (Expression child : children) {
+          h = 31 * h + hashes.get(child);
+        }
+      }
+      this.hash = h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      if (hash != key.hash || type != key.type || primed != key.primed || line != key.line
+          || !Objects.equals(label, key.label) || !Objects.equals(original, key.original)) {
+        return false;
+      }
+      if (children == null || key.children == null) {
+        return children == key.children;
+      }
+      if (children.length != key.children.length) {
+        return false;
+      }
+      for (int i = 0; i < children.length; i++) {
+        if (children[i] != key.children[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
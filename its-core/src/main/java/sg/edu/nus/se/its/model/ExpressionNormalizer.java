@@ -0,0 +1,412 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites expressions into a canonical form, so that expressions that only differ in the order of
+ * commutative operands, in the nesting of associative chains or in constant subexpressions become
+ * equal. The normalizer
+ *
+ * <ul>
+ * <li>folds arithmetic operations on numeric constants, leaving operations unchanged that would
+ * overflow an int, divide by zero, or have different results in C and Python, such as the division
+ * of integers. Comparisons and logical operations are not folded, since their results are 1 and 0
+ * in C but True and False in Python,</li>
+ * <li>flattens chains of associative operators (+, *, &amp;, |, ^, &amp;&amp;, ||) and nests them
+ * left-deep again,</li>
+ * <li>combines the integer constants of + and * chains and drops the neutral elements 0 and 1,</li>
+ * <li>sorts the operands of commutative operators, with constants last.</li>
+ * </ul>
+ *
+ * <p>Operands are sorted by their {@link Fingerprint}, so the canonical form is deterministic and
+ * ignores priming. The short-circuiting operators are flattened but never reordered. Since + also
+ * concatenates strings and lists in Python, a + chain is only reordered and its constants are only
+ * combined if all its operands are known to be numeric: numeric constants, variables with a numeric
+ * type (see {@link #ExpressionNormalizer(Map)}), and arithmetic on those. Reordering + and * chains
+ * of floating point values can change the rounding, so normalized expressions are meant for
+ * comparison rather than for execution.
+ *
+ * <p>The given expressions are not modified. Normalized expressions are cached per instance, so
+ * expressions must not be modified in place after they have been normalized. The normalized
+ * expressions are frozen, see {@link Expression#freeze()}, since they are shared by all callers.
+ * The normalizer is not thread-safe.
+ */
+public class ExpressionNormalizer {
+
+  private static final Set<String> NUMERIC_TYPES = Set.of("char", "short", "int", "long",
+      "long long", "float", "double", "long double", "unsigned", "unsigned char", "unsigned short",
+      "unsigned int", "unsigned long", "unsigned long long", "signed char", "bool", "_Bool");
+
+  private final Map<String, String> types;
+
+  private final Map<Expression, Expression> cache = new IdentityHashMap<>();
+
+  /**
+   * Creates a normalizer that knows no variable types, so it never reorders + chains of variables.
+   */
+  public ExpressionNormalizer() {
+    this(Map.of());
+  }
+
+  /**
+   * Creates a normalizer that treats variables with a numeric type in the given map, e.g., the
+   * types of a {@link Function}, as numbers.
+   *
+   * @param types types by unprimed variable name
+   */
+  public ExpressionNormalizer(Map<String, String> types) {
+    this.types = types;
+  }
+
+  /**
+   * Returns the frozen canonical form of the given expression, which shares no nodes with it.
+   */
+  public Expression normalize(Expression expr) {
+    Expression normalized = cache.get(expr);
+    if (normalized == null) {
+      normalized = expr.fold(new Folder(types)).expr.freeze();
+      cache.put(expr, normalized);
+    }
+    return normalized;
+  }
+
+  /**
+   * Returns whether the given expressions have the same canonical form, ignoring priming.
+   */
+  public boolean equivalent(Expression first, Expression second) {
+    Expression normalizedFirst = normalize(first);
+    Expression normalizedSecond = normalize(second);
+    return Fingerprint.of(normalizedFirst) == Fingerprint.of(normalizedSecond)
+        && normalizedFirst.toString(false).replace("'", "")
+            .equals(normalizedSecond.toString(false).replace("'", ""));
+  }
+
+  /**
+   * Returns the number of cached expressions.
+   */
+  public int size() {
+    return cache.size();
+  }
+
+  /**
+   * Normalized expression with its fingerprint, and whether it is known to be a number.
+   */
+  private static final class Node {
+    private final Expression expr;
+    private final long key;
+    private final Number value;
+    private final boolean numeric;
+
+    Node(Expression expr, long key, boolean numeric) {
+      this.expr = expr;
+      this.key = key;
+      this.value = expr instanceof Constant ? valueOf((Constant) expr) : null;
+      this.numeric = numeric;
+    }
+
+    boolean isInteger() {
+      return value instanceof Long;
+    }
+  }
+
+  private static final class Folder implements ExpressionFolder<Node> {
+
+    private final Map<String, String> types;
+
+    /**
+     * Nodes of all operations created by this fold, to flatten nested chains.
+     */
+    private final Map<Expression, Node> operations = new IdentityHashMap<>();
+
+    Folder(Map<String, String> types) {
+      this.types = types;
+    }
+
+    @Override
+    public Node leaf(Expression expr) {
+      return new Node(expr.deepCopy(), Fingerprint.ofLeaf(expr), isNumeric(expr));
+    }
+
+    private boolean isNumeric(Expression leaf) {
+      if (leaf instanceof Constant) {
+        Constant.Kind kind = ((Constant) leaf).getKind();
+        return kind == Constant.Kind.INTEGER || kind == Constant.Kind.FLOATING;
+      }
+      if (leaf instanceof Variable) {
+        String type = types.get(((Variable) leaf).getUnprimedName());
+        return type != null && NUMERIC_TYPES.contains(type);
+      }
+      return false;
+    }
+
+    @Override
+    public Node node(Operation operation, List<Node> args) {
+      String name = operation.getName();
+      int line = operation.getLineNumber();
+      Opcode opcode = operation.getOpcode();
+      List<Node> operands = new ArrayList<>(args);
+
+      Node folded = foldConstants(opcode, operands, line);
+      if (folded != null) {
+        return folded;
+      }
+      if (isAssociative(opcode) && operands.size() == 2) {
+        List<Node> flat = new ArrayList<>();
+        for (Node operand : operands) {
+          flatten(name, operand, flat);
+        }
+        if (opcode.isCommutative() && (opcode != Opcode.ADD || allNumeric(flat))) {
+          if (opcode == Opcode.ADD || opcode == Opcode.MUL) {
+            combineConstants(opcode, flat, line);
+          }
+          flat.sort(ExpressionNormalizer::compare);
+        }
+        Node result = flat.get(0);
+        for (int i = 1; i < flat.size(); i++) {
+          result = create(name, opcode, List.of(result, flat.get(i)), line);
+        }
+        return result;
+      }
+      if (opcode.isCommutative() && operands.size() == 2
+          && (opcode != Opcode.ADD || allNumeric(operands))) {
+        operands.sort(ExpressionNormalizer::compare);
+      }
+      return create(name, opcode, operands, line);
+    }
+
+    private Node create(String name, Opcode opcode, List<Node> operands, int line) {
+      List<Expression> exprs = new ArrayList<>(operands.size());
+      List<Long> keys = new ArrayList<>(operands.size());
+      for (Node operand : operands) {
+        exprs.add(operand.expr);
+        keys.add(operand.key);
+      }
+      Node node = new Node(new Operation(name, exprs, line), Fingerprint.ofOperation(name, keys),
+          isNumeric(opcode, operands));
+      operations.put(node.expr, node);
+      return node;
+    }
+
+    /**
+     * Returns whether an operation yields a number, i.e., comparisons, and arithmetic, bitwise and
+     * logical operations on numbers.
+     */
+    private static boolean isNumeric(Opcode opcode, List<Node> operands) {
+      switch (opcode.getCategory()) {
+        case COMPARISON:
+          return true;
+        case ARITHMETIC:
+        case BITWISE:
+        case LOGICAL:
+          return allNumeric(operands);
+        default:
+          return false;
+      }
+    }
+
+    private static boolean allNumeric(List<Node> nodes) {
+      for (Node node : nodes) {
+        if (!node.numeric) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Appends the operands of the given normalized, left-deep chain of the given operator.
+     */
+    private void flatten(String name, Node node, List<Node> flat) {
+      Deque<Node> rights = new ArrayDeque<>();
+      Expression expr = node.expr;
+      while (expr instanceof Operation && ((Operation) expr).getName().equals(name)
+          && ((Operation) expr).getArgs().size() == 2) {
+        List<Expression> chainArgs = ((Operation) expr).getArgs();
+        rights.push(nodeOf(chainArgs.get(1)));
+        expr = chainArgs.get(0);
+      }
+      flat.add(nodeOf(expr));
+      while (!rights.isEmpty()) {
+        flat.add(rights.pop());
+      }
+    }
+
+    private Node nodeOf(Expression expr) {
+      Node node = operations.get(expr);
+      return node != null ? node : new Node(expr, Fingerprint.ofLeaf(expr), isNumeric(expr));
+    }
+
+    /**
+     * Replaces all integer constants of a + or * chain by their sum or product, which is dropped if
+     * it is the neutral element.
+     */
+    private void combineConstants(Opcode opcode, List<Node> flat, int line) {
+      long result = opcode == Opcode.ADD ? 0 : 1;
+      int count = 0;
+      for (Node node : flat) {
+        if (node.isInteger()) {
+          long value = node.value.longValue();
+          result = opcode == Opcode.ADD ? result + value : result * value;
+          if (!fitsInt(result)) {
+            return;
+          }
+          count++;
+        }
+      }
+      boolean neutral = result == (opcode == Opcode.ADD ? 0 : 1);
+      if (count < 2 && !(count == 1 && neutral && flat.size() > 1)) {
+        return;
+      }
+      flat.removeIf(Node::isInteger);
+      if (!neutral || flat.isEmpty()) {
+        flat.add(constant(Long.toString(result), line));
+      }
+    }
+
+    /**
+     * Evaluates an arithmetic operation on numeric constants, or returns null if the operation
+     * cannot be folded.
+     */
+    private Node foldConstants(Opcode opcode, List<Node> operands, int line) {
+      if (operands.isEmpty() || !opcode.acceptsArity(operands.size())) {
+        return null;
+      }
+      for (Node operand : operands) {
+        if (operand.value == null) {
+          return null;
+        }
+      }
+      if (opcode.getCategory() != Opcode.Category.ARITHMETIC) {
+        return null;
+      }
+      String result = operands.size() == 1 ? evaluate(opcode, operands.get(0).value)
+          : evaluate(opcode, operands.get(0).value, operands.get(1).value);
+      return result == null ? null : constant(result, line);
+    }
+
+    private Node constant(String value, int line) {
+      Constant constant = new Constant(value, line);
+      return new Node(constant, Fingerprint.ofLeaf(constant), true);
+    }
+  }
+
+  private static String evaluate(Opcode opcode, Number operand) {
+    switch (opcode) {
+      case ADD:
+        return format(operand);
+      case SUB:
+        if (operand instanceof Long) {
+          return operand.longValue() == Integer.MIN_VALUE ? null
+              : Long.toString(-operand.longValue());
+        }
+        return Double.toString(-operand.doubleValue());
+      default:
+        return null;
+    }
+  }
+
+  private static String evaluate(Opcode opcode, Number left, Number right) {
+    if (left instanceof Long && right instanceof Long) {
+      long a = left.longValue();
+      long b = right.longValue();
+      long result;
+      switch (opcode) {
+        case ADD:
+          result = a + b;
+          break;
+        case SUB:
+          result = a - b;
+          break;
+        case MUL:
+          result = a * b;
+          break;
+        case MOD:
+          // C and Python only agree on the remainder of non-negative operands
+          if (a < 0 || b <= 0) {
+            return null;
+          }
+          result = a % b;
+          break;
+        default:
+          return null;
+      }
+      return fitsInt(result) ? Long.toString(result) : null;
+    }
+    double a = left.doubleValue();
+    double b = right.doubleValue();
+    switch (opcode) {
+      case ADD:
+        return Double.toString(a + b);
+      case SUB:
+        return Double.toString(a - b);
+      case MUL:
+        return Double.toString(a * b);
+      case DIV:
+        return b == 0 ? null : Double.toString(a / b);
+      default:
+        return null;
+    }
+  }
+
+  private static boolean isAssociative(Opcode opcode) {
+    switch (opcode) {
+      case ADD:
+      case MUL:
+      case BIT_AND:
+      case BIT_OR:
+      case BIT_XOR:
+      case AND:
+      case OR:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Orders normalized operands by their fingerprint, with constants last. Operands that only
+   * differ in priming are ordered by their string.
+   */
+  private static int compare(Node first, Node second) {
+    boolean firstConstant = first.expr instanceof Constant;
+    boolean secondConstant = second.expr instanceof Constant;
+    if (firstConstant != secondConstant) {
+      return firstConstant ? 1 : -1;
+    }
+    int result = Long.compare(first.key, second.key);
+    if (result != 0) {
+      return result;
+    }
+    return first.expr.toString(false).compareTo(second.expr.toString(false));
+  }
+
+  /**
+   * Returns the value of an int or double literal, or null.
+   */
+  private static Number valueOf(Constant constant) {
+    switch (constant.getKind()) {
+      case INTEGER:
+        long value = constant.getLongValue();
+        return fitsInt(value) ? value : null;
+      case FLOATING:
+        return constant.getDoubleValue();
+      default:
+        return null;
+    }
+  }
+
+  private static boolean fitsInt(long value) {
+    return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+  }
+
+  private static String format(Number value) {
+    return value instanceof Long ? Long.toString(value.longValue())
+        : Double.toString(value.doubleValue());
+  }
+}
@@ -0,0 +1,26 @@
+package sg.edu.nus.se.its.model;
+
+/**
+ * Callback of a pre- and post-order walk over an expression tree, see
+ * {@link ExpressionWalker#walk(Expression, ExpressionVisitor...)}.
+ */
+public interface ExpressionVisitor {
+
+  /**
+   * Called when the walk reaches the given expression, before its arguments are visited.
+   *
+   * @param expr visited expression
+   * @return whether the arguments of the expression are visited by this visitor
+   */
+  default boolean enter(Expression expr) {
+    return true;
+  }
+
+  /**
+   * Called after the arguments of the given expression have been visited, or right after
+   * {@link #enter} if they are skipped.
+   *
+   * @param expr visited expression
+   */
+  default void leave(Expression expr) {}
+}
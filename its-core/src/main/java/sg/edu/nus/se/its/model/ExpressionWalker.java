@@ -0,0 +1,251 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Traverses expression trees using an explicit stack instead of recursion, so that arbitrarily
+ * deep expressions can be processed. Only the arguments of Operations are considered as children.
+ * Shared subtrees are visited once per occurrence. Each thread reuses its stack across calls, so
+ * that walking a small expression does not allocate.
+ */
+public final class ExpressionWalker {
+
+  private static final ThreadLocal<Stack> STACKS = ThreadLocal.withInitial(Stack::new);
+
+  private ExpressionWalker() {}
+
+  /**
+   * Walks the given expression once and calls all visitors for each node in the same order, i.e.,
+   * several passes are fused into one walk. A visitor whose {@link ExpressionVisitor#enter} returns
+   * false does not see the arguments of that node, while the other visitors still do.
+   *
+   * @param root expression to walk
+   * @param visitors visitors to call
+   */
+  public static void walk(Expression root, ExpressionVisitor... visitors) {
+    int[] skipDepth = new int[visitors.length];
+    Arrays.fill(skipDepth, -1);
+    if (!enter(root, 0, visitors, skipDepth) || !(root instanceof Operation)) {
+      leave(root, 0, visitors, skipDepth);
+      return;
+    }
+    Stack stack = acquire();
+    try {
+      stack.push((Operation) root, 0);
+      while (stack.size > 0) {
+        int top = stack.size - 1;
+        List<Expression> args = stack.ops[top].getArgs();
+        if (stack.next[top] < args.size()) {
+          Expression child = args.get(stack.next[top]++);
+          if (enter(child, stack.size, visitors, skipDepth) && child instanceof Operation) {
+            stack.push((Operation) child, 0);
+          } else {
+            leave(child, stack.size, visitors, skipDepth);
+          }
+        } else {
+          Operation operation = stack.pop();
+          leave(operation, stack.size, visitors, skipDepth);
+        }
+      }
+    } finally {
+      release(stack);
+    }
+  }
+
+  /**
+   * Rewrites the given expression bottom-up. The rewriter is applied to every node after its
+   * arguments have been rewritten, and may return the node itself or a replacement. Replaced
+   * arguments are updated in place in the argument list of their parent. A frozen parent is
+   * replaced by an unfrozen copy instead, which shares its unchanged arguments.
+   *
+   * @param root expression to rewrite
+   * @param rewriter function from a node to its replacement
+   * @return the replacement of the root
+   */
+  public static Expression rewrite(Expression root, UnaryOperator<Expression> rewriter) {
+    if (!(root instanceof Operation)) {
+      return rewriter.apply(root);
+    }
+    Stack stack = acquire();
+    try {
+      stack.push((Operation) root, 0);
+      while (true) {
+        int top = stack.size - 1;
+        Operation operation = stack.ops[top];
+        List<Expression> args = operation.getArgs();
+        if (stack.next[top] < args.size()) {
+          int index = stack.next[top]++;
+          Expression child = args.get(index);
+          if (child instanceof Operation) {
+            stack.push((Operation) child, 0);
+          } else {
+            Expression replacement = rewriter.apply(child);
+            if (replacement != child) {
+              setArg(stack, top, index, replacement);
+            }
+          }
+        } else {
+          stack.pop();
+          Expression replacement = rewriter.apply(operation);
+          if (stack.size == 0) {
+            return replacement;
+          }
+          int parent = stack.size - 1;
+          int index = stack.next[parent] - 1;
+          if (replacement != stack.ops[parent].getArgs().get(index)) {
+            setArg(stack, parent, index, replacement);
+          }
+        }
+      }
+    } finally {
+      release(stack);
+    }
+  }
+
+  /**
+   * Computes a value for the given expression bottom-up, see {@link ExpressionFolder}.
+   *
+   * @param root expression to fold
+   * @param folder computes the value of each node
+   * @return value of the root
+   */
+  public static <R> R fold(Expression root, ExpressionFolder<R> folder) {
+    if (!(root instanceof Operation)) {
+      return folder.leaf(root);
+    }
+    List<R> values = new ArrayList<>();
+    Stack stack = acquire();
+    try {
+      stack.push((Operation) root, 0);
+      while (stack.size > 0) {
+        int top = stack.size - 1;
+        List<Expression> args = stack.ops[top].getArgs();
+        if (stack.next[top] < args.size()) {
+          Expression child = args.get(stack.next[top]++);
+          if (child instanceof Operation) {
+            stack.push((Operation) child, values.size());
+          } else {
+            values.add(folder.leaf(child));
+          }
+        } else {
+          int base = stack.base[top];
+          Operation operation = stack.pop();
+          List<R> argValues = values.subList(base, values.size());
+          R value = folder.node(operation, argValues);
+          argValues.clear();
+          values.add(value);
+        }
+      }
+    } finally {
+      release(stack);
+    }
+    return values.get(0);
+  }
+
+  /**
+   * Returns the stack of the current thread, or a new stack if it is used by an enclosing call,
+   * e.g., by a visitor that walks another expression.
+   */
+  private static Stack acquire() {
+    Stack stack = STACKS.get();
+    if (stack.inUse) {
+      return new Stack();
+    }
+    stack.inUse = true;
+    return stack;
+  }
+
+  private static void release(Stack stack) {
+    stack.clear();
+    stack.inUse = false;
+  }
+
+  /**
+   * Replaces an argument of the operation at the given stack position, copying a frozen operation
+   * first.
+   */
+  private static void setArg(Stack stack, int position, int index, Expression argument) {
+    Operation operation = stack.ops[position];
+    if (operation.isFrozen()) {
+      operation = operation.thaw();
+      stack.ops[position] = operation;
+    }
+    operation.setArg(index, argument);
+  }
+
+  private static boolean enter(Expression expr, int depth, ExpressionVisitor[] visitors,
+      int[] skipDepth) {
+    boolean descend = false;
+    for (int i = 0; i < visitors.length; i++) {
+      if (skipDepth[i] < 0) {
+        if (visitors[i].enter(expr)) {
+          descend = true;
+        } else {
+          skipDepth[i] = depth;
+        }
+      }
+    }
+    return descend;
+  }
+
+  private static void leave(Expression expr, int depth, ExpressionVisitor[] visitors,
+      int[] skipDepth) {
+    for (int i = 0; i < visitors.length; i++) {
+      if (skipDepth[i] < 0) {
+        visitors[i].leave(expr);
+      } else if (skipDepth[i] == depth) {
+        skipDepth[i] = -1;
+        visitors[i].leave(expr);
+      }
+    }
+  }
+
+  /**
+   * Stack of operations whose arguments are being visited, with the index of the next argument
+   * and, for folding, the index of the first argument value of each operation.
+   */
+  private static final class Stack {
+    /**
+     * Capacity up to which a stack keeps its arrays when it is released.
+     */
+    private static final int RETAINED_CAPACITY = 1024;
+
+    private Operation[] ops = new Operation[16];
+    private int[] next = new int[16];
+    private int[] base = new int[16];
+    private int size;
+    private boolean inUse;
+
+    void push(Operation operation, int valueBase) {
+      if (size == ops.length) {
+        ops = Arrays.copyOf(ops, size * 2);
+        next = Arrays.copyOf(next, size * 2);
+        base = Arrays.copyOf(base, size * 2);
+      }
+      ops[size] = operation;
+      next[size] = 0;
+      base[size] = valueBase;
+      size++;
+    }
+
+    Operation pop() {
+      Operation operation = ops[--size];
+      ops[size] = null;
+      return operation;
+    }
+
+    void clear() {
+      if (ops.length > RETAINED_CAPACITY) {
+        ops = new Operation[16];
+        next = new int[16];
+        base = new int[16];
+      } else {
+        Arrays.fill(ops, 0, size, null);
+      }
+      size = 0;
+    }
+  }
+}
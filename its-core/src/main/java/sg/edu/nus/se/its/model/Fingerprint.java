@@ -0,0 +1,215 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.javatuples.Pair;
+
+/**
+ * Stable 64-bit structural fingerprints of expressions, location blocks, functions and programs,
+ * computed bottom-up like a Merkle tree. Equal structures get equal fingerprints in every JVM, so
+ * that fingerprints can be used as keys of persistent caches.
+ *
+ * <p>Fingerprints ignore everything that does not affect the semantics: source line numbers, the
+ * original field, location descriptions, whether variables are primed, and the numbering of
+ * locations. Locations are numbered canonically by a depth-first search from the initial location
+ * that follows the true branch first.
+ */
+public final class Fingerprint {
+
+  private static final long VARIABLE = 0x5641524941424c45L;
+  private static final long CONSTANT = 0x434f4e5354414e54L;
+  private static final long OPERATION = 0x4f5045524154494fL;
+  private static final long OTHER = 0x4f54484552455850L;
+  private static final long NO_TARGET = -1;
+  private static final long UNKNOWN_TARGET = -2;
+
+  private Fingerprint() {}
+
+  /**
+   * Returns the fingerprint of the given expression.
+   */
+  public static long of(Expression expr) {
+    return expr.fold(new ExpressionFolder<Long>() {
+      @Override
+      public Long leaf(Expression node) {
+        return ofLeaf(node);
+      }
+
+      @Override
+      public Long node(Operation operation, List<Long> args) {
+        return ofOperation(operation.getName(), args);
+      }
+    });
+  }
+
+  /**
+   * Returns the fingerprint of an expression that is not an Operation.
+   */
+  static long ofLeaf(Expression expr) {
+    if (expr instanceof Variable) {
+      return combine(VARIABLE, of(((Variable) expr).getUnprimedName()));
+    } else if (expr instanceof Constant) {
+      return combine(CONSTANT, of(((Constant) expr).getValue()));
+    }
+    return combine(OTHER, of(expr.getClass().getName()));
+  }
+
+  /**
+   * Returns the fingerprint of an operation, given the fingerprints of its arguments.
+   */
+  static long ofOperation(String name, List<Long> args) {
+    long hash = combine(OPERATION, of(name));
+    hash = combine(hash, args.size());
+    for (long arg : args) {
+      hash = combine(hash, arg);
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the fingerprint of the assignments of one location, in their order.
+   */
+  public static long of(List<Pair<String, Expression>> exprs) {
+    long hash = exprs.size();
+    for (Pair<String, Expression> pair : exprs) {
+      String var = pair.getValue0();
+      if (var != null && Variable.isPrimedName(var)) {
+        var = Variable.asUnprimedVariableName(var);
+      }
+      hash = combine(hash, of(var));
+      hash = combine(hash, pair.getValue1() == null ? 0 : of(pair.getValue1()));
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the fingerprint of the given function, which covers its signature, declared types,
+   * location blocks and transitions. Uses the cached block fingerprints of the function.
+   */
+  public static long of(Function function) {
+    long hash = combine(of(function.getName()), of(function.getRettype()));
+    if (function.getParams() != null) {
+      hash = combine(hash, function.getParams().size());
+      for (Pair<String, String> param : function.getParams()) {
+        hash = combine(combine(hash, of(param.getValue0())), of(param.getValue1()));
+      }
+    }
+    if (function.getTypes() != null) {
+      for (Map.Entry<String, String> entry : new TreeMap<>(function.getTypes()).entrySet()) {
+        hash = combine(combine(hash, of(entry.getKey())), of(entry.getValue()));
+      }
+    }
+
+    ControlFlowGraph cfg = function.getCfg();
+    int[] order = canonicalOrder(function, cfg);
+    int[] numbers = new int[cfg.size()];
+    for (int i = 0; i < order.length; i++) {
+      numbers[order[i]] = i;
+    }
+    hash = combine(hash, order.length);
+    for (int index : order) {
+      hash = combine(hash, function.getLocationFingerprint(cfg.locationAt(index)));
+      for (boolean cond : new boolean[] {true, false}) {
+        int target = cfg.successorLocation(index, cond);
+        if (!cfg.hasTransition(index, cond)) {
+          hash = combine(hash, NO_TARGET);
+        } else if (!cfg.contains(target)) {
+          hash = combine(hash, UNKNOWN_TARGET);
+        } else {
+          hash = combine(hash, numbers[cfg.indexOf(target)]);
+        }
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the fingerprint of the given program, which combines the fingerprints of its functions
+   * independently of their order.
+   */
+  public static long of(Program program) {
+    long hash = program.getFncs().size();
+    for (Function function : new TreeMap<>(program.getFncs()).values()) {
+      hash = combine(hash, function.getFingerprint());
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the FNV-1a hash of the given string.
+   */
+  static long of(String s) {
+    if (s == null) {
+      return 0;
+    }
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      hash ^= s.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /**
+   * Mixes a value into a hash, such that the result depends on the order of the values.
+   */
+  static long combine(long hash, long value) {
+    long h = hash * 0x9e3779b97f4a7c15L + value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+
+  /**
+   * Returns the indices of all locations in canonical order: reachable locations in DFS preorder
+   * from the initial location, true branch first, followed by the unreachable locations sorted by
+   * their block fingerprint.
+   */
+  private static int[] canonicalOrder(Function function, ControlFlowGraph cfg) {
+    int size = cfg.size();
+    int[] order = new int[size];
+    boolean[] visited = new boolean[size];
+    int count = 0;
+    int entry = cfg.indexOf(function.getInitloc());
+    if (entry != ControlFlowGraph.NONE) {
+      int[] stack = new int[size * 2 + 1];
+      int top = 0;
+      stack[0] = entry;
+      while (top >= 0) {
+        int index = stack[top--];
+        if (visited[index]) {
+          continue;
+        }
+        visited[index] = true;
+        order[count++] = index;
+        int f = cfg.successor(index, false);
+        int t = cfg.successor(index, true);
+        if (f != ControlFlowGraph.NONE && !visited[f]) {
+          stack[++top] = f;
+        }
+        if (t != ControlFlowGraph.NONE && !visited[t]) {
+          stack[++top] = t;
+        }
+      }
+    }
+    if (count < size) {
+      long[] blocks = new long[size];
+      Integer[] unreachable = new Integer[size - count];
+      for (int index = 0, j = 0; index < size; index++) {
+        if (!visited[index]) {
+          blocks[index] = function.getLocationFingerprint(cfg.locationAt(index));
+          unreachable[j++] = index;
+        }
+      }
+      Arrays.sort(unreachable, (a, b) -> Long.compare(blocks[a], blocks[b]));
+      for (int index : unreachable) {
+        order[count++] = index;
+      }
+    }
+    return order;
+  }
+}
@@ -1,9 +1,12 @@
 package sg.edu.nus.se.its.model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.javatuples.Pair;
 import sg.edu.nus.se.its.interpreter.Executable;
@@ -16,6 +19,8 @@ import sg.edu.nus.se.its.util.JsonSerializable;
  */
 public class Function implements JsonSerializable, Executable {
 
+  private static final String SPLITTER = "-".repeat(40);
+
   private String name;
   private String rettype;
   private int initloc;
@@ -26,6 +31,66 @@ public class Function implements JsonSerializable, Executable {
   private HashMap<Integer, String> locdescs;
   private HashMap<String, String> types;
 
+  /**
+   * Whether the tables above are guarded tables, see {@link #seal()}.
+   */
+  private transient boolean sealed;
+
+  /**
+   * Runs before a table of this function is modified through a getter, see
+   * {@link #tableModified()}.
+   */
+  private transient Runnable guard;
+
+  /**
+   * Dense view of loctrans and locdescs. Built on first use and kept in sync by the mutators of
+   * this class.
+   */
+  private transient ControlFlowGraph cfg;
+
+  /**
+   * Dominators and loops of the cfg. Built on first use and dropped on every change of the cfg.
+   */
+  private transient CfgAnalysis cfgAnalysis;
+
+  /**
+   * Variable slots for memory frames. Built on first use; unknown names are added on demand.
+   */
+  private transient SymbolTable symbolTable;
+
+  /**
+   * Definitions and uses of variables per location. Built on first use and kept in sync by the
+   * mutators of this class.
+   */
+  private transient DefUseIndex defUse;
+
+  /**
+   * Largest location id, if maxLocationKnown. Computed on first use and kept up to date by the
+   * mutators of this class, so that new locations can be numbered in constant time.
+   */
+  private transient int maxLocation;
+  private transient boolean maxLocationKnown;
+
+  /**
+   * Structural fingerprints of location blocks and of the whole function, see {@link Fingerprint}.
+   * Computed on first use and dropped by the mutators of this class.
+   */
+  private transient HashMap<Integer, Long> locationFingerprints;
+  private transient long fingerprint;
+  private transient boolean fingerprintKnown;
+
+  /**
+   * Whether this function is read-only, see {@link #freeze()}. Volatile, so that a thread that
+   * sees a frozen function also sees its tables and caches.
+   */
+  private transient volatile boolean frozen;
+
+  /**
+   * Share of this function with the programs derived from its program, see {@link #share()}, or
+   * null if it has not been shared since its last modification.
+   */
+  private transient Share share;
+
   /**
    * Creates new Function object for the given function name, its parameters (tuples of type and
    * name) and the return type.
@@ -35,17 +100,46 @@ public class Function implements JsonSerializable, Executable {
     this.params = params;
     this.rettype = rettype;
 
-    this.locexprs = new HashMap<>();
-    this.loctrans = new HashMap<>();
-    this.locdescs = new HashMap<>();
-    this.types = new HashMap<>();
+    this.locexprs = new GuardedHashMap<>();
+    this.loctrans = new GuardedHashMap<>();
+    this.locdescs = new GuardedHashMap<>();
+    this.types = new GuardedHashMap<>();
+    seal();
   }
 
+  /**
+   * Creates a function from the given tables as they are, without validation. Used by decoders
+   * that have to reproduce stored functions exactly.
+   */
+  Function(String name, ArrayList<Pair<String, String>> params, String rettype, int initloc,
+      int endloc, HashMap<Integer, ArrayList<Pair<String, Expression>>> locexprs,
+      HashMap<Integer, HashMap<Boolean, Integer>> loctrans, HashMap<Integer, String> locdescs,
+      HashMap<String, String> types) {
+    this.name = name;
+    this.params = params;
+    this.rettype = rettype;
+    this.initloc = initloc;
+    this.endloc = endloc;
+    this.locexprs = locexprs;
+    this.loctrans = loctrans;
+    this.locdescs = locdescs;
+    this.types = types;
+    seal();
+  }
+
+  /**
+   * Returns the declared types. Modifying the map drops the cached structures of this function.
+   */
   public HashMap<String, String> getTypes() {
+    seal();
     return types;
   }
 
+  /**
+   * Returns the parameters. Modifying the list drops the cached structures of this function.
+   */
   public ArrayList<Pair<String, String>> getParams() {
+    seal();
     return params;
   }
 
@@ -61,7 +155,12 @@ public class Function implements JsonSerializable, Executable {
     return initloc;
   }
 
+  /**
+   * Returns the location descriptions. Modifying the map drops the cached structures of this
+   * function.
+   */
   public HashMap<Integer, String> getLocdescs() {
+    seal();
     return locdescs;
   }
 
@@ -70,12 +169,15 @@ public class Function implements JsonSerializable, Executable {
   }
 
   /**
-   * Retrieve the expressions at the given code location.
+   * Retrieve the expressions at the given code location. Modifying the list drops the cached
+   * structures of this function, while {@link #invalidateCaches()} has to be called after modifying
+   * expressions in place.
    */
   public List<Pair<String, Expression>> getExprs(int loc) {
-    if (!locexprs.keySet().contains(loc)) {
+    if (!locexprs.containsKey(loc)) {
       throw new RuntimeException(String.format("Unknown location: %d", loc));
     }
+    seal();
     return locexprs.get(loc);
   }
 
@@ -94,27 +196,28 @@ public class Function implements JsonSerializable, Executable {
   }
 
   public boolean locExist(int loc) {
-    return locexprs.keySet().contains(loc);
+    return locexprs.containsKey(loc);
   }
 
   /**
    * Retrieves the number of incoming transitions into a code location.
    */
   public int getTransCount(int loc) {
-    if (!loctrans.containsKey(loc)) {
+    ControlFlowGraph graph = getCfg();
+    int index = graph.indexOf(loc);
+    if (index == ControlFlowGraph.NONE) {
       throw new RuntimeException(String.format("Unknown location: '%d'", loc));
     }
-    int result = 0;
-    for (Integer v : loctrans.get(loc).values()) {
-      if (v != null) {
-        result += 1;
-      }
-    }
-    return result;
+    return graph.transitionCount(index);
   }
 
 
+  /**
+   * Returns the locations. Removing locations from the set drops the cached structures of this
+   * function.
+   */
   public Set<Integer> getLocations() {
+    seal();
     return locexprs.keySet();
   }
 
@@ -126,23 +229,235 @@ public class Function implements JsonSerializable, Executable {
    * @param value the edge to remove
    */
   public void removeTransitionBranch(int loc, boolean value) {
+    checkModifiable();
     assert (loctrans.containsKey(loc));
-    HashMap<Boolean, Integer> hashMap = loctrans.get(loc);
+    GuardedHashMap<Boolean, Integer> hashMap = guardedTrans(transTable().get(loc));
     if (hashMap.containsKey(value)) {
-      hashMap.put(value, null);
+      hashMap.set(value, null);
     }
+    if (cfg != null) {
+      cfg.removeTransition(loc, value);
+    }
+    cfgAnalysis = null;
+    fingerprintKnown = false;
   }
 
+  /**
+   * Returns the expression table. The mutators of this class keep the cached structures in sync
+   * with it, while modifying the table or its lists directly drops the cached structures.
+   */
   public HashMap<Integer, ArrayList<Pair<String, Expression>>> getLocexprs() {
+    seal();
     return locexprs;
   }
 
+  /**
+   * Returns the transition table. The mutators of this class keep the cached structures in sync
+   * with it, while modifying the table or its maps directly drops the cached structures.
+   */
   public HashMap<Integer, HashMap<Boolean, Integer>> getLoctrans() {
+    seal();
     return loctrans;
   }
 
+  /**
+   * Returns the target of the transition from the given location, or null if there is none.
+   */
   public Integer getTrans(int loc, boolean cond) {
-    return loctrans.getOrDefault(loc, new HashMap<>()).get(cond);
+    ControlFlowGraph graph = getCfg();
+    int index = graph.indexOf(loc);
+    if (index == ControlFlowGraph.NONE) {
+      return null;
+    }
+    return graph.hasTransition(index, cond) ? graph.successorLocation(index, cond) : null;
+  }
+
+  /**
+   * Returns the dense control flow graph of this function. The graph is built on first use and
+   * kept in sync with {@link #addLocation}, {@link #addLocationTrans},
+   * {@link #removeTransitionBranch} and {@link #removeLocation}.
+   */
+  public ControlFlowGraph getCfg() {
+    if (cfg == null) {
+      cfg = ControlFlowGraph.build(loctrans, locdescs);
+    }
+    return cfg;
+  }
+
+  /**
+   * Returns the dominator, post-dominator and loop analysis of the control flow graph, with the
+   * initial location as entry. The analysis is built on first use and dropped whenever the graph
+   * changes.
+   */
+  public CfgAnalysis getCfgAnalysis() {
+    if (cfgAnalysis == null) {
+      ControlFlowGraph graph = getCfg();
+      cfgAnalysis = new CfgAnalysis(graph, graph.indexOf(initloc));
+    }
+    return cfgAnalysis;
+  }
+
+  /**
+   * Returns the index of the locations that define and use each variable. The index is built on
+   * first use and kept in sync with {@link #addExpr}, {@link #replaceLocExpressions},
+   * {@link #addLocation} and {@link #removeLocation}.
+   */
+  public DefUseIndex getDefUseIndex() {
+    if (defUse == null) {
+      defUse = DefUseIndex.forFunction(this);
+    }
+    return defUse;
+  }
+
+  /**
+   * Replaces the tables by guarded tables, which run {@link #tableModified()} before they are
+   * modified through a getter. Tables are not guarded if the function was created by reflection,
+   * e.g., by Gson, or if a table has been put into another table through a getter, in which case
+   * they are copied on the next access.
+   */
+  private void seal() {
+    if (sealed) {
+      return;
+    }
+    if (guard == null) {
+      guard = this::tableModified;
+    }
+    params = guarded(params);
+    if (locexprs != null) {
+      GuardedHashMap<Integer, ArrayList<Pair<String, Expression>>> table = guarded(locexprs);
+      for (Map.Entry<Integer, ArrayList<Pair<String, Expression>>> entry : locexprs.entrySet()) {
+        table.set(entry.getKey(), guarded(entry.getValue()));
+      }
+      locexprs = table;
+    }
+    if (loctrans != null) {
+      GuardedHashMap<Integer, HashMap<Boolean, Integer>> table = guarded(loctrans);
+      for (Map.Entry<Integer, HashMap<Boolean, Integer>> entry : loctrans.entrySet()) {
+        table.set(entry.getKey(), guarded(entry.getValue()));
+      }
+      loctrans = table;
+    }
+    locdescs = guarded(locdescs);
+    types = guarded(types);
+    sealed = true;
+  }
+
+  /**
+   * Runs before a table of this function is modified through a getter. The modification is
+   * rejected if this function is frozen, and otherwise the cached structures are dropped, since
+   * they cannot follow such modifications incrementally.
+   */
+  private void tableModified() {
+    checkModifiable();
+    invalidateCaches();
+    sealed = false;
+  }
+
+  /**
+   * Returns the given list if it is guarded by this function, or otherwise a guarded copy.
+   */
+  private <E> GuardedArrayList<E> guarded(ArrayList<E> list) {
+    if (list == null) {
+      return null;
+    }
+    if (list instanceof GuardedArrayList && ((GuardedArrayList<E>) list).adopt(guard)) {
+      return (GuardedArrayList<E>) list;
+    }
+    GuardedArrayList<E> table = new GuardedArrayList<>(list);
+    table.adopt(guard);
+    return table;
+  }
+
+  /**
+   * Returns the given map if it is guarded by this function, or otherwise a guarded copy.
+   */
+  private <K, V> GuardedHashMap<K, V> guarded(HashMap<K, V> map) {
+    if (map == null) {
+      return null;
+    }
+    if (map instanceof GuardedHashMap && ((GuardedHashMap<K, V>) map).adopt(guard)) {
+      return (GuardedHashMap<K, V>) map;
+    }
+    GuardedHashMap<K, V> table = new GuardedHashMap<>(map);
+    table.adopt(guard);
+    return table;
+  }
+
+  private GuardedHashMap<Integer, ArrayList<Pair<String, Expression>>> exprTable() {
+    seal();
+    return (GuardedHashMap<Integer, ArrayList<Pair<String, Expression>>>) locexprs;
+  }
+
+  private GuardedHashMap<Integer, HashMap<Boolean, Integer>> transTable() {
+    seal();
+    return (GuardedHashMap<Integer, HashMap<Boolean, Integer>>) loctrans;
+  }
+
+  private GuardedHashMap<Integer, String> descTable() {
+    seal();
+    return (GuardedHashMap<Integer, String>) locdescs;
+  }
+
+  private GuardedHashMap<String, String> typeTable() {
+    seal();
+    return (GuardedHashMap<String, String>) types;
+  }
+
+  private static GuardedHashMap<Boolean, Integer> guardedTrans(HashMap<Boolean, Integer> trans) {
+    return (GuardedHashMap<Boolean, Integer>) trans;
+  }
+
+  private GuardedHashMap<Boolean, Integer> newTrans(Integer trueLocation, Integer falseLocation) {
+    GuardedHashMap<Boolean, Integer> trans = new GuardedHashMap<>(4);
+    trans.set(true, trueLocation);
+    trans.set(false, falseLocation);
+    trans.adopt(guard);
+    return trans;
+  }
+
+  /**
+   * Drops all cached structures, e.g., after expressions have been modified in place. They are
+   * rebuilt on their next use. The caches of a frozen function are always valid and kept.
+   */
+  public void invalidateCaches() {
+    if (frozen) {
+      return;
+    }
+    cfg = null;
+    cfgAnalysis = null;
+    symbolTable = null;
+    defUse = null;
+    maxLocationKnown = false;
+    locationFingerprints = null;
+    fingerprintKnown = false;
+  }
+
+  /**
+   * Returns the structural fingerprint of this function, see {@link Fingerprint}. It is cached and
+   * dropped by the mutators of this class.
+   */
+  public long getFingerprint() {
+    if (!fingerprintKnown) {
+      fingerprint = Fingerprint.of(this);
+      fingerprintKnown = true;
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Returns the structural fingerprint of the assignments at the given location, which is cached
+   * per location.
+   */
+  public long getLocationFingerprint(int loc) {
+    if (locationFingerprints == null) {
+      locationFingerprints = new HashMap<>();
+    }
+    Long locationFingerprint = locationFingerprints.get(loc);
+    if (locationFingerprint == null) {
+      locationFingerprint = Fingerprint.of(getExprs(loc));
+      locationFingerprints.put(loc, locationFingerprint);
+    }
+    return locationFingerprint;
   }
 
   public String getLocdescAt(int loc) {
@@ -150,6 +465,112 @@ public class Function implements JsonSerializable, Executable {
   }
 
 
+  /**
+   * Returns the symbol table that assigns a slot to every variable of this function, see
+   * {@link SlotMemory}. Since symbol tables grow on demand, a frozen function returns a new copy of
+   * its table on every call.
+   */
+  public SymbolTable getSymbolTable() {
+    if (frozen) {
+      return symbolTable.copy();
+    }
+    if (symbolTable == null) {
+      symbolTable = SymbolTable.forFunction(this);
+    }
+    return symbolTable;
+  }
+
+  /**
+   * Makes this function and all its expressions read-only, so that it can be shared between
+   * threads, e.g., as the reference of many concurrent repairs. All caches are computed eagerly,
+   * and the mutators and the tables returned by the getters throw an
+   * UnsupportedOperationException. The frozen function must be published to other threads safely,
+   * e.g., through an executor or a concurrent collection. Use {@link #shallowCopy()} or
+   * {@link #deepCopy()} to obtain a modifiable function.
+   *
+   * @return this function
+   */
+  public Function freeze() {
+    if (frozen) {
+      return this;
+    }
+    seal();
+    for (List<Pair<String, Expression>> exprs : locexprs.values()) {
+      for (Pair<String, Expression> pair : exprs) {
+        pair.getValue1().freeze();
+      }
+    }
+    getCfgAnalysis();
+    getDefUseIndex();
+    getSymbolTable();
+    getMaxLocation();
+    for (int loc : locexprs.keySet()) {
+      getLocationFingerprint(loc);
+    }
+    getFingerprint();
+    frozen = true;
+    return this;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Shares this function with a derived program, see {@link Program#derive()}. The derived program
+   * obtains its copy from the returned share on first access. If this function is modified before,
+   * it first preserves its current state in the share, so the copy never sees later modifications.
+   */
+  Share share() {
+    if (frozen) {
+      return new Share(this);
+    }
+    if (share == null) {
+      share = new Share(this);
+    }
+    return share;
+  }
+
+  /**
+   * State of a function at the time it was shared with derived programs.
+   */
+  static final class Share {
+    private final Function function;
+    private Function preserved;
+
+    private Share(Function function) {
+      this.function = function;
+    }
+
+    /**
+     * Returns a new copy of the shared state, see {@link Function#shallowCopy()}.
+     */
+    synchronized Function copy() {
+      return preserved != null ? preserved.shallowCopy() : function.shallowCopy();
+    }
+
+    synchronized void preserve() {
+      preserved = function.shallowCopy();
+    }
+
+    /**
+     * Returns a slot that copies the shared state on first access.
+     */
+    LazyFunctionMap.Slot slot() {
+      return new LazyFunctionMap.Slot(this::copy);
+    }
+  }
+
+  private void checkModifiable() {
+    if (frozen) {
+      throw new UnsupportedOperationException(String.format("Function %s is frozen", name));
+    }
+    if (share != null) {
+      share.preserve();
+      share = null;
+    }
+  }
+
   @Override
   public String toString() {
     return toString(true); // original fields are included by default
@@ -162,25 +583,40 @@ public class Function implements JsonSerializable, Executable {
    * @return string representation of function
    */
   public String toString(Boolean withOriginalField) {
-    String functionInfo = String.format("fun %s (%s) : %s", this.name, "", this.rettype);
-    String splitter = String.join("", Collections.nCopies(40, "-"));
-    String initloc = String.format("initloc : %d", this.initloc);
-    String head = String.join("\n", functionInfo, splitter, initloc);
-
-    StringBuilder body = new StringBuilder();
-    for (int loc : this.locexprs.keySet()) {
-      body.append(String.format("\nLoc %s (%s)", loc, this.locdescs.get(loc)));
-      body.append("\n" + splitter);
-
-      for (Pair<String, Expression> pair : this.locexprs.get(loc)) {
-        body.append(String.format("\n  %s := %s", pair.getValue0(),
-            pair.getValue1().toString(withOriginalField)));
+    StringBuilder builder = new StringBuilder();
+    try {
+      writeTo(builder, withOriginalField);
+    } catch (IOException e) {
+      // StringBuilder does not throw
+      throw new UncheckedIOException(e);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Appends the representation of {@link #toString(Boolean)} without building intermediate
+   * strings, e.g., to log a function directly to a Writer.
+   *
+   * @param out destination of the representation
+   * @param withOriginalField denotes if 'original' field is to be added
+   * @throws IOException if appending fails
+   */
+  public void writeTo(Appendable out, boolean withOriginalField) throws IOException {
+    out.append("fun ").append(name).append(" () : ").append(rettype).append('\n')
+        .append(SPLITTER).append("\ninitloc : ").append(String.valueOf(initloc));
+    for (Map.Entry<Integer, ArrayList<Pair<String, Expression>>> entry : locexprs.entrySet()) {
+      int loc = entry.getKey();
+      out.append("\nLoc ").append(String.valueOf(loc)).append(" (")
+          .append(locdescs.get(loc)).append(")\n").append(SPLITTER);
+      for (Pair<String, Expression> pair : entry.getValue()) {
+        out.append("\n  ").append(pair.getValue0()).append(" := ");
+        pair.getValue1().writeTo(out, withOriginalField);
       }
-      body.append("\n" + splitter);
-      body.append(String.format("\n  True -> %s   False -> %s", this.loctrans.get(loc).get(true),
-          this.loctrans.get(loc).get(false)));
+      Map<Boolean, Integer> transitions = loctrans.get(loc);
+      out.append('\n').append(SPLITTER).append("\n  True -> ")
+          .append(String.valueOf(transitions.get(true))).append("   False -> ")
+          .append(String.valueOf(transitions.get(false)));
     }
-    return head + body;
   }
 
   @Override
@@ -202,16 +638,23 @@ public class Function implements JsonSerializable, Executable {
    * @param idx not too sure - set to 0 for now
    */
   public void addExpr(int loc, String var, Expression exprs, int idx) {
+    checkModifiable();
 
     assert this.locexprs.containsKey(loc);
     assert var != null;
     assert exprs != null;
 
+    GuardedArrayList<Pair<String, Expression>> locationExprs =
+        (GuardedArrayList<Pair<String, Expression>>) exprTable().get(loc);
     if (idx == 0) {
-      this.locexprs.get(loc).add(new Pair<>(var, exprs));
+      locationExprs.append(new Pair<>(var, exprs));
     } else {
-      this.locexprs.get(loc).add(idx, new Pair<>(var, exprs));
+      locationExprs.insert(idx, new Pair<>(var, exprs));
+    }
+    if (defUse != null) {
+      defUse.addExpression(loc, var, exprs);
     }
+    dropFingerprints(loc);
   }
 
   /**
@@ -222,12 +665,16 @@ public class Function implements JsonSerializable, Executable {
    * @param falseLocation of type Integer rather than int as falseLocation is nullable
    */
   public void addLocationTrans(int currentLocation, Integer trueLocation, Integer falseLocation) {
+    checkModifiable();
     assert (locdescs.containsKey(currentLocation));
 
-    HashMap<Boolean, Integer> locationTrans = new HashMap<>();
-    locationTrans.put(true, trueLocation);
-    locationTrans.put(false, falseLocation);
-    this.loctrans.put(currentLocation, locationTrans);
+    transTable().set(currentLocation, newTrans(trueLocation, falseLocation));
+    updateMaxLocation(currentLocation);
+    if (cfg != null) {
+      cfg.setTransitions(currentLocation, trueLocation, falseLocation);
+    }
+    cfgAnalysis = null;
+    fingerprintKnown = false;
   }
 
   /**
@@ -238,24 +685,28 @@ public class Function implements JsonSerializable, Executable {
    * @return updated current location
    */
   public int addLocation(int loc, String desc) {
+    checkModifiable();
     if (loc == 0) {
-      if (this.loctrans.size() > 0) {
-        loc = Collections.max(this.loctrans.keySet()) + 1;
-      } else {
-        loc = 1;
-      }
+      loc = getMaxLocation() + 1;
     }
 
     if (this.initloc == 0) {
       this.initloc = loc;
     }
 
-    this.locexprs.put(loc, new ArrayList<>());
-    HashMap<Boolean, Integer> trans = new HashMap<>();
-    trans.put(true, null);
-    trans.put(false, null);
-    this.loctrans.put(loc, trans);
-    this.locdescs.put(loc, desc);
+    exprTable().set(loc, guarded(new GuardedArrayList<>()));
+    transTable().set(loc, newTrans(null, null));
+    descTable().set(loc, desc);
+    updateMaxLocation(loc);
+    if (cfg != null) {
+      cfg.addLocation(loc, desc);
+      cfg.setTransitions(loc, null, null);
+    }
+    cfgAnalysis = null;
+    if (defUse != null) {
+      defUse.removeLocation(loc);
+    }
+    dropFingerprints(loc);
     return loc;
   }
 
@@ -266,13 +717,15 @@ public class Function implements JsonSerializable, Executable {
    * @param type variable type
    */
   public void addType(String var, String type) {
+    checkModifiable();
     assert var != null;
     assert type != null;
 
     if (this.types.containsKey(var)) {
       return;
     }
-    this.types.put(var, type);
+    typeTable().set(var, type);
+    fingerprintKnown = false;
   }
 
   /**
@@ -282,18 +735,62 @@ public class Function implements JsonSerializable, Executable {
    * @param loc location to be removed
    */
   public void removeLocation(int loc) {
+    checkModifiable();
     assert this.locexprs.containsKey(loc);
-    this.locexprs.remove(loc);
+    exprTable().delete(loc);
     assert this.locdescs.containsKey(loc);
-    this.locdescs.remove(loc);
+    descTable().delete(loc);
     assert this.loctrans.containsKey(loc);
-    this.loctrans.remove(loc);
-
+    transTable().delete(loc);
+    if (maxLocationKnown && loc == maxLocation) {
+      maxLocationKnown = false;
+    }
+    if (cfg != null) {
+      cfg.removeLocation(loc);
+    }
+    cfgAnalysis = null;
+    if (defUse != null) {
+      defUse.removeLocation(loc);
+    }
+    dropFingerprints(loc);
   }
 
+  /**
+   * Replaces the expressions at the given location by a copy of the given list.
+   */
   public void replaceLocExpressions(int location,
       ArrayList<Pair<String, Expression>> locationExprs) {
-    locexprs.put(location, locationExprs);
+    checkModifiable();
+    ArrayList<Pair<String, Expression>> copy = guarded(new GuardedArrayList<>(locationExprs));
+    exprTable().set(location, copy);
+    if (defUse != null) {
+      defUse.setLocation(location, copy);
+    }
+    dropFingerprints(location);
+  }
+
+  /**
+   * Returns the largest location id, or 0 if the function has no locations.
+   */
+  private int getMaxLocation() {
+    if (!maxLocationKnown) {
+      maxLocation = loctrans.isEmpty() ? 0 : Collections.max(loctrans.keySet());
+      maxLocationKnown = true;
+    }
+    return maxLocation;
+  }
+
+  private void dropFingerprints(int loc) {
+    if (locationFingerprints != null) {
+      locationFingerprints.remove(loc);
+    }
+    fingerprintKnown = false;
+  }
+
+  private void updateMaxLocation(int loc) {
+    if (maxLocationKnown && loc > maxLocation) {
+      maxLocation = loc;
+    }
   }
 
   public String getLocationDesc(int location) {
@@ -301,4 +798,216 @@ public class Function implements JsonSerializable, Executable {
     return locdescs.get(location);
   }
 
+  /**
+   * Creates a copy of this function that shares no mutable state with it. All location tables and
+   * expressions are copied directly, without any serialization.
+   *
+   * @return copied function
+   */
+  public Function deepCopy() {
+    return copy(true);
+  }
+
+  /**
+   * Creates a copy of this function with its own location tables, which shares the Expression
+   * objects with this function. Expressions of the copy must therefore be replaced, e.g., via
+   * {@link #replaceLocExpressions}, instead of being modified in place.
+   *
+   * @return copied function
+   */
+  public Function shallowCopy() {
+    return copy(false);
+  }
+
+  private Function copy(boolean copyExpressions) {
+    Function copy = new Function(name, params, rettype);
+    copy.initloc = initloc;
+    copy.endloc = endloc;
+    if (locexprs != null) {
+      GuardedHashMap<Integer, ArrayList<Pair<String, Expression>>> copiedExprs =
+          copy.guarded(new GuardedHashMap<>(Math.max(16, locexprs.size() * 2)));
+      for (Map.Entry<Integer, ArrayList<Pair<String, Expression>>> entry : locexprs.entrySet()) {
+        GuardedArrayList<Pair<String, Expression>> exprs =
+            copy.guarded(new GuardedArrayList<>(entry.getValue().size()));
+        for (Pair<String, Expression> pair : entry.getValue()) {
+          exprs.append(copyExpressions ? new Pair<>(pair.getValue0(), pair.getValue1().deepCopy())
+              : pair);
+        }
+        copiedExprs.set(entry.getKey(), exprs);
+      }
+      copy.locexprs = copiedExprs;
+    } else {
+      copy.locexprs = null;
+    }
+    if (loctrans != null) {
+      GuardedHashMap<Integer, HashMap<Boolean, Integer>> copiedTrans =
+          copy.guarded(new GuardedHashMap<>(Math.max(16, loctrans.size() * 2)));
+      for (Map.Entry<Integer, HashMap<Boolean, Integer>> entry : loctrans.entrySet()) {
+        copiedTrans.set(entry.getKey(),
+            copy.guarded(entry.getValue() == null ? null : new GuardedHashMap<>(entry.getValue())));
+      }
+      copy.loctrans = copiedTrans;
+    } else {
+      copy.loctrans = null;
+    }
+    copy.locdescs = locdescs == null ? null : copy.guarded(new GuardedHashMap<>(locdescs));
+    copy.types = types == null ? null : copy.guarded(new GuardedHashMap<>(types));
+    return copy;
+  }
+
+  /**
+   * Builds a function in bulk, e.g., in a parser or a refactoring rule. Location ids are allocated
+   * in constant time, the location tables are presized, and the control flow is validated once in
+   * {@link #build()} instead of on every insertion. A builder can only be used once.
+   */
+  public static class Builder {
+
+    private final Function function;
+    private int maxLocation;
+    private boolean built;
+
+    public Builder(String name, ArrayList<Pair<String, String>> params, String rettype) {
+      this(name, params, rettype, 16);
+    }
+
+    /**
+     * Creates a builder whose tables have room for the given number of locations.
+     */
+    public Builder(String name, ArrayList<Pair<String, String>> params, String rettype,
+        int expectedLocations) {
+      function = new Function(name, params, rettype);
+      int capacity = Math.max(16, (int) (expectedLocations / 0.75f) + 1);
+      function.locexprs = function.guarded(new GuardedHashMap<>(capacity));
+      function.loctrans = function.guarded(new GuardedHashMap<>(capacity));
+      function.locdescs = function.guarded(new GuardedHashMap<>(capacity));
+    }
+
+    /**
+     * Adds a location with the next free id. The first added location becomes the initial
+     * location, unless set otherwise.
+     *
+     * @param desc description of the location
+     * @return id of the new location
+     */
+    public int addLocation(String desc) {
+      return addLocation(maxLocation + 1, desc);
+    }
+
+    /**
+     * Adds a location with the given id, replacing an existing location with that id.
+     *
+     * @param loc location id, must be positive
+     * @param desc description of the location
+     * @return id of the location
+     */
+    public int addLocation(int loc, String desc) {
+      checkNotBuilt();
+      if (loc <= 0) {
+        throw new RuntimeException(String.format("Invalid location: %d", loc));
+      }
+      if (function.initloc == 0) {
+        function.initloc = loc;
+      }
+      function.exprTable().set(loc, function.guarded(new GuardedArrayList<>()));
+      function.transTable().set(loc, function.newTrans(null, null));
+      function.descTable().set(loc, desc);
+      maxLocation = Math.max(maxLocation, loc);
+      return loc;
+    }
+
+    /**
+     * Appends the assignment of the given expression to the given variable at a location.
+     */
+    public Builder addExpr(int loc, String var, Expression expr) {
+      checkNotBuilt();
+      GuardedArrayList<Pair<String, Expression>> exprs =
+          (GuardedArrayList<Pair<String, Expression>>) function.exprTable().get(loc);
+      if (exprs == null) {
+        throw new RuntimeException(String.format("Unknown location: %d", loc));
+      }
+      exprs.append(new Pair<>(var, expr));
+      return this;
+    }
+
+    /**
+     * Sets the transitions of a location. The targets are validated in {@link #build()}.
+     *
+     * @param loc location to update
+     * @param trueLocation target of the true branch, nullable
+     * @param falseLocation target of the false branch, nullable
+     */
+    public Builder setTransitions(int loc, Integer trueLocation, Integer falseLocation) {
+      checkNotBuilt();
+      if (!function.loctrans.containsKey(loc)) {
+        throw new RuntimeException(String.format("Unknown location: %d", loc));
+      }
+      function.transTable().set(loc, function.newTrans(trueLocation, falseLocation));
+      return this;
+    }
+
+    /**
+     * Adds the type of a variable, keeping the first type added for each variable.
+     */
+    public Builder addType(String var, String type) {
+      checkNotBuilt();
+      if (!function.types.containsKey(var)) {
+        function.typeTable().set(var, type);
+      }
+      return this;
+    }
+
+    public Builder setInitloc(int initloc) {
+      checkNotBuilt();
+      function.initloc = initloc;
+      return this;
+    }
+
+    public Builder setEndloc(int endloc) {
+      checkNotBuilt();
+      function.endloc = endloc;
+      return this;
+    }
+
+    /**
+     * Validates the control flow and returns the function.
+     *
+     * @return built function
+     * @throws RuntimeException if an expression is incomplete, or the initial location or a
+     *         transition target does not exist
+     */
+    public Function build() {
+      checkNotBuilt();
+      if (function.initloc != 0 && !function.loctrans.containsKey(function.initloc)) {
+        throw new RuntimeException(
+            String.format("Unknown initial location: %d", function.initloc));
+      }
+      for (Map.Entry<Integer, HashMap<Boolean, Integer>> entry : function.loctrans.entrySet()) {
+        for (Integer target : entry.getValue().values()) {
+          if (target != null && !function.loctrans.containsKey(target)) {
+            throw new RuntimeException(String.format(
+                "Unknown target location %d in transition from %d", target, entry.getKey()));
+          }
+        }
+      }
+      for (Map.Entry<Integer, ArrayList<Pair<String, Expression>>> entry : function.locexprs
+          .entrySet()) {
+        for (Pair<String, Expression> pair : entry.getValue()) {
+          if (pair.getValue0() == null || pair.getValue1() == null) {
+            throw new RuntimeException(
+                String.format("Incomplete expression at location %d", entry.getKey()));
+          }
+        }
+      }
+      built = true;
+      function.maxLocation = maxLocation;
+      function.maxLocationKnown = true;
+      return function;
+    }
+
+    private void checkNotBuilt() {
+      if (built) {
+        throw new RuntimeException("Function has already been built");
+      }
+    }
+  }
 }
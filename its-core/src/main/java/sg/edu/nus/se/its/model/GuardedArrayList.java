@@ -0,0 +1,220 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * ArrayList that runs a guard before every modification, including those through its iterators
+ * and sublists. Used for the tables of functions, so that a function can drop its cached
+ * structures, or reject the modification if it is frozen, when a caller modifies a table returned
+ * by one of its getters. The function itself modifies its tables through {@link #append} and
+ * {@link #insert}, which skip the guard.
+ */
+final class GuardedArrayList<E> extends ArrayList<E> {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Runs before every modification, or null. It is neither serialized nor cloned.
+   */
+  private transient Runnable guard;
+
+  /**
+   * View of the elements, whose iterators and sublists modify this list through its guarded
+   * methods. Created on first use, since it is neither serialized nor cloned.
+   */
+  private transient List<E> view;
+
+  GuardedArrayList() {
+    super();
+  }
+
+  GuardedArrayList(int initialCapacity) {
+    super(initialCapacity);
+  }
+
+  GuardedArrayList(Collection<? extends E> elements) {
+    super(elements);
+  }
+
+  /**
+   * Sets the guard, unless this list has another guard already.
+   *
+   * @return whether this list is guarded by the given guard
+   */
+  boolean adopt(Runnable guard) {
+    if (this.guard == null) {
+      this.guard = guard;
+    }
+    return this.guard == guard;
+  }
+
+  /**
+   * Appends an element, bypassing the guard.
+   */
+  void append(E element) {
+    super.add(element);
+  }
+
+  /**
+   * Inserts an element at the given position, bypassing the guard.
+   */
+  void insert(int index, E element) {
+    super.add(index, element);
+  }
+
+  private void modifying() {
+    if (guard != null) {
+      guard.run();
+    }
+  }
+
+  private List<E> view() {
+    if (view == null) {
+      view = new AbstractList<E>() {
+        @Override
+        public E get(int index) {
+          return GuardedArrayList.this.get(index);
+        }
+
+        @Override
+        public int size() {
+          return GuardedArrayList.this.size();
+        }
+
+        @Override
+        public E set(int index, E element) {
+          return GuardedArrayList.this.set(index, element);
+        }
+
+        @Override
+        public void add(int index, E element) {
+          GuardedArrayList.this.add(index, element);
+        }
+
+        @Override
+        public E remove(int index) {
+          return GuardedArrayList.this.remove(index);
+        }
+      };
+    }
+    return view;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return view().iterator();
+  }
+
+  @Override
+  public ListIterator<E> listIterator() {
+    return view().listIterator();
+  }
+
+  @Override
+  public ListIterator<E> listIterator(int index) {
+    return view().listIterator(index);
+  }
+
+  @Override
+  public List<E> subList(int fromIndex, int toIndex) {
+    return view().subList(fromIndex, toIndex);
+  }
+
+  /**
+   * Returns a copy without guard, whose view reads the copy.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object clone() {
+    GuardedArrayList<E> copy = (GuardedArrayList<E>) super.clone();
+    copy.guard = null;
+    copy.view = null;
+    return copy;
+  }
+
+  @Override
+  public boolean add(E element) {
+    modifying();
+    return super.add(element);
+  }
+
+  @Override
+  public void add(int index, E element) {
+    modifying();
+    super.add(index, element);
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends E> elements) {
+    modifying();
+    return super.addAll(elements);
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends E> elements) {
+    modifying();
+    return super.addAll(index, elements);
+  }
+
+  @Override
+  public E set(int index, E element) {
+    modifying();
+    return super.set(index, element);
+  }
+
+  @Override
+  public E remove(int index) {
+    modifying();
+    return super.remove(index);
+  }
+
+  @Override
+  public boolean remove(Object element) {
+    modifying();
+    return super.remove(element);
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> elements) {
+    modifying();
+    return super.removeAll(elements);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> elements) {
+    modifying();
+    return super.retainAll(elements);
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super E> filter) {
+    modifying();
+    return super.removeIf(filter);
+  }
+
+  @Override
+  public void replaceAll(UnaryOperator<E> operator) {
+    modifying();
+    super.replaceAll(operator);
+  }
+
+  @Override
+  public void sort(Comparator<? super E> comparator) {
+    modifying();
+    super.sort(comparator);
+  }
+
+  @Override
+  public void clear() {
+    modifying();
+    super.clear();
+  }
+}
@@ -0,0 +1,326 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * HashMap that runs a guard before every modification, including those through its views and
+ * entries. Used for the tables of functions, so that a function can drop its cached structures, or
+ * reject the modification if it is frozen, when a caller modifies a table returned by one of its
+ * getters. The function itself modifies its tables through {@link #set} and {@link #delete}, which
+ * skip the guard.
+ */
+final class GuardedHashMap<K, V> extends HashMap<K, V> {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Runs before every modification, or null. It is neither serialized nor cloned.
+   */
+  private transient Runnable guard;
+
+  GuardedHashMap() {
+    super();
+  }
+
+  GuardedHashMap(int initialCapacity) {
+    super(initialCapacity);
+  }
+
+  /**
+   * Copies the given map. The entries are inserted one by one, like in a map that has grown from
+   * the default capacity, so the iteration order of such maps is kept.
+   */
+  GuardedHashMap(Map<? extends K, ? extends V> map) {
+    super();
+    for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+      super.put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Sets the guard, unless this map has another guard already.
+   *
+   * @return whether this map is guarded by the given guard
+   */
+  boolean adopt(Runnable guard) {
+    if (this.guard == null) {
+      this.guard = guard;
+    }
+    return this.guard == guard;
+  }
+
+  /**
+   * Maps a key to a value, bypassing the guard.
+   */
+  V set(K key, V value) {
+    return super.put(key, value);
+  }
+
+  /**
+   * Removes a key, bypassing the guard.
+   */
+  V delete(Object key) {
+    return super.remove(key);
+  }
+
+  private void modifying() {
+    if (guard != null) {
+      guard.run();
+    }
+  }
+
+  private <T> Iterator<T> guarded(Iterator<T> iterator) {
+    return new Iterator<T>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public T next() {
+        return iterator.next();
+      }
+
+      @Override
+      public void remove() {
+        modifying();
+        iterator.remove();
+      }
+    };
+  }
+
+  @Override
+  public Set<K> keySet() {
+    Set<K> keys = super.keySet();
+    return new AbstractSet<K>() {
+      @Override
+      public Iterator<K> iterator() {
+        return guarded(keys.iterator());
+      }
+
+      @Override
+      public int size() {
+        return GuardedHashMap.this.size();
+      }
+
+      @Override
+      public boolean contains(Object key) {
+        return containsKey(key);
+      }
+
+      @Override
+      public void clear() {
+        GuardedHashMap.this.clear();
+      }
+    };
+  }
+
+  @Override
+  public Collection<V> values() {
+    Collection<V> values = super.values();
+    return new AbstractCollection<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        return guarded(values.iterator());
+      }
+
+      @Override
+      public int size() {
+        return GuardedHashMap.this.size();
+      }
+
+      @Override
+      public boolean contains(Object value) {
+        return containsValue(value);
+      }
+
+      @Override
+      public void clear() {
+        GuardedHashMap.this.clear();
+      }
+    };
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    Set<Entry<K, V>> entries = super.entrySet();
+    return new AbstractSet<Entry<K, V>>() {
+      @Override
+      public Iterator<Entry<K, V>> iterator() {
+        Iterator<Entry<K, V>> iterator = guarded(entries.iterator());
+        return new Iterator<Entry<K, V>>() {
+          @Override
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          @Override
+          public Entry<K, V> next() {
+            return new GuardedEntry(iterator.next());
+          }
+
+          @Override
+          public void remove() {
+            iterator.remove();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return GuardedHashMap.this.size();
+      }
+
+      @Override
+      public boolean contains(Object entry) {
+        return entries.contains(entry);
+      }
+
+      @Override
+      public void clear() {
+        GuardedHashMap.this.clear();
+      }
+    };
+  }
+
+  /**
+   * Entry whose {@link #setValue} runs the guard.
+   */
+  private final class GuardedEntry implements Entry<K, V> {
+    private final Entry<K, V> entry;
+
+    GuardedEntry(Entry<K, V> entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public K getKey() {
+      return entry.getKey();
+    }
+
+    @Override
+    public V getValue() {
+      return entry.getValue();
+    }
+
+    @Override
+    public V setValue(V value) {
+      modifying();
+      return entry.setValue(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return entry.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+      return entry.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return entry.toString();
+    }
+  }
+
+  /**
+   * Returns a copy without guard.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object clone() {
+    GuardedHashMap<K, V> copy = (GuardedHashMap<K, V>) super.clone();
+    copy.guard = null;
+    return copy;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    modifying();
+    return super.put(key, value);
+  }
+
+  @Override
+  public void putAll(Map<? extends K, ? extends V> map) {
+    modifying();
+    super.putAll(map);
+  }
+
+  @Override
+  public V remove(Object key) {
+    modifying();
+    return super.remove(key);
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    modifying();
+    return super.remove(key, value);
+  }
+
+  @Override
+  public void clear() {
+    modifying();
+    super.clear();
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    modifying();
+    return super.putIfAbsent(key, value);
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    modifying();
+    return super.replace(key, value);
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    modifying();
+    return super.replace(key, oldValue, newValue);
+  }
+
+  @Override
+  public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+    modifying();
+    super.replaceAll(function);
+  }
+
+  @Override
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    modifying();
+    return super.compute(key, remappingFunction);
+  }
+
+  @Override
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    modifying();
+    return super.computeIfAbsent(key, mappingFunction);
+  }
+
+  @Override
+  public V computeIfPresent(K key,
+      BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    modifying();
+    return super.computeIfPresent(key, remappingFunction);
+  }
+
+  @Override
+  public V merge(K key, V value,
+      BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    modifying();
+    return super.merge(key, value, remappingFunction);
+  }
+}
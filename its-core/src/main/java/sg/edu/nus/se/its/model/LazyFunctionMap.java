@@ -0,0 +1,206 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Map of functions by name, whose functions are decoded on first access, see
+ * {@link ProgramBinaryCodec#decodeLazily(byte[])}. Keys and sizes are available without decoding,
+ * while a lookup or the value of an entry decodes the function once. The iteration order is the
+ * order of insertion.
+ *
+ * <p>{@link #put}, {@link #remove} and {@link Map.Entry#setValue} return the previous function,
+ * so they decode it. A function is removed without decoding through {@link #keySet()} or the
+ * iterator of {@link #entrySet()}.
+ */
+final class LazyFunctionMap extends AbstractMap<String, Function> {
+
+  /**
+   * Functions or the slots of functions that may not have been decoded yet.
+   */
+  private final LinkedHashMap<String, Object> values;
+
+  LazyFunctionMap() {
+    this.values = new LinkedHashMap<>();
+  }
+
+  /**
+   * Function that is decoded on first access. A slot can be shared by several maps, which then see
+   * the same function.
+   */
+  static final class Slot {
+    private Supplier<Function> decoder;
+    private Function function;
+
+    Slot(Supplier<Function> decoder) {
+      this.decoder = decoder;
+    }
+
+    synchronized Function get() {
+      if (decoder != null) {
+        function = decoder.get();
+        decoder = null;
+      }
+      return function;
+    }
+
+    synchronized boolean isDecoded() {
+      return decoder == null;
+    }
+
+    /**
+     * Returns a slot for a derived program. If this slot has not been decoded yet, the new slot
+     * decodes its own function, and otherwise it copies the decoded function on first access.
+     */
+    synchronized Slot derive() {
+      if (decoder != null) {
+        return new Slot(decoder);
+      }
+      return function == null ? new Slot(() -> null) : function.share().slot();
+    }
+  }
+
+  /**
+   * Adds a function, its slot or null.
+   */
+  void putValue(String name, Object value) {
+    values.put(name, value);
+  }
+
+  /**
+   * Returns whether the function with the given name is decoded, or absent.
+   */
+  boolean isDecoded(String name) {
+    Object value = values.get(name);
+    return !(value instanceof Slot) || ((Slot) value).isDecoded();
+  }
+
+  /**
+   * Returns a map with the functions of the given map for a derived program, see
+   * {@link Program#derive()}. Each function is copied on first access to the new map. A function
+   * that occurs several times in the maps of a program gets the same slot from the given slots, so
+   * it is copied once.
+   */
+  static LazyFunctionMap derive(Map<String, Function> functions, Map<Object, Slot> slots) {
+    Map<String, ?> entries =
+        functions instanceof LazyFunctionMap ? ((LazyFunctionMap) functions).values : functions;
+    LazyFunctionMap derived = new LazyFunctionMap();
+    for (Map.Entry<String, ?> entry : entries.entrySet()) {
+      Object value = entry.getValue();
+      derived.values.put(entry.getKey(), value == null ? null
+          : slots.computeIfAbsent(value, LazyFunctionMap::deriveSlot));
+    }
+    return derived;
+  }
+
+  private static Slot deriveSlot(Object value) {
+    return value instanceof Slot ? ((Slot) value).derive() : ((Function) value).share().slot();
+  }
+
+  private static Function resolve(Object value) {
+    return value instanceof Slot ? ((Slot) value).get() : (Function) value;
+  }
+
+  @Override
+  public int size() {
+    return values.size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return values.containsKey(key);
+  }
+
+  @Override
+  public Function get(Object key) {
+    return resolve(values.get(key));
+  }
+
+  @Override
+  public Function put(String key, Function value) {
+    return resolve(values.put(key, value));
+  }
+
+  @Override
+  public Function remove(Object key) {
+    return resolve(values.remove(key));
+  }
+
+  @Override
+  public void clear() {
+    values.clear();
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return values.keySet();
+  }
+
+  @Override
+  public Set<Entry<String, Function>> entrySet() {
+    return new AbstractSet<Entry<String, Function>>() {
+      @Override
+      public Iterator<Entry<String, Function>> iterator() {
+        Iterator<Entry<String, Object>> iterator = values.entrySet().iterator();
+        return new Iterator<Entry<String, Function>>() {
+          @Override
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          @Override
+          public Entry<String, Function> next() {
+            Entry<String, Object> entry = iterator.next();
+            return new Entry<String, Function>() {
+              @Override
+              public String getKey() {
+                return entry.getKey();
+              }
+
+              @Override
+              public Function getValue() {
+                return resolve(entry.getValue());
+              }
+
+              @Override
+              public Function setValue(Function value) {
+                return resolve(entry.setValue(value));
+              }
+
+              @Override
+              public boolean equals(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                  return false;
+                }
+                Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+                return Objects.equals(getKey(), other.getKey())
+                    && Objects.equals(getValue(), other.getValue());
+              }
+
+              @Override
+              public int hashCode() {
+                return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+              }
+            };
+          }
+
+          @Override
+          public void remove() {
+            iterator.remove();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return values.size();
+      }
+    };
+  }
+}
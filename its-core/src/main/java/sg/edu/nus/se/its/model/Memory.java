@@ -16,4 +16,13 @@ public class Memory extends HashMap<String, Object> {
   public Object getValueForVariable(String variableName) {
     return this.get(variableName);
   }
+
+  /**
+   * Returns a copy of this memory, e.g., to record its current state in a trace entry.
+   */
+  public Memory copy() {
+    Memory copy = new Memory();
+    copy.putAll(this);
+    return copy;
+  }
 }
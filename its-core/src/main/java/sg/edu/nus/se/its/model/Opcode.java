@@ -0,0 +1,150 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import sg.edu.nus.se.its.util.Constants;
+
+/**
+ * Operators of {@link Operation} expressions, resolved once from the operation name. The name
+ * stays the authoritative representation of an operation; names without a known operator resolve
+ * to UNKNOWN.
+ */
+public enum Opcode {
+  LT("<", 2, 2, Category.COMPARISON, false),
+  LE("<=", 2, 2, Category.COMPARISON, false),
+  GT(">", 2, 2, Category.COMPARISON, false),
+  GE(">=", 2, 2, Category.COMPARISON, false),
+  EQ("==", 2, 2, Category.COMPARISON, true),
+  NE("!=", 2, 2, Category.COMPARISON, true),
+  ADD("+", 1, 2, Category.ARITHMETIC, true),
+  SUB("-", 1, 2, Category.ARITHMETIC, false),
+  MUL("*", 2, 2, Category.ARITHMETIC, true),
+  DIV("/", 2, 2, Category.ARITHMETIC, false),
+  MOD("%", 2, 2, Category.ARITHMETIC, false),
+  FLOOR_DIV("//", 2, 2, Category.ARITHMETIC, false),
+  AND("&&", 2, 2, Category.LOGICAL, false),
+  OR("||", 2, 2, Category.LOGICAL, false),
+  NOT("!", 1, 1, Category.LOGICAL, false),
+  BIT_AND("&", 2, 2, Category.BITWISE, true),
+  BIT_OR("|", 2, 2, Category.BITWISE, true),
+  BIT_XOR("^", 2, 2, Category.BITWISE, true),
+  BIT_NOT("~", 1, 1, Category.BITWISE, false),
+  SHIFT_LEFT("<<", 2, 2, Category.BITWISE, false),
+  SHIFT_RIGHT(">>", 2, 2, Category.BITWISE, false),
+  FLOOR("floor", 1, 1, Category.FUNCTION, false),
+  CEIL("ceil", 1, 1, Category.FUNCTION, false),
+  POW("pow", 2, 2, Category.FUNCTION, false),
+  ABS("abs", 1, 1, Category.FUNCTION, false),
+  SQRT("sqrt", 1, 1, Category.FUNCTION, false),
+  LOG2("log2", 1, 1, Category.FUNCTION, false),
+  LOG10("log10", 1, 1, Category.FUNCTION, false),
+  LOG("log", 1, 1, Category.FUNCTION, false),
+  EXP("exp", 1, 1, Category.FUNCTION, false),
+  ITE(Constants.CONDITIONAL_OPERATOR, 3, 3, Category.CONDITIONAL, false),
+  STR_APPEND(Constants.STRING_APPEND, 2, 2, Category.STRING, false),
+  STR_FORMAT(Constants.STRING_FORMAT, 1, Integer.MAX_VALUE, Category.STRING, false),
+  LIST_HEAD("ListHead", 2, 2, Category.LIST, false),
+  LIST_TAIL("ListTail", 1, 1, Category.LIST, false),
+  ARRAY_CREATE(Constants.ARRAY_CREATE, 1, 1, Category.ARRAY, false),
+  ARRAY_ASSIGN(Constants.ARRAY_ASSIGN, 3, 3, Category.ARRAY, false),
+  FUNC_CALL(Constants.FUNCTION_CALL, 1, Integer.MAX_VALUE, Category.CALL, false),
+  UNKNOWN(null, 0, Integer.MAX_VALUE, Category.UNKNOWN, false);
+
+  /**
+   * Kinds of operators.
+   */
+  public enum Category {
+    COMPARISON, ARITHMETIC, LOGICAL, BITWISE, FUNCTION, CONDITIONAL, STRING, LIST, ARRAY, CALL,
+    UNKNOWN
+  }
+
+  private static final Map<String, Opcode> BY_SYMBOL = new HashMap<>();
+
+  private static final Map<String, Opcode> BY_PYTHON_NAME = new HashMap<>();
+
+  static {
+    for (Opcode opcode : values()) {
+      if (opcode.symbol != null) {
+        BY_SYMBOL.put(opcode.symbol, opcode);
+      }
+    }
+    Map<String, Opcode> pythonSymbols = new HashMap<>(BY_SYMBOL);
+    pythonSymbols.put("and", AND);
+    pythonSymbols.put("or", OR);
+    pythonSymbols.put("not", NOT);
+    pythonSymbols.put("**", POW);
+    for (Map<String, String> names : List.of(Constants.BINARY_OPS_PYTHON,
+        Constants.UNARY_OPS_PYTHON)) {
+      for (Map.Entry<String, String> entry : names.entrySet()) {
+        BY_PYTHON_NAME.put(entry.getKey(), pythonSymbols.getOrDefault(entry.getValue(), UNKNOWN));
+      }
+    }
+  }
+
+  private final String symbol;
+  private final int minArity;
+  private final int maxArity;
+  private final Category category;
+  private final boolean commutative;
+
+  Opcode(String symbol, int minArity, int maxArity, Category category, boolean commutative) {
+    this.symbol = symbol;
+    this.minArity = minArity;
+    this.maxArity = maxArity;
+    this.category = category;
+    this.commutative = commutative;
+  }
+
+  /**
+   * Returns the opcode of the given operation name, or UNKNOWN.
+   */
+  public static Opcode of(String name) {
+    return name == null ? UNKNOWN : BY_SYMBOL.getOrDefault(name, UNKNOWN);
+  }
+
+  /**
+   * Returns the opcode of the given Python AST operator name, e.g., "Add" or "USub", see
+   * {@link Constants#BINARY_OPS_PYTHON} and {@link Constants#UNARY_OPS_PYTHON}, or UNKNOWN.
+   */
+  public static Opcode ofPythonName(String name) {
+    return name == null ? UNKNOWN : BY_PYTHON_NAME.getOrDefault(name, UNKNOWN);
+  }
+
+  /**
+   * Returns the operation name of this opcode, or null for UNKNOWN.
+   */
+  public String getSymbol() {
+    return symbol;
+  }
+
+  public int getMinArity() {
+    return minArity;
+  }
+
+  /**
+   * Returns the maximal number of arguments, or Integer.MAX_VALUE if the number is not bounded.
+   */
+  public int getMaxArity() {
+    return maxArity;
+  }
+
+  /**
+   * Returns whether an operation with this opcode can have the given number of arguments.
+   */
+  public boolean acceptsArity(int arity) {
+    return arity >= minArity && arity <= maxArity;
+  }
+
+  public Category getCategory() {
+    return category;
+  }
+
+  /**
+   * Returns whether the arguments of a binary operation with this opcode can be swapped without
+   * changing its value. Logical operators are not commutative, since they short-circuit.
+   */
+  public boolean isCommutative() {
+    return commutative;
+  }
+}
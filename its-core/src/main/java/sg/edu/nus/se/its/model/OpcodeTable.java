@@ -0,0 +1,61 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.EnumMap;
+
+/**
+ * Maps opcodes to handlers, e.g., the evaluation functions of an interpreter or the templates of a
+ * repair generator, so that an operation is dispatched with one array lookup instead of comparing
+ * its name against lists of operator names. The handler type is chosen by the user.
+ *
+ * @param <H> type of the handlers
+ */
+public class OpcodeTable<H> {
+
+  private final EnumMap<Opcode, H> handlers = new EnumMap<>(Opcode.class);
+
+  private final H fallback;
+
+  /**
+   * Creates a table that returns the given fallback for opcodes without a handler.
+   *
+   * @param fallback handler for unregistered opcodes, nullable
+   */
+  public OpcodeTable(H fallback) {
+    this.fallback = fallback;
+  }
+
+  /**
+   * Registers the handler of an opcode, replacing any previous handler.
+   */
+  public OpcodeTable<H> put(Opcode opcode, H handler) {
+    handlers.put(opcode, handler);
+    return this;
+  }
+
+  /**
+   * Registers the handler of all opcodes of the given category.
+   */
+  public OpcodeTable<H> putAll(Opcode.Category category, H handler) {
+    for (Opcode opcode : Opcode.values()) {
+      if (opcode.getCategory() == category) {
+        handlers.put(opcode, handler);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Returns the handler of the given opcode, or the fallback.
+   */
+  public H get(Opcode opcode) {
+    H handler = handlers.get(opcode);
+    return handler == null ? fallback : handler;
+  }
+
+  /**
+   * Returns the handler of the opcode of the given operation, or the fallback.
+   */
+  public H get(Operation operation) {
+    return get(operation.getOpcode());
+  }
+}
@@ -1,10 +1,13 @@
 package sg.edu.nus.se.its.model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 import sg.edu.nus.se.its.interpreter.Interpreter;
 
 /**
@@ -16,6 +19,11 @@ public class Operation extends Expression {
 
   private List<Expression> args;
 
+  /**
+   * Operator resolved from the name. Resolved on first use for deserialized operations.
+   */
+  private transient Opcode opcode;
+
   /**
    * Initializes an Operation object with the pre-setting the isStatement value to false and the
    * original to null.
@@ -28,29 +36,97 @@ public class Operation extends Expression {
     super(line, null);
     this.name = name;
     this.args = args;
+    this.opcode = Opcode.of(name);
+  }
+
+  /**
+   * Initializes an Operation object that keeps the given original field.
+   *
+   * @param name -- the name of the operation
+   * @param args -- the list of arguments, as Expression objects
+   * @param line -- the source line number
+   * @param original -- (not used at the moment), can be kept null
+   */
+  public Operation(String name, List<Expression> args, int line, List<?> original) {
+    super(line, original);
+    this.name = name;
+    this.args = args;
+    this.opcode = Opcode.of(name);
   }
 
   public String getName() {
     return name;
   }
 
+  /**
+   * Returns the operator of this operation, or UNKNOWN if the name is no known operator.
+   */
+  public Opcode getOpcode() {
+    if (opcode == null) {
+      opcode = Opcode.of(name);
+    }
+    return opcode;
+  }
+
   public List<Expression> getArgs() {
     return args;
   }
 
   @Override
   public String toString(boolean withOriginalField) {
-    if (withOriginalField) {
-      String argString = args.stream().map(Expression::toString).collect(Collectors.joining(", "));
-      String s = String.format("%s(%s)", name, argString);
-      return exprOriginal(s);
-    }
-    List<String> argsList = new ArrayList<>();
-    for (Expression argument : args) {
-      argsList.add(argument.toString(false));
+    return render(withOriginalField);
+  }
+
+  @Override
+  public void writeTo(Appendable out, boolean withOriginalField) throws IOException {
+    ExpressionVisitor writer = new ExpressionVisitor() {
+      /**
+       * Number of arguments printed so far, per enclosing operation.
+       */
+      private int[] printed = new int[16];
+      private int depth;
+
+      @Override
+      public boolean enter(Expression expr) {
+        try {
+          if (depth > 0 && printed[depth - 1]++ > 0) {
+            out.append(", ");
+          }
+          if (!(expr instanceof Operation)) {
+            expr.writeTo(out, withOriginalField);
+            return false;
+          }
+          if (depth == printed.length) {
+            printed = Arrays.copyOf(printed, depth * 2);
+          }
+          printed[depth++] = 0;
+          out.append(((Operation) expr).name).append('(');
+          return true;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+
+      @Override
+      public void leave(Expression expr) {
+        if (expr instanceof Operation) {
+          depth--;
+          try {
+            out.append(')');
+            if (withOriginalField) {
+              expr.writeOriginal(out);
+            }
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      }
+    };
+    try {
+      walk(writer);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
     }
-    String argString = argsList.stream().collect(Collectors.joining(", "));
-    return String.format("%s(%s)", name, argString);
   }
 
   @Override
@@ -79,50 +155,84 @@ public class Operation extends Expression {
 
   @Override
   public Expression prime() {
-    List<Expression> newArguments = new ArrayList<>();
-    for (Expression expression : args) {
-      newArguments.add(expression.prime());
-    }
-    args = newArguments;
-    return this;
+    return rewrite(expr -> expr instanceof Operation ? expr : expr.prime());
   }
 
   @Override
   public Expression prime(Set<String> name) {
-    List<Expression> newArgs = new ArrayList<>();
-    for (Expression argument : this.args) {
-      newArgs.add(argument.prime(name));
-    }
-    this.args = newArgs;
-    return this;
+    return rewrite(expr -> expr instanceof Operation ? expr : expr.prime(name));
   }
 
   @Override
   public Expression unprime() {
-    List<Expression> newArguments = new ArrayList<>();
-    for (Expression expression : args) {
-      newArguments.add(expression.unprime());
-    }
-    args = newArguments;
-    return this;
+    return rewrite(expr -> expr instanceof Operation ? expr : expr.unprime());
   }
 
   @Override
   public Expression replace(String varName, Expression expr) {
-    List<Expression> newArguments = new ArrayList<>();
-    for (Expression expression : args) {
-      newArguments.add(expression.replace(varName, expr));
+    return rewrite(node -> node instanceof Operation ? node : node.replace(varName, expr));
+  }
+
+  /**
+   * Replaces the argument at the given index in place. An argument list that does not support
+   * updates, e.g., one created by List.of, is replaced by a modifiable copy once. Frozen
+   * operations, including interned ones, are never modified, see {@link ExpressionWalker#rewrite}.
+   */
+  void setArg(int index, Expression argument) {
+    checkNotFrozen();
+    try {
+      args.set(index, argument);
+    } catch (UnsupportedOperationException e) {
+      args = new ArrayList<>(args);
+      args.set(index, argument);
     }
-    args = newArguments;
-    return this;
+  }
+
+  @Override
+  void freezeNode() {
+    getOpcode();
+    args = Collections.unmodifiableList(new ArrayList<>(args));
+  }
+
+  /**
+   * Returns an unfrozen copy of this operation that shares the arguments.
+   */
+  Operation thaw() {
+    return new Operation(name, new ArrayList<>(args), getLineNumber(), copyOriginal());
   }
 
   @Override
   public Object clone() throws CloneNotSupportedException {
-    List<Expression> newArguments = new ArrayList<>();
-    for (Expression expression : args) {
-      newArguments.add((Expression) expression.clone());
-    }
-    return new Operation(name, newArguments, getLineNumber());
+    return fold(new ExpressionFolder<Expression>() {
+      @Override
+      public Expression leaf(Expression expr) {
+        try {
+          return (Expression) expr.clone();
+        } catch (CloneNotSupportedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      @Override
+      public Expression node(Operation operation, List<Expression> args) {
+        return new Operation(operation.name, new ArrayList<>(args), operation.getLineNumber());
+      }
+    });
+  }
+
+  @Override
+  public Expression deepCopy() {
+    return fold(new ExpressionFolder<Expression>() {
+      @Override
+      public Expression leaf(Expression expr) {
+        return expr.deepCopy();
+      }
+
+      @Override
+      public Expression node(Operation operation, List<Expression> args) {
+        return new Operation(operation.name, new ArrayList<>(args), operation.getLineNumber(),
+            operation.copyOriginal());
+      }
+    });
   }
 }
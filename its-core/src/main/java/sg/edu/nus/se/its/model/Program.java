@@ -1,7 +1,12 @@
 package sg.edu.nus.se.its.model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import sg.edu.nus.se.its.util.JsonSerializable;
@@ -18,6 +23,11 @@ public class Program implements JsonSerializable {
   private Map<String, Function> warns;
   private Map<String, Function> loops;
 
+  /**
+   * Whether this program is read-only, see {@link #freeze()}.
+   */
+  private transient volatile boolean frozen;
+
   /**
    * Initializes the empty program object.
    */
@@ -29,10 +39,31 @@ public class Program implements JsonSerializable {
     importStatements = new ArrayList<>();
   }
 
+  /**
+   * Creates a program from the given maps as they are. Used by decoders that have to reproduce
+   * stored programs exactly.
+   */
+  Program(List<String> importStatements, Map<String, Function> fncs, Map<String, Function> meta,
+      Map<String, Function> warns, Map<String, Function> loops) {
+    this.importStatements = importStatements;
+    this.fncs = fncs;
+    this.meta = meta;
+    this.warns = warns;
+    this.loops = loops;
+  }
+
   public Map<String, Function> getFncs() {
     return fncs;
   }
 
+  /**
+   * Returns the structural fingerprint of this program, see {@link Fingerprint}. It is combined
+   * from the cached fingerprints of the functions, so it reflects changes made to any function.
+   */
+  public long getFingerprint() {
+    return Fingerprint.of(this);
+  }
+
   public Map<String, Function> getMeta() {
     return meta;
   }
@@ -46,6 +77,7 @@ public class Program implements JsonSerializable {
   }
 
   public void addfnc(Function fnc) {
+    checkNotFrozen();
     this.fncs.put(fnc.getName(), fnc);
   }
 
@@ -58,6 +90,7 @@ public class Program implements JsonSerializable {
   }
 
   public void setImportStatements(List<String> importStatements) {
+    checkNotFrozen();
     this.importStatements = importStatements;
   }
 
@@ -65,13 +98,138 @@ public class Program implements JsonSerializable {
     return this.importStatements;
   }
 
+  /**
+   * Creates a copy of this program that shares no mutable state with it. Functions and expressions
+   * are copied directly, without any serialization, and the iteration order of all maps is kept.
+   *
+   * @return copied program
+   */
+  public Program deepCopy() {
+    Map<Function, Function> copies = new IdentityHashMap<>();
+    Program copy = new Program();
+    copy.importStatements = importStatements == null ? null : new ArrayList<>(importStatements);
+    copy.fncs = copyFunctions(fncs, copies);
+    copy.meta = copyFunctions(meta, copies);
+    copy.warns = copyFunctions(warns, copies);
+    copy.loops = copyFunctions(loops, copies);
+    return copy;
+  }
+
+  /**
+   * Creates a variant of this program that shares all functions and expressions with it. Each
+   * function of the variant is copied when it is first retrieved from the variant, and then only
+   * its location tables are copied. Memory per variant thus scales with the functions it uses
+   * rather than with the program size. This program and its functions remain modifiable: a
+   * function that is modified before the variant has copied it preserves its previous state for
+   * the variant. A frozen program is never modified by this method, so many threads can derive
+   * variants of it concurrently.
+   *
+   * <p>Expressions are shared by both programs, so they must be replaced, e.g., via
+   * {@link Function#replaceLocExpressions}, instead of being modified in place.
+   *
+   * @return derived program
+   */
+  public Program derive() {
+    Map<Object, LazyFunctionMap.Slot> slots = new IdentityHashMap<>();
+    Program variant = new Program();
+    variant.importStatements = importStatements == null ? null : new ArrayList<>(importStatements);
+    variant.fncs = deriveFunctions(fncs, slots);
+    variant.meta = deriveFunctions(meta, slots);
+    variant.warns = deriveFunctions(warns, slots);
+    variant.loops = deriveFunctions(loops, slots);
+    return variant;
+  }
+
+  private static Map<String, Function> deriveFunctions(Map<String, Function> functions,
+      Map<Object, LazyFunctionMap.Slot> slots) {
+    return functions == null ? null : LazyFunctionMap.derive(functions, slots);
+  }
+
+  /**
+   * Makes this program, its functions and their expressions read-only, so that one program can be
+   * shared between threads, e.g., as the reference of many concurrent repairs, together with the
+   * caches of its functions. The maps of the program become unmodifiable and the mutators throw an
+   * UnsupportedOperationException. The frozen program must be published to other threads safely,
+   * e.g., through an executor or a concurrent collection. Workers modify variants obtained from
+   * {@link #derive()} or {@link #deepCopy()}.
+   *
+   * @return this program
+   */
+  public Program freeze() {
+    if (frozen) {
+      return this;
+    }
+    fncs = freezeFunctions(fncs);
+    meta = freezeFunctions(meta);
+    warns = freezeFunctions(warns);
+    loops = freezeFunctions(loops);
+    if (importStatements != null) {
+      importStatements = Collections.unmodifiableList(new ArrayList<>(importStatements));
+    }
+    frozen = true;
+    return this;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  private static Map<String, Function> freezeFunctions(Map<String, Function> functions) {
+    if (functions == null) {
+      return null;
+    }
+    for (Function function : functions.values()) {
+      if (function != null) {
+        function.freeze();
+      }
+    }
+    return Collections.unmodifiableMap(new LinkedHashMap<>(functions));
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException("Program is frozen");
+    }
+  }
+
+  private static Map<String, Function> copyFunctions(Map<String, Function> functions,
+      Map<Function, Function> copies) {
+    if (functions == null) {
+      return null;
+    }
+    Map<String, Function> result = new LinkedHashMap<>(Math.max(16, functions.size() * 2));
+    for (Map.Entry<String, Function> entry : functions.entrySet()) {
+      Function function = entry.getValue();
+      result.put(entry.getKey(),
+          function == null ? null : copies.computeIfAbsent(function, Function::deepCopy));
+    }
+    return result;
+  }
+
   @Override
   public String toString() {
-    String programString = "\n\n";
+    StringBuilder builder = new StringBuilder();
+    try {
+      writeTo(builder, true);
+    } catch (IOException e) {
+      // StringBuilder does not throw
+      throw new UncheckedIOException(e);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Appends the representation of {@link #toString()} without building intermediate strings.
+   *
+   * @param out destination of the representation
+   * @param withOriginalField denotes if the 'original' fields of expressions are to be added
+   * @throws IOException if appending fails
+   */
+  public void writeTo(Appendable out, boolean withOriginalField) throws IOException {
+    out.append("\n\n");
     for (Function fnc : this.fncs.values()) {
-      programString += fnc.toString();
+      fnc.writeTo(out, withOriginalField);
     }
-    return programString;
   }
 
   @Override
@@ -0,0 +1,715 @@
+package sg.edu.nus.se.its.model;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.javatuples.Pair;
+
+/**
+ * Compact, versioned binary encoding of programs, as an alternative to the JSON format for large
+ * corpora. Decoding reproduces the encoded program exactly, including null and partial tables, the
+ * iteration order of all maps and functions that are shared between the maps of a program, so that
+ * the JSON of a decoded program equals the JSON of the original. Shared subexpressions are written
+ * once per occurrence and are not shared after decoding.
+ *
+ * <p>The format consists of
+ *
+ * <ul>
+ * <li>the magic bytes "ITSB" and the format version,</li>
+ * <li>a string table of all names, types, descriptions and values, each stored once,</li>
+ * <li>the program: its import statements and the functions of fncs, meta, warns and loops.</li>
+ * </ul>
+ *
+ * <p>All numbers are varints, signed numbers such as locations and line numbers zigzag-encoded.
+ * Strings are referenced by their index in the string table plus one, where 0 stands for null.
+ * Collections are prefixed by their size plus one, where 0 stands for null. Expressions are stored
+ * in pre-order, an Operation followed by its arguments, and are encoded and decoded without
+ * recursion. Each function is prefixed by its length in bytes, so that it can be skipped and
+ * decoded on demand, see {@link #decodeLazily(byte[])}.
+ */
+public final class ProgramBinaryCodec {
+
+  /**
+   * Version of the format written by this class.
+   */
+  public static final int VERSION = 1;
+
+  private static final byte[] MAGIC = {'I', 'T', 'S', 'B'};
+
+  private static final int NULL = 0;
+  private static final int VARIABLE = 1;
+  private static final int CONSTANT = 2;
+  private static final int OPERATION = 3;
+
+  private static final int NEW_FUNCTION = 1;
+  private static final int SHARED_FUNCTION = 2;
+
+  /**
+   * Converts the original fields, whose elements can be arbitrary JSON values.
+   */
+  private static final Gson GSON = new Gson();
+
+  private ProgramBinaryCodec() {}
+
+  /**
+   * Returns the binary encoding of the given program.
+   */
+  public static byte[] encode(Program program) {
+    Encoder encoder = new Encoder();
+    encoder.writeProgram(program);
+    return encoder.finish();
+  }
+
+  /**
+   * Writes the binary encoding of the given program to the given stream, which is not closed.
+   *
+   * @param program program to encode
+   * @param out destination of the encoding
+   * @throws IOException if writing fails
+   */
+  public static void encode(Program program, OutputStream out) throws IOException {
+    out.write(encode(program));
+  }
+
+  /**
+   * Decodes a program from its binary encoding.
+   *
+   * @param data encoded program
+   * @return decoded program
+   * @throws IOException if the data is no encoded program of a supported version
+   */
+  public static Program decode(byte[] data) throws IOException {
+    return new Decoder(data, false).readProgram();
+  }
+
+  /**
+   * Decodes a program whose functions are decoded on first access. The maps of the program hold
+   * the encoded functions, and {@link Program#getfnc} or a lookup in one of the maps decodes only
+   * the requested function. Iterating over the values of a map decodes all its functions. This
+   * saves time and memory if only a few functions of a program are used. The given data must not
+   * be modified afterwards.
+   *
+   * @param data encoded program
+   * @return program with lazily decoded functions
+   * @throws IOException if the data is no encoded program of a supported version; errors in the
+   *         encoded functions are thrown as UncheckedIOException when they are decoded
+   */
+  public static Program decodeLazily(byte[] data) throws IOException {
+    return new Decoder(data, true).readProgram();
+  }
+
+  /**
+   * Decodes a program from the remaining bytes of the given stream, which is not closed.
+   *
+   * @param in source of the encoding
+   * @return decoded program
+   * @throws IOException if reading fails or the data is no encoded program of a supported version
+   */
+  public static Program decode(InputStream in) throws IOException {
+    return decode(in.readAllBytes());
+  }
+
+  /**
+   * Growable byte buffer with varint writes.
+   */
+  private static final class Buffer {
+    private byte[] bytes = new byte[1024];
+    private int size;
+
+    void writeByte(int b) {
+      if (size == bytes.length) {
+        bytes = Arrays.copyOf(bytes, size * 2);
+      }
+      bytes[size++] = (byte) b;
+    }
+
+    void writeBytes(byte[] data) {
+      writeBytes(data, data.length);
+    }
+
+    void writeBytes(byte[] data, int length) {
+      if (size + length > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + length));
+      }
+      System.arraycopy(data, 0, bytes, size, length);
+      size += length;
+    }
+
+    void writeVarLong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      writeByte((int) value);
+    }
+
+    void writeSigned(long value) {
+      writeVarLong((value << 1) ^ (value >> 63));
+    }
+  }
+
+  private static final class Encoder {
+    private Buffer body = new Buffer();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<Function, Integer> functionIds = new IdentityHashMap<>();
+    private final List<Expression> pending = new ArrayList<>();
+
+    byte[] finish() {
+      Buffer header = new Buffer();
+      header.writeBytes(MAGIC);
+      header.writeVarLong(VERSION);
+      header.writeVarLong(strings.size());
+      for (String s : strings) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        header.writeVarLong(utf8.length);
+        header.writeBytes(utf8);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream(header.size + body.size);
+      out.write(header.bytes, 0, header.size);
+      out.write(body.bytes, 0, body.size);
+      return out.toByteArray();
+    }
+
+    void writeProgram(Program program) {
+      List<String> imports = program.getImportStatements();
+      writeSize(imports);
+      if (imports != null) {
+        for (String statement : imports) {
+          writeString(statement);
+        }
+      }
+      writeFunctions(program.getFncs());
+      writeFunctions(program.getMeta());
+      writeFunctions(program.getWarns());
+      writeFunctions(program.getLoops());
+    }
+
+    private void writeFunctions(Map<String, Function> functions) {
+      writeSize(functions == null ? null : functions.keySet());
+      if (functions != null) {
+        for (Map.Entry<String, Function> entry : functions.entrySet()) {
+          writeString(entry.getKey());
+          writeFunction(entry.getValue());
+        }
+      }
+    }
+
+    private void writeFunction(Function function) {
+      if (function == null) {
+        body.writeVarLong(NULL);
+        return;
+      }
+      Integer id = functionIds.get(function);
+      if (id != null) {
+        body.writeVarLong(SHARED_FUNCTION);
+        body.writeVarLong(id);
+        return;
+      }
+      functionIds.put(function, functionIds.size());
+      body.writeVarLong(NEW_FUNCTION);
+      // prefix the function by its length, so that it can be skipped and decoded on demand
+      Buffer outer = body;
+      body = new Buffer();
+      writeFunctionBody(function);
+      Buffer functionBody = body;
+      body = outer;
+      body.writeVarLong(functionBody.size);
+      body.writeBytes(functionBody.bytes, functionBody.size);
+    }
+
+    private void writeFunctionBody(Function function) {
+      writeString(function.getName());
+      writeString(function.getRettype());
+      body.writeSigned(function.getInitloc());
+      body.writeSigned(function.getEndloc());
+
+      ArrayList<Pair<String, String>> params = function.getParams();
+      writeSize(params);
+      if (params != null) {
+        for (Pair<String, String> param : params) {
+          writeString(param.getValue0());
+          writeString(param.getValue1());
+        }
+      }
+
+      HashMap<Integer, ArrayList<Pair<String, Expression>>> locexprs = function.getLocexprs();
+      writeSize(locexprs == null ? null : locexprs.keySet());
+      if (locexprs != null) {
+        for (Map.Entry<Integer, ArrayList<Pair<String, Expression>>> entry : locexprs.entrySet()) {
+          writeLocation(entry.getKey());
+          writeSize(entry.getValue());
+          if (entry.getValue() != null) {
+            for (Pair<String, Expression> assignment : entry.getValue()) {
+              writeString(assignment.getValue0());
+              writeExpression(assignment.getValue1());
+            }
+          }
+        }
+      }
+
+      HashMap<Integer, HashMap<Boolean, Integer>> loctrans = function.getLoctrans();
+      writeSize(loctrans == null ? null : loctrans.keySet());
+      if (loctrans != null) {
+        for (Map.Entry<Integer, HashMap<Boolean, Integer>> entry : loctrans.entrySet()) {
+          writeLocation(entry.getKey());
+          HashMap<Boolean, Integer> transitions = entry.getValue();
+          writeSize(transitions == null ? null : transitions.keySet());
+          if (transitions != null) {
+            for (Map.Entry<Boolean, Integer> transition : transitions.entrySet()) {
+              Boolean cond = transition.getKey();
+              body.writeByte(cond == null ? 2 : cond ? 1 : 0);
+              writeLocation(transition.getValue());
+            }
+          }
+        }
+      }
+
+      HashMap<Integer, String> locdescs = function.getLocdescs();
+      writeSize(locdescs == null ? null : locdescs.keySet());
+      if (locdescs != null) {
+        for (Map.Entry<Integer, String> entry : locdescs.entrySet()) {
+          writeLocation(entry.getKey());
+          writeString(entry.getValue());
+        }
+      }
+
+      HashMap<String, String> types = function.getTypes();
+      writeSize(types == null ? null : types.keySet());
+      if (types != null) {
+        for (Map.Entry<String, String> entry : types.entrySet()) {
+          writeString(entry.getKey());
+          writeString(entry.getValue());
+        }
+      }
+    }
+
+    /**
+     * Writes the given expression tree in pre-order.
+     */
+    private void writeExpression(Expression root) {
+      pending.add(root);
+      while (!pending.isEmpty()) {
+        Expression expr = pending.remove(pending.size() - 1);
+        if (expr == null) {
+          body.writeVarLong(NULL);
+          continue;
+        }
+        if (expr instanceof Variable) {
+          body.writeVarLong(VARIABLE);
+        } else if (expr instanceof Constant) {
+          body.writeVarLong(CONSTANT);
+        } else if (expr instanceof Operation) {
+          body.writeVarLong(OPERATION);
+        } else {
+          throw new RuntimeException(String.format("Cannot encode expression of type %s",
+              expr.getClass().getName()));
+        }
+        body.writeSigned(expr.getLineNumber());
+        writeString(expr.getOriginal() == null ? null : GSON.toJson(expr.getOriginal()));
+        if (expr instanceof Variable) {
+          Variable variable = (Variable) expr;
+          writeString(variable.getUnprimedName());
+          body.writeByte(variable.isPrimed() ? 1 : 0);
+        } else if (expr instanceof Constant) {
+          writeString(((Constant) expr).getValue());
+        } else {
+          Operation operation = (Operation) expr;
+          writeString(operation.getName());
+          List<Expression> args = operation.getArgs();
+          writeSize(args);
+          if (args != null) {
+            for (int i = args.size() - 1; i >= 0; i--) {
+              pending.add(args.get(i));
+            }
+          }
+        }
+      }
+    }
+
+    private void writeLocation(Integer location) {
+      if (location == null) {
+        body.writeVarLong(0);
+      } else {
+        body.writeVarLong(((((long) location) << 1) ^ (location >> 31)) + 1);
+      }
+    }
+
+    private void writeSize(Collection<?> collection) {
+      body.writeVarLong(collection == null ? 0 : collection.size() + 1L);
+    }
+
+    private void writeString(String s) {
+      if (s == null) {
+        body.writeVarLong(0);
+        return;
+      }
+      Integer id = stringIds.get(s);
+      if (id == null) {
+        id = strings.size() + 1;
+        stringIds.put(s, id);
+        strings.add(s);
+      }
+      body.writeVarLong(id);
+    }
+  }
+
+  private static final class Decoder {
+    private final byte[] data;
+    private final boolean lazy;
+    private int position;
+    private String[] strings;
+
+    /**
+     * Decoded functions, or the slots of lazily decoded functions, by their id.
+     */
+    private final List<Object> functions = new ArrayList<>();
+
+    Decoder(byte[] data, boolean lazy) {
+      this.data = data;
+      this.lazy = lazy;
+    }
+
+    /**
+     * Creates a decoder for a single function of a lazily decoded program.
+     */
+    private Decoder(Decoder program, int position) {
+      this.data = program.data;
+      this.lazy = false;
+      this.position = position;
+      this.strings = program.strings;
+    }
+
+    Program readProgram() throws IOException {
+      try {
+        for (byte b : MAGIC) {
+          if (data.length <= position || data[position++] != b) {
+            throw new IOException("Not a binary program model");
+          }
+        }
+        long version = readVarLong();
+        if (version != VERSION) {
+          throw new IOException(String.format("Unsupported binary model version %d", version));
+        }
+        int stringCount = readCount();
+        if (stringCount > data.length - position) {
+          throw new IOException("Truncated binary program model");
+        }
+        strings = new String[stringCount];
+        for (int i = 0; i < strings.length; i++) {
+          int length = readCount();
+          if (length > data.length - position) {
+            throw new IOException("Truncated binary program model");
+          }
+          strings[i] = new String(data, position, length, StandardCharsets.UTF_8);
+          position += length;
+        }
+
+        List<String> imports = null;
+        int size = readSize();
+        if (size >= 0) {
+          imports = new ArrayList<>(capacity(size));
+          for (int i = 0; i < size; i++) {
+            imports.add(readString());
+          }
+        }
+        Map<String, Function> fncs = readFunctions();
+        Map<String, Function> meta = readFunctions();
+        Map<String, Function> warns = readFunctions();
+        Map<String, Function> loops = readFunctions();
+        if (position != data.length) {
+          throw new IOException("Trailing bytes after binary program model");
+        }
+        return new Program(imports, fncs, meta, warns, loops);
+      } catch (ArrayIndexOutOfBoundsException e) {
+        throw new IOException("Truncated binary program model", e);
+      }
+    }
+
+    private Map<String, Function> readFunctions() throws IOException {
+      int size = readSize();
+      if (size < 0) {
+        return null;
+      }
+      if (lazy) {
+        LazyFunctionMap map = new LazyFunctionMap();
+        for (int i = 0; i < size; i++) {
+          String name = readString();
+          map.putValue(name, readFunction());
+        }
+        return map;
+      }
+      Map<String, Function> map = new LinkedHashMap<>();
+      for (int i = 0; i < size; i++) {
+        String name = readString();
+        map.put(name, (Function) readFunction());
+      }
+      return map;
+    }
+
+    /**
+     * Reads a reference to a function, and returns the function, its slot if decoded lazily, or
+     * null.
+     */
+    private Object readFunction() throws IOException {
+      int tag = readCount();
+      if (tag == NULL) {
+        return null;
+      } else if (tag == SHARED_FUNCTION) {
+        int id = readCount();
+        if (id >= functions.size()) {
+          throw new IOException(String.format("Unknown shared function %d", id));
+        }
+        return functions.get(id);
+      } else if (tag != NEW_FUNCTION) {
+        throw new IOException(String.format("Unknown function tag %d", tag));
+      }
+      int length = readCount();
+      int start = position;
+      if (length > data.length - start) {
+        throw new IOException("Truncated binary program model");
+      }
+      Object function;
+      if (lazy) {
+        function = new LazyFunctionMap.Slot(() -> decodeFunction(start, length));
+        position += length;
+      } else {
+        function = readFunctionBody();
+        if (position != start + length) {
+          throw new IOException("Invalid length of function");
+        }
+      }
+      functions.add(function);
+      return function;
+    }
+
+    /**
+     * Decodes the function at the given range of a lazily decoded program.
+     */
+    private Function decodeFunction(int start, int length) {
+      Decoder decoder = new Decoder(this, start);
+      try {
+        Function function = decoder.readFunctionBody();
+        if (decoder.position != start + length) {
+          throw new IOException("Invalid length of function");
+        }
+        return function;
+      } catch (ArrayIndexOutOfBoundsException e) {
+        throw new UncheckedIOException(new IOException("Truncated binary program model", e));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private Function readFunctionBody() throws IOException {
+      String name = readString();
+      String rettype = readString();
+      int initloc = (int) readSigned();
+      int endloc = (int) readSigned();
+
+      GuardedArrayList<Pair<String, String>> params = null;
+      int size = readSize();
+      if (size >= 0) {
+        params = new GuardedArrayList<>(capacity(size));
+        for (int i = 0; i < size; i++) {
+          params.append(Pair.with(readString(), readString()));
+        }
+      }
+
+      GuardedHashMap<Integer, ArrayList<Pair<String, Expression>>> locexprs = null;
+      size = readSize();
+      if (size >= 0) {
+        locexprs = new GuardedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          Integer location = readLocation();
+          GuardedArrayList<Pair<String, Expression>> assignments = null;
+          int count = readSize();
+          if (count >= 0) {
+            assignments = new GuardedArrayList<>(capacity(count));
+            for (int j = 0; j < count; j++) {
+              String var = readString();
+              assignments.append(Pair.with(var, readExpression()));
+            }
+          }
+          locexprs.set(location, assignments);
+        }
+      }
+
+      GuardedHashMap<Integer, HashMap<Boolean, Integer>> loctrans = null;
+      size = readSize();
+      if (size >= 0) {
+        loctrans = new GuardedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          Integer location = readLocation();
+          GuardedHashMap<Boolean, Integer> transitions = null;
+          int count = readSize();
+          if (count >= 0) {
+            transitions = new GuardedHashMap<>();
+            for (int j = 0; j < count; j++) {
+              int cond = data[position++];
+              if (cond < 0 || cond > 2) {
+                throw new IOException(String.format("Unknown transition condition %d", cond));
+              }
+              transitions.set(cond == 2 ? null : cond == 1, readLocation());
+            }
+          }
+          loctrans.set(location, transitions);
+        }
+      }
+
+      GuardedHashMap<Integer, String> locdescs = null;
+      size = readSize();
+      if (size >= 0) {
+        locdescs = new GuardedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          Integer location = readLocation();
+          locdescs.set(location, readString());
+        }
+      }
+
+      GuardedHashMap<String, String> types = null;
+      size = readSize();
+      if (size >= 0) {
+        types = new GuardedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          String var = readString();
+          types.set(var, readString());
+        }
+      }
+
+      return new Function(name, params, rettype, initloc, endloc, locexprs, loctrans, locdescs,
+          types);
+    }
+
+    /**
+     * Reads an expression tree in pre-order. Each node is appended to the argument list of the
+     * innermost operation that still lacks arguments.
+     */
+    private Expression readExpression() throws IOException {
+      Deque<List<Expression>> parents = new ArrayDeque<>();
+      Deque<Integer> missing = new ArrayDeque<>();
+      Expression root = readNode(parents, missing);
+      while (!parents.isEmpty()) {
+        List<Expression> args = parents.peek();
+        int count = missing.pop();
+        if (count == 1) {
+          parents.pop();
+        } else {
+          missing.push(count - 1);
+        }
+        args.add(readNode(parents, missing));
+      }
+      return root;
+    }
+
+    /**
+     * Reads a single node. For an Operation with arguments, pushes its empty argument list and
+     * the number of arguments to read.
+     */
+    private Expression readNode(Deque<List<Expression>> parents, Deque<Integer> missing)
+        throws IOException {
+      int tag = readCount();
+      if (tag == NULL) {
+        return null;
+      }
+      int line = (int) readSigned();
+      String original = readString();
+      List<?> originalList = original == null ? null : GSON.fromJson(original, List.class);
+      switch (tag) {
+        case VARIABLE:
+          Variable variable = new Variable(readString(), line, originalList);
+          if (data[position++] != 0) {
+            variable.setPrimed(true);
+          }
+          return variable;
+        case CONSTANT:
+          return new Constant(readString(), line, false, originalList);
+        case OPERATION:
+          String name = readString();
+          int count = readSize();
+          List<Expression> args = count < 0 ? null : new ArrayList<>(capacity(count));
+          if (count > 0) {
+            parents.push(args);
+            missing.push(count);
+          }
+          return new Operation(name, args, line, originalList);
+        default:
+          throw new IOException(String.format("Unknown expression tag %d", tag));
+      }
+    }
+
+    private Integer readLocation() {
+      long value = readVarLong();
+      if (value == 0) {
+        return null;
+      }
+      value--;
+      return (int) ((value >>> 1) ^ -(value & 1));
+    }
+
+    private String readString() throws IOException {
+      int id = readCount();
+      if (id == 0) {
+        return null;
+      }
+      if (id > strings.length) {
+        throw new IOException(String.format("Unknown string %d", id));
+      }
+      return strings[id - 1];
+    }
+
+    /**
+     * Returns the initial capacity for a collection of the given size. Each element takes at least
+     * one byte, so the remaining bytes bound the capacity of a corrupt size.
+     */
+    private int capacity(int size) {
+      return Math.min(size, data.length - position);
+    }
+
+    /**
+     * Reads a size plus one, returning -1 for null.
+     */
+    private int readSize() throws IOException {
+      return readCount() - 1;
+    }
+
+    private int readCount() throws IOException {
+      long value = readVarLong();
+      if (value < 0 || value > Integer.MAX_VALUE) {
+        throw new IOException(String.format("Invalid count %d", value));
+      }
+      return (int) value;
+    }
+
+    private long readSigned() {
+      long value = readVarLong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = data[position++];
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+      return value;
+    }
+  }
+}
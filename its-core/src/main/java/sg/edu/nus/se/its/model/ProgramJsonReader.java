@@ -0,0 +1,348 @@
+package sg.edu.nus.se.its.model;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.javatuples.Pair;
+import sg.edu.nus.se.its.util.ModelTypeAdapterFactory;
+import sg.edu.nus.se.its.util.TestUtils;
+
+/**
+ * Streaming reader for programs in the JSON format, which builds functions and expressions directly
+ * from the tokens instead of materializing the document first. The redundant valueArray and
+ * valueList fields of stored tuples are skipped, so reading needs little memory beyond the program
+ * itself.
+ *
+ * <p>Variable, operator, parameter and type names are interned per reader, so programs that are
+ * read by the same reader share their names. The resulting programs are equal to those read by Gson
+ * with {@link ModelTypeAdapterFactory}, including null tables and the iteration order of all maps.
+ * Tuples are also read in the old format of {@link TestUtils#loadProgramByFilePathOld}, i.e., as
+ * arrays of their values. A reader is not thread-safe.
+ */
+public class ProgramJsonReader {
+
+  private final Map<String, String> names = new HashMap<>();
+
+  private final TypeAdapter<Expression> expressionAdapter = new GsonBuilder()
+      .registerTypeAdapterFactory(new ModelTypeAdapterFactory(this::intern)).create()
+      .getAdapter(Expression.class);
+
+  /**
+   * Reads a program from the given file.
+   *
+   * @param path file in the JSON format
+   * @return program
+   * @throws IOException if the file cannot be read or is no program
+   */
+  public Program read(Path path) throws IOException {
+    try (Reader reader = Files.newBufferedReader(path)) {
+      return read(reader);
+    }
+  }
+
+  /**
+   * Reads a program from the given reader, which is not closed.
+   *
+   * @param reader source of the JSON
+   * @return program, or null if the JSON is null
+   * @throws IOException if reading fails or the JSON is no program
+   */
+  public Program read(Reader reader) throws IOException {
+    JsonReader in = new JsonReader(reader);
+    in.setLenient(true);
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    List<String> importStatements = new ArrayList<>();
+    Map<String, Function> fncs = new HashMap<>();
+    Map<String, Function> meta = new HashMap<>();
+    Map<String, Function> warns = new HashMap<>();
+    Map<String, Function> loops = new HashMap<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      String field = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        switch (field) {
+          case "importStatements":
+            importStatements = null;
+            break;
+          case "fncs":
+            fncs = null;
+            break;
+          case "meta":
+            meta = null;
+            break;
+          case "warns":
+            warns = null;
+            break;
+          case "loops":
+            loops = null;
+            break;
+          default:
+            break;
+        }
+        continue;
+      }
+      switch (field) {
+        case "importStatements":
+          importStatements = new ArrayList<>();
+          in.beginArray();
+          while (in.hasNext()) {
+            importStatements.add(readString(in));
+          }
+          in.endArray();
+          break;
+        case "fncs":
+          fncs = readFunctions(in);
+          break;
+        case "meta":
+          meta = readFunctions(in);
+          break;
+        case "warns":
+          warns = readFunctions(in);
+          break;
+        case "loops":
+          loops = readFunctions(in);
+          break;
+        default:
+          in.skipValue();
+          break;
+      }
+    }
+    in.endObject();
+    return new Program(importStatements, fncs, meta, warns, loops);
+  }
+
+  /**
+   * Returns the number of distinct names read so far.
+   */
+  public int size() {
+    return names.size();
+  }
+
+  private Map<String, Function> readFunctions(JsonReader in) throws IOException {
+    Map<String, Function> functions = new LinkedHashMap<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      functions.put(name, readFunction(in));
+    }
+    in.endObject();
+    return functions;
+  }
+
+  private Function readFunction(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    String name = null;
+    String rettype = null;
+    int initloc = 0;
+    int endloc = 0;
+    GuardedArrayList<Pair<String, String>> params = null;
+    GuardedHashMap<Integer, ArrayList<Pair<String, Expression>>> locexprs = null;
+    GuardedHashMap<Integer, HashMap<Boolean, Integer>> loctrans = null;
+    GuardedHashMap<Integer, String> locdescs = null;
+    GuardedHashMap<String, String> types = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      String field = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      switch (field) {
+        case "name":
+          name = in.nextString();
+          break;
+        case "rettype":
+          rettype = intern(in.nextString());
+          break;
+        case "initloc":
+          initloc = in.nextInt();
+          break;
+        case "endloc":
+          endloc = in.nextInt();
+          break;
+        case "params":
+          params = new GuardedArrayList<>();
+          in.beginArray();
+          while (in.hasNext()) {
+            params.append(readParam(in));
+          }
+          in.endArray();
+          break;
+        case "locexprs":
+          locexprs = new GuardedHashMap<>();
+          in.beginObject();
+          while (in.hasNext()) {
+            Integer location = readLocation(in);
+            locexprs.set(location, readAssignments(in));
+          }
+          in.endObject();
+          break;
+        case "loctrans":
+          loctrans = new GuardedHashMap<>();
+          in.beginObject();
+          while (in.hasNext()) {
+            Integer location = readLocation(in);
+            loctrans.set(location, readTransitions(in));
+          }
+          in.endObject();
+          break;
+        case "locdescs":
+          locdescs = new GuardedHashMap<>();
+          in.beginObject();
+          while (in.hasNext()) {
+            Integer location = readLocation(in);
+            locdescs.set(location, readString(in));
+          }
+          in.endObject();
+          break;
+        case "types":
+          types = new GuardedHashMap<>();
+          in.beginObject();
+          while (in.hasNext()) {
+            String var = intern(in.nextName());
+            types.set(var, intern(readString(in)));
+          }
+          in.endObject();
+          break;
+        default:
+          in.skipValue();
+          break;
+      }
+    }
+    in.endObject();
+    return new Function(name, params, rettype, initloc, endloc, locexprs, loctrans, locdescs,
+        types);
+  }
+
+  private Pair<String, String> readParam(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    String type = null;
+    String name = null;
+    if (in.peek() == JsonToken.BEGIN_ARRAY) {
+      in.beginArray();
+      type = intern(readString(in));
+      name = intern(readString(in));
+      in.endArray();
+      return Pair.with(type, name);
+    }
+    in.beginObject();
+    while (in.hasNext()) {
+      String field = in.nextName();
+      if (field.equals("val0")) {
+        type = intern(readString(in));
+      } else if (field.equals("val1")) {
+        name = intern(readString(in));
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return Pair.with(type, name);
+  }
+
+  private ArrayList<Pair<String, Expression>> readAssignments(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    GuardedArrayList<Pair<String, Expression>> assignments = new GuardedArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        assignments.append(null);
+        continue;
+      }
+      String var = null;
+      Expression expr = null;
+      if (in.peek() == JsonToken.BEGIN_ARRAY) {
+        in.beginArray();
+        var = intern(readString(in));
+        expr = expressionAdapter.read(in);
+        in.endArray();
+        assignments.append(Pair.with(var, expr));
+        continue;
+      }
+      in.beginObject();
+      while (in.hasNext()) {
+        String field = in.nextName();
+        if (field.equals("val0")) {
+          var = intern(readString(in));
+        } else if (field.equals("val1")) {
+          expr = expressionAdapter.read(in);
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      assignments.append(Pair.with(var, expr));
+    }
+    in.endArray();
+    return assignments;
+  }
+
+  private HashMap<Boolean, Integer> readTransitions(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    GuardedHashMap<Boolean, Integer> transitions = new GuardedHashMap<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      Boolean cond = Boolean.valueOf(in.nextName());
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        transitions.set(cond, null);
+      } else {
+        transitions.set(cond, in.nextInt());
+      }
+    }
+    in.endObject();
+    return transitions;
+  }
+
+  private Integer readLocation(JsonReader in) throws IOException {
+    String key = in.nextName();
+    try {
+      return Integer.valueOf(key);
+    } catch (NumberFormatException e) {
+      throw new IOException(String.format("Invalid location %s at %s", key, in.getPath()), e);
+    }
+  }
+
+  private static String readString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+
+  private String intern(String name) {
+    if (name == null) {
+      return null;
+    }
+    String interned = names.putIfAbsent(name, name);
+    return interned == null ? name : interned;
+  }
+}
@@ -0,0 +1,616 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Memory frame that stores variable values in an array indexed by the slots of a
+ * {@link SymbolTable}. Values can be accessed by slot without hashing, while the name-based Map
+ * methods, including {@link #getValueForVariable}, remain available as a compatibility view. Names
+ * unknown to the symbol table are added to it on first write. Null names are not supported.
+ *
+ * <p>Besides object values, a slot can hold an unboxed int, long or double value in a primitive
+ * lane, tagged with its {@link ValueType}. Primitive values are only boxed when they are read
+ * through the Map methods.
+ */
+public class SlotMemory extends Memory {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Marker for slots without a value, since null is a valid value.
+   */
+  private static final Object ABSENT = new Object();
+
+  /**
+   * Marker for slots whose value is stored in the primitive lane.
+   */
+  private static final Object PRIMITIVE = new Object();
+
+  /**
+   * Type of the value stored in a slot.
+   */
+  public enum ValueType {
+    OBJECT, INT, LONG, DOUBLE
+  }
+
+  private static final ValueType[] VALUE_TYPES = ValueType.values();
+
+  private final transient SymbolTable symbols;
+
+  private transient Object[] values;
+
+  private transient int count;
+
+  /**
+   * Value type per slot (ordinal of ValueType), and the primitive lane holding int and long values
+   * and the raw bits of double values. Both are allocated on the first primitive write.
+   */
+  private transient byte[] tags;
+  private transient long[] bits;
+
+  /**
+   * Creates an empty frame for the given symbol table.
+   */
+  public SlotMemory(SymbolTable symbols) {
+    super();
+    this.symbols = symbols;
+    this.values = new Object[Math.max(symbols.size(), 4)];
+    Arrays.fill(this.values, ABSENT);
+  }
+
+  private SlotMemory(SlotMemory other) {
+    super();
+    this.symbols = other.symbols;
+    this.values = other.values.clone();
+    this.count = other.count;
+    this.tags = other.tags == null ? null : other.tags.clone();
+    this.bits = other.bits == null ? null : other.bits.clone();
+  }
+
+  /**
+   * Creates an empty frame for the symbol table of the given function.
+   */
+  public static SlotMemory forFunction(Function function) {
+    return new SlotMemory(function.getSymbolTable());
+  }
+
+  public SymbolTable getSymbolTable() {
+    return symbols;
+  }
+
+  /**
+   * Returns whether the given slot holds a value.
+   */
+  public boolean hasValue(int slot) {
+    return slot >= 0 && slot < values.length && values[slot] != ABSENT;
+  }
+
+  /**
+   * Returns the value at the given slot, or null if there is none.
+   */
+  public Object getValue(int slot) {
+    if (slot < 0 || slot >= values.length) {
+      return null;
+    }
+    Object value = values[slot];
+    if (value == PRIMITIVE) {
+      return boxPrimitive(slot);
+    }
+    return value == ABSENT ? null : value;
+  }
+
+  /**
+   * Stores the value at the given slot.
+   *
+   * @return the previous value, or null if there was none
+   */
+  public Object setValue(int slot, Object value) {
+    Object previous = reserve(slot);
+    values[slot] = value;
+    if (tags != null) {
+      tags[slot] = (byte) ValueType.OBJECT.ordinal();
+    }
+    return previous;
+  }
+
+  /**
+   * Returns the type of the value stored at the given slot, or null if there is none.
+   */
+  public ValueType getValueType(int slot) {
+    if (!hasValue(slot)) {
+      return null;
+    }
+    return values[slot] == PRIMITIVE ? VALUE_TYPES[tags[slot]] : ValueType.OBJECT;
+  }
+
+  /**
+   * Returns whether the given slot holds a value in the primitive lane.
+   */
+  public boolean isPrimitive(int slot) {
+    return slot >= 0 && slot < values.length && values[slot] == PRIMITIVE;
+  }
+
+  /**
+   * Stores an unboxed int value at the given slot.
+   */
+  public void setInt(int slot, int value) {
+    setPrimitive(slot, ValueType.INT, value);
+  }
+
+  /**
+   * Stores an unboxed long value at the given slot.
+   */
+  public void setLong(int slot, long value) {
+    setPrimitive(slot, ValueType.LONG, value);
+  }
+
+  /**
+   * Stores an unboxed double value at the given slot.
+   */
+  public void setDouble(int slot, double value) {
+    setPrimitive(slot, ValueType.DOUBLE, Double.doubleToRawLongBits(value));
+  }
+
+  /**
+   * Returns the value at the given slot as long, without boxing if it is stored in the primitive
+   * lane. Double values are truncated.
+   *
+   * @throws RuntimeException if the slot is empty or holds a non-numeric object
+   */
+  public long getLong(int slot) {
+    if (isPrimitive(slot)) {
+      return tags[slot] == ValueType.DOUBLE.ordinal() ? (long) Double.longBitsToDouble(bits[slot])
+          : bits[slot];
+    }
+    return toLong(getValue(slot));
+  }
+
+  /**
+   * Returns the value at the given slot as double, without boxing if it is stored in the primitive
+   * lane.
+   *
+   * @throws RuntimeException if the slot is empty or holds a non-numeric object
+   */
+  public double getDouble(int slot) {
+    if (isPrimitive(slot)) {
+      return tags[slot] == ValueType.DOUBLE.ordinal() ? Double.longBitsToDouble(bits[slot])
+          : bits[slot];
+    }
+    return toDouble(getValue(slot));
+  }
+
+  /**
+   * Converts a boxed numeric value, character or boolean to long.
+   */
+  public static long toLong(Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    } else if (value instanceof Character) {
+      return (Character) value;
+    } else if (value instanceof Boolean) {
+      return (Boolean) value ? 1 : 0;
+    }
+    throw new RuntimeException(String.format("Not a numeric value: %s", value));
+  }
+
+  /**
+   * Converts a boxed numeric value, character or boolean to double.
+   */
+  public static double toDouble(Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    }
+    return toLong(value);
+  }
+
+  private void setPrimitive(int slot, ValueType type, long value) {
+    reserve(slot);
+    if (tags == null) {
+      tags = new byte[values.length];
+      bits = new long[values.length];
+    }
+    values[slot] = PRIMITIVE;
+    tags[slot] = (byte) type.ordinal();
+    bits[slot] = value;
+  }
+
+  /**
+   * Makes sure the given slot exists and is counted as occupied.
+   *
+   * @return the previous value, or null if there was none
+   */
+  private Object reserve(int slot) {
+    if (slot >= values.length) {
+      grow(slot);
+    }
+    if (values[slot] == ABSENT) {
+      count++;
+      return null;
+    }
+    return getValue(slot);
+  }
+
+  private Object boxPrimitive(int slot) {
+    switch (VALUE_TYPES[tags[slot]]) {
+      case INT:
+        return (int) bits[slot];
+      case LONG:
+        return bits[slot];
+      default:
+        return Double.longBitsToDouble(bits[slot]);
+    }
+  }
+
+  /**
+   * Removes the value at the given slot.
+   *
+   * @return the previous value, or null if there was none
+   */
+  public Object clearValue(int slot) {
+    if (!hasValue(slot)) {
+      return null;
+    }
+    Object previous = getValue(slot);
+    values[slot] = ABSENT;
+    count--;
+    return previous;
+  }
+
+  @Override
+  public Memory copy() {
+    return new SlotMemory(this);
+  }
+
+  @Override
+  public Object clone() {
+    return new SlotMemory(this);
+  }
+
+  private int slotOf(Object key) {
+    return key instanceof String ? symbols.slotOf((String) key) : SymbolTable.NONE;
+  }
+
+  private void grow(int slot) {
+    int oldLength = values.length;
+    values = Arrays.copyOf(values, Math.max(slot + 1, Math.max(symbols.size(), oldLength * 2)));
+    Arrays.fill(values, oldLength, values.length, ABSENT);
+    if (tags != null) {
+      tags = Arrays.copyOf(tags, values.length);
+      bits = Arrays.copyOf(bits, values.length);
+    }
+  }
+
+  @Override
+  public Object getValueForVariable(String variableName) {
+    return get(variableName);
+  }
+
+  @Override
+  public int size() {
+    return count;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  @Override
+  public Object get(Object key) {
+    return getValue(slotOf(key));
+  }
+
+  @Override
+  public Object getOrDefault(Object key, Object defaultValue) {
+    int slot = slotOf(key);
+    return hasValue(slot) ? getValue(slot) : defaultValue;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return hasValue(slotOf(key));
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    for (int slot = 0; slot < values.length; slot++) {
+      if (values[slot] != ABSENT && Objects.equals(getValue(slot), value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    return setValue(symbols.slotOf(key, true), value);
+  }
+
+  @Override
+  public void putAll(Map<? extends String, ? extends Object> m) {
+    for (Map.Entry<? extends String, ? extends Object> entry : m.entrySet()) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public Object putIfAbsent(String key, Object value) {
+    Object current = get(key);
+    if (current == null) {
+      put(key, value);
+    }
+    return current;
+  }
+
+  @Override
+  public Object remove(Object key) {
+    return clearValue(slotOf(key));
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    int slot = slotOf(key);
+    if (hasValue(slot) && Objects.equals(getValue(slot), value)) {
+      clearValue(slot);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean replace(String key, Object oldValue, Object newValue) {
+    int slot = slotOf(key);
+    if (hasValue(slot) && Objects.equals(getValue(slot), oldValue)) {
+      setValue(slot, newValue);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public Object replace(String key, Object value) {
+    int slot = slotOf(key);
+    return hasValue(slot) ? setValue(slot, value) : null;
+  }
+
+  @Override
+  public Object computeIfAbsent(String key,
+      java.util.function.Function<? super String, ? extends Object> mappingFunction) {
+    Object current = get(key);
+    if (current == null) {
+      Object value = mappingFunction.apply(key);
+      if (value != null) {
+        put(key, value);
+      }
+      return value;
+    }
+    return current;
+  }
+
+  @Override
+  public Object computeIfPresent(String key,
+      BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+    Object current = get(key);
+    if (current == null) {
+      return null;
+    }
+    Object value = remappingFunction.apply(key, current);
+    if (value == null) {
+      remove(key);
+    } else {
+      put(key, value);
+    }
+    return value;
+  }
+
+  @Override
+  public Object compute(String key,
+      BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+    Object value = remappingFunction.apply(key, get(key));
+    if (value == null) {
+      remove(key);
+    } else {
+      put(key, value);
+    }
+    return value;
+  }
+
+  @Override
+  public Object merge(String key, Object value,
+      BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+    Object current = get(key);
+    Object newValue = current == null ? value : remappingFunction.apply(current, value);
+    if (newValue == null) {
+      remove(key);
+    } else {
+      put(key, newValue);
+    }
+    return newValue;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(values, ABSENT);
+    count = 0;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super Object> action) {
+    for (int slot = 0; slot < values.length; slot++) {
+      if (values[slot] != ABSENT) {
+        action.accept(symbols.nameAt(slot), getValue(slot));
+      }
+    }
+  }
+
+  @Override
+  public void replaceAll(
+      BiFunction<? super String, ? super Object, ? extends Object> function) {
+    for (int slot = 0; slot < values.length; slot++) {
+      if (values[slot] != ABSENT) {
+        setValue(slot, function.apply(symbols.nameAt(slot), getValue(slot)));
+      }
+    }
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return new AbstractSet<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        Iterator<Map.Entry<String, Object>> entries = new EntryIterator();
+        return new Iterator<String>() {
+          @Override
+          public boolean hasNext() {
+            return entries.hasNext();
+          }
+
+          @Override
+          public String next() {
+            return entries.next().getKey();
+          }
+
+          @Override
+          public void remove() {
+            entries.remove();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+
+      @Override
+      public boolean remove(Object o) {
+        int slot = slotOf(o);
+        if (!hasValue(slot)) {
+          return false;
+        }
+        clearValue(slot);
+        return true;
+      }
+    };
+  }
+
+  @Override
+  public Collection<Object> values() {
+    return new AbstractCollection<Object>() {
+      @Override
+      public Iterator<Object> iterator() {
+        Iterator<Map.Entry<String, Object>> entries = new EntryIterator();
+        return new Iterator<Object>() {
+          @Override
+          public boolean hasNext() {
+            return entries.hasNext();
+          }
+
+          @Override
+          public Object next() {
+            return entries.next().getValue();
+          }
+
+          @Override
+          public void remove() {
+            entries.remove();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+    };
+  }
+
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return new AbstractSet<Map.Entry<String, Object>>() {
+      @Override
+      public Iterator<Map.Entry<String, Object>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+    };
+  }
+
+  /**
+   * Serializes the frame as a plain Memory, since the slots are not part of the HashMap state.
+   */
+  private Object writeReplace() {
+    Memory memory = new Memory();
+    forEach(memory::put);
+    return memory;
+  }
+
+  /**
+   * Iterates the occupied slots in slot order.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+    private int next = advance(0);
+    private int last = -1;
+
+    private int advance(int from) {
+      int slot = from;
+      while (slot < values.length && values[slot] == ABSENT) {
+        slot++;
+      }
+      return slot;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < values.length;
+    }
+
+    @Override
+    public Map.Entry<String, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final int slot = next;
+      last = slot;
+      next = advance(slot + 1);
+      return new AbstractMap.SimpleEntry<String, Object>(symbols.nameAt(slot), getValue(slot)) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object setValue(Object value) {
+          super.setValue(value);
+          return SlotMemory.this.setValue(slot, value);
+        }
+      };
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      clearValue(last);
+      last = -1;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package sg.edu.nus.se.its.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.javatuples.Pair;
+import sg.edu.nus.se.its.util.Constants;
+
+/**
+ * Assigns a dense int slot to every variable name of a function, so that memory frames can store
+ * variable values in arrays instead of hashing names on every access. Slots are never reused, and
+ * names that are unknown at construction time get the next free slot on first use. Adding names is
+ * not thread-safe.
+ */
+public class SymbolTable {
+
+  /**
+   * Marker for an unknown name.
+   */
+  public static final int NONE = -1;
+
+  private final Map<String, Integer> slots = new HashMap<>();
+
+  private final List<String> names = new ArrayList<>();
+
+  /**
+   * Creates a symbol table that contains the special variables ($in, $out, $ret, $cond).
+   */
+  public SymbolTable() {
+    slotOf(Constants.VAR_IN, true);
+    slotOf(Constants.VAR_OUT, true);
+    slotOf(Constants.VAR_RET, true);
+    slotOf(Constants.VAR_COND, true);
+  }
+
+  /**
+   * Creates the symbol table for the given function, containing the special variables, the
+   * parameters, all declared and assigned variables, and all variables read by its expressions.
+   */
+  public static SymbolTable forFunction(Function function) {
+    SymbolTable table = new SymbolTable();
+    if (function.getParams() != null) {
+      for (Pair<String, String> param : function.getParams()) {
+        table.slotOf(param.getValue0(), true);
+      }
+    }
+    if (function.getTypes() != null) {
+      for (String name : function.getTypes().keySet()) {
+        table.slotOf(name, true);
+      }
+    }
+    for (int loc : function.getLocations()) {
+      for (Pair<String, Expression> pair : function.getExprs(loc)) {
+        table.slotOf(pair.getValue0(), true);
+        table.addVariables(pair.getValue1());
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Returns a copy of this table with the same slots, which grows independently.
+   */
+  public SymbolTable copy() {
+    SymbolTable copy = new SymbolTable();
+    copy.slots.clear();
+    copy.names.clear();
+    copy.slots.putAll(slots);
+    copy.names.addAll(names);
+    return copy;
+  }
+
+  /**
+   * Returns the slot of the given name, or NONE if the name is unknown.
+   */
+  public int slotOf(String name) {
+    Integer slot = slots.get(name);
+    return slot == null ? NONE : slot;
+  }
+
+  /**
+   * Returns the slot of the given name, optionally assigning a new slot to an unknown name.
+   *
+   * @param name variable name
+   * @param create whether an unknown name gets a new slot
+   * @return slot, or NONE if the name is unknown and create is false
+   */
+  public int slotOf(String name, boolean create) {
+    Objects.requireNonNull(name);
+    Integer slot = slots.get(name);
+    if (slot != null) {
+      return slot;
+    }
+    if (!create) {
+      return NONE;
+    }
+    int newSlot = names.size();
+    names.add(name);
+    slots.put(name, newSlot);
+    return newSlot;
+  }
+
+  /**
+   * Returns the name stored at the given slot.
+   */
+  public String nameAt(int slot) {
+    return names.get(slot);
+  }
+
+  /**
+   * Returns the number of assigned slots.
+   */
+  public int size() {
+    return names.size();
+  }
+
+  private void addVariables(Expression expr) {
+    expr.walk(new ExpressionVisitor() {
+      @Override
+      public boolean enter(Expression node) {
+        if (node instanceof Variable) {
+          slotOf(((Variable) node).getName(), true);
+        }
+        return true;
+      }
+    });
+  }
+}
@@ -1,5 +1,6 @@
 package sg.edu.nus.se.its.model;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -69,6 +70,7 @@ public class Variable extends Expression implements Cloneable {
    * Sets the prime status of the variable, without generating any clone.
    */
   public void setPrimed(boolean primed) {
+    checkNotFrozen();
     this.primed = primed;
   }
 
@@ -125,6 +127,15 @@ public class Variable extends Expression implements Cloneable {
     return exprOriginal(getName());
   }
 
+  @Override
+  public void writeTo(Appendable out, boolean withOriginalField) throws IOException {
+    out.append(name);
+    if (primed) {
+      out.append('\'');
+    }
+    writeOriginal(out);
+  }
+
   @Override
   public Object clone() throws CloneNotSupportedException {
     Variable cloneVariable = new Variable(this.name, this.getLineNumber());
@@ -132,6 +143,13 @@ public class Variable extends Expression implements Cloneable {
     return cloneVariable;
   }
 
+  @Override
+  public Expression deepCopy() {
+    Variable copy = new Variable(name, getLineNumber(), copyOriginal());
+    copy.setPrimed(primed);
+    return copy;
+  }
+
   @Override
   public String getType() {
     return getClass().getSimpleName();
@@ -161,17 +179,13 @@ public class Variable extends Expression implements Cloneable {
 
   @Override
   public Expression prime() {
-    this.setPrimed(true);
-    return this;
+    return withPrimed(true);
   }
 
   @Override
   public Expression prime(Set<String> name) {
-    for (String varName : name) {
-      if (this.name.equals(varName)) {
-        this.setPrimed(true);
-        return this;
-      }
+    if (name.contains(this.name)) {
+      return withPrimed(true);
     }
     return this;
   }
@@ -190,7 +204,22 @@ public class Variable extends Expression implements Cloneable {
 
   @Override
   public Expression unprime() {
-    this.setPrimed(false);
-    return this;
+    return withPrimed(false);
+  }
+
+  /**
+   * Sets the prime status in place, or returns an updated copy if this variable is frozen, e.g.,
+   * because it is interned.
+   */
+  private Variable withPrimed(boolean primed) {
+    if (this.primed == primed) {
+      return this;
+    }
+    Variable result = this;
+    if (isFrozen()) {
+      result = new Variable(name, getLineNumber(), copyOriginal());
+    }
+    result.setPrimed(primed);
+    return result;
   }
 }
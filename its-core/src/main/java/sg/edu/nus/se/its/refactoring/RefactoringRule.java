@@ -11,6 +11,10 @@ public interface RefactoringRule {
    * Refactor the provided program at the given function name and location. Returns an empty
    * Optional if the refactoring rule cannot be applied at the given function name and location.
    *
+   * <p>The provided program may share its expressions with other programs (see
+   * {@link Program#derive()}), so rules must replace expressions instead of modifying them in
+   * place.
+   *
    * @param program -- the program to refactor
    * @param functionName -- the function name to apply refactoring
    * @param location -- the location to apply refactoring
@@ -6,6 +6,8 @@ import org.javatuples.Pair;
 import org.javatuples.Triplet;
 import sg.edu.nus.se.its.model.Constant;
 import sg.edu.nus.se.its.model.Expression;
+import sg.edu.nus.se.its.model.ExpressionFolder;
+import sg.edu.nus.se.its.model.Opcode;
 import sg.edu.nus.se.its.model.Operation;
 import sg.edu.nus.se.its.model.Variable;
 
@@ -85,39 +87,45 @@ public class LocalRepair {
   }
 
   private static String prettyPrintExpr(Expression expr) {
-    if (expr instanceof Constant) {
-      return ((Constant) expr).getValue();
-    } else if (expr instanceof Variable) {
-      String name = expr.toString();
-      return Variable.isPrimedName(name) ? Variable.asUnprimedVariableName(name) : name;
-    } else if (expr instanceof Operation) {
-      if (((Operation) expr).getName().equals("ite")) {
-        return prettyPrintIteExpr((Operation) expr);
-      }
-      List<Expression> args = ((Operation) expr).getArgs();
-      StringBuilder prettyPrint = new StringBuilder();
-      for (Expression arg : args) {
-        prettyPrint.append(prettyPrintExpr(arg));
-        prettyPrint.append(" ").append(((Operation) expr).getName()).append(" ");
+    return expr.fold(new ExpressionFolder<String>() {
+      @Override
+      public String leaf(Expression node) {
+        if (node instanceof Constant) {
+          return ((Constant) node).getValue();
+        } else if (node instanceof Variable) {
+          String name = node.toString();
+          return Variable.isPrimedName(name) ? Variable.asUnprimedVariableName(name) : name;
+        }
+        return " ";
       }
 
-      return prettyPrint.substring(0, prettyPrint.length() - 3);
-    }
-    return " ";
+      @Override
+      public String node(Operation operation, List<String> args) {
+        if (operation.getOpcode() == Opcode.ITE) {
+          return prettyPrintIteExpr(args);
+        }
+        StringBuilder prettyPrint = new StringBuilder();
+        for (String arg : args) {
+          prettyPrint.append(arg);
+          prettyPrint.append(" ").append(operation.getName()).append(" ");
+        }
+
+        return prettyPrint.substring(0, prettyPrint.length() - 3);
+      }
+    });
   }
 
   /**
    * Print out special case of if-then statements.
    *
-   * @param expr Operation 'ite'
+   * @param args pretty printed arguments of the Operation 'ite'
    * @return Representative version of
    */
-  private static String prettyPrintIteExpr(Operation expr) {
-    List<Expression> args = expr.getArgs();
+  private static String prettyPrintIteExpr(List<String> args) {
     StringBuilder prettyPrint = new StringBuilder();
     prettyPrint.append("ite(");
-    for (Expression arg : args) {
-      prettyPrint.append(prettyPrintExpr(arg));
+    for (String arg : args) {
+      prettyPrint.append(arg);
       prettyPrint.append(", ");
     }
     prettyPrint.delete(prettyPrint.length() - 2, prettyPrint.length()); // remove trailing ", "
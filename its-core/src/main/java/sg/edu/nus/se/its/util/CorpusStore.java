@@ -0,0 +1,493 @@
+package sg.edu.nus.se.its.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import sg.edu.nus.se.its.model.Input;
+import sg.edu.nus.se.its.model.Program;
+import sg.edu.nus.se.its.model.ProgramBinaryCodec;
+import sg.edu.nus.se.its.model.ProgramJsonReader;
+
+/**
+ * Store of many submissions, i.e., program models with their inputs, in two files instead of one
+ * file per submission: an append-only data file with the programs in the binary format of
+ * {@link ProgramBinaryCodec}, and an index with the id and position of each record. The index is
+ * kept in memory and the data file is memory-mapped for reading, so a submission is retrieved by id
+ * without opening a file.
+ *
+ * <p>Records are never updated or removed. An interrupted append leaves unindexed bytes at the end
+ * of the data file, which are ignored. Reads are thread-safe, appends are serialized.
+ */
+public class CorpusStore implements Closeable, Iterable<CorpusStore.Entry> {
+
+  static final String DATA_FILE_NAME = "corpus.dat";
+  static final String INDEX_FILE_NAME = "corpus.idx";
+
+  private static final int INDEX_MAGIC = 0x49545349; // "ITSI"
+  private static final int INDEX_VERSION = 1;
+
+  /**
+   * Size of the mapped segments of the data file. A single mapping is limited to 2 GB.
+   */
+  private static final long SEGMENT_SIZE = 1L << 30;
+
+  private final FileChannel data;
+  private final FileChannel index;
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+  /**
+   * Mapped segments of the data file, which cover the first mappedSize bytes. Replaced when
+   * appended records are read.
+   */
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+  private volatile long mappedSize;
+
+  private CorpusStore(FileChannel data, FileChannel index) {
+    this.data = data;
+    this.index = index;
+  }
+
+  /**
+   * Opens the store in the given directory, which is created if it does not exist.
+   *
+   * @param directory directory of the store
+   * @return opened store
+   * @throws IOException if the files cannot be opened or the index is corrupt
+   */
+  public static CorpusStore open(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    FileChannel data = FileChannel.open(directory.resolve(DATA_FILE_NAME), StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    FileChannel index;
+    try {
+      index = FileChannel.open(directory.resolve(INDEX_FILE_NAME), StandardOpenOption.READ,
+          StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    } catch (IOException e) {
+      data.close();
+      throw e;
+    }
+    CorpusStore store = new CorpusStore(data, index);
+    try {
+      store.readIndex();
+    } catch (IOException e) {
+      store.close();
+      throw e;
+    }
+    return store;
+  }
+
+  /**
+   * Returns the number of stored submissions.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns whether a submission with the given id is stored.
+   */
+  public synchronized boolean contains(String id) {
+    return entries.containsKey(id);
+  }
+
+  /**
+   * Returns the ids of all submissions in the order in which they were added.
+   */
+  public synchronized List<String> getIds() {
+    return new ArrayList<>(entries.keySet());
+  }
+
+  /**
+   * Returns the stored submission with the given id, or null.
+   */
+  public synchronized Entry getEntry(String id) {
+    return entries.get(id);
+  }
+
+  /**
+   * Returns the program of the submission with the given id, or null if there is none.
+   *
+   * @param id id of the submission
+   * @return decoded program
+   * @throws IOException if the record cannot be read
+   */
+  public Program getProgram(String id) throws IOException {
+    Entry entry = getEntry(id);
+    return entry == null ? null : entry.readProgram();
+  }
+
+  /**
+   * Returns the inputs of the submission with the given id, or null if there is none or it was
+   * stored without inputs.
+   *
+   * @param id id of the submission
+   * @return inputs
+   * @throws IOException if the record cannot be read
+   */
+  public List<Input> getInputs(String id) throws IOException {
+    Entry entry = getEntry(id);
+    return entry == null ? null : entry.readInputs();
+  }
+
+  /**
+   * Returns the submissions in the order in which they were added, which is also their order in
+   * the data file. Records are decoded on demand by the entries.
+   */
+  @Override
+  public Iterator<Entry> iterator() {
+    List<Entry> snapshot;
+    synchronized (this) {
+      snapshot = new ArrayList<>(entries.values());
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+  /**
+   * Appends a submission.
+   *
+   * @param id unique id of the submission
+   * @param program program model
+   * @param inputs inputs of the program, can be null
+   * @throws IOException if writing fails
+   * @throws IllegalArgumentException if a submission with the id is already stored
+   */
+  public synchronized void add(String id, Program program, List<Input> inputs)
+      throws IOException {
+    if (entries.containsKey(id)) {
+      throw new IllegalArgumentException(
+          String.format("Submission %s is already stored", id));
+    }
+    byte[] programBytes = ProgramBinaryCodec.encode(program);
+    byte[] inputBytes = encodeInputs(inputs);
+    long offset = data.size();
+    ByteBuffer record = ByteBuffer.allocate(programBytes.length + inputBytes.length);
+    record.put(programBytes).put(inputBytes).flip();
+    writeFully(data, record, offset);
+
+    Entry entry = new Entry(id, offset, programBytes.length, inputBytes.length);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    if (index.size() == 0) {
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(INDEX_VERSION);
+    }
+    writeString(out, id);
+    out.writeLong(offset);
+    out.writeInt(entry.programLength);
+    out.writeInt(entry.inputsLength);
+    writeFully(index, ByteBuffer.wrap(bytes.toByteArray()), index.size());
+    entries.put(id, entry);
+  }
+
+  /**
+   * Imports all program models below the given model directory that are not stored yet, with
+   * their inputs from the input directory, in the layout of the test resources: the id of
+   * model/a/b.c.json is "a/b.c" and its inputs are read from input/a/b.c.in, whose whitespace
+   * separated tokens form a single {@link Input}. Models without an input file are stored without
+   * inputs.
+   *
+   * @param modelDirectory directory of the JSON models
+   * @param inputDirectory directory of the input files
+   * @return number of imported submissions
+   * @throws IOException if a model or input file cannot be read, or writing fails
+   */
+  public int importResources(Path modelDirectory, Path inputDirectory) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(modelDirectory)) {
+      files = paths.filter(path -> path.toString().endsWith(".json")).sorted()
+          .collect(Collectors.toList());
+    }
+    ProgramJsonReader reader = new ProgramJsonReader();
+    int count = 0;
+    for (Path file : files) {
+      String name = modelDirectory.relativize(file).toString().replace('\\', '/');
+      String id = name.substring(0, name.length() - ".json".length());
+      if (contains(id)) {
+        continue;
+      }
+      Program program = reader.read(file);
+      List<Input> inputs = null;
+      Path inputFile = inputDirectory.resolve(id + ".in");
+      if (Files.isRegularFile(inputFile)) {
+        List<String> tokens = new ArrayList<>();
+        try (Scanner scanner = new Scanner(inputFile)) {
+          while (scanner.hasNext()) {
+            tokens.add(scanner.next());
+          }
+        }
+        inputs = Arrays.asList(new Input(tokens.toArray(new String[0]), null));
+      }
+      add(id, program, inputs);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Closes the files of the store. Reading a submission afterwards throws an IOException.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      data.close();
+    } finally {
+      index.close();
+      segments = new MappedByteBuffer[0];
+      mappedSize = 0;
+    }
+  }
+
+  /**
+   * A stored submission, whose program and inputs are decoded on each call.
+   */
+  public final class Entry {
+    private final String id;
+    private final long offset;
+    private final int programLength;
+    private final int inputsLength;
+
+    private Entry(String id, long offset, int programLength, int inputsLength) {
+      this.id = id;
+      this.offset = offset;
+      this.programLength = programLength;
+      this.inputsLength = inputsLength;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * Decodes the program of this submission.
+     *
+     * @return program
+     * @throws IOException if the record cannot be read
+     */
+    public Program readProgram() throws IOException {
+      return ProgramBinaryCodec.decode(read(offset, programLength));
+    }
+
+    /**
+     * Decodes the program of this submission such that its functions are decoded on first access,
+     * see {@link ProgramBinaryCodec#decodeLazily(byte[])}.
+     *
+     * @return program with lazily decoded functions
+     * @throws IOException if the record cannot be read
+     */
+    public Program readLazyProgram() throws IOException {
+      return ProgramBinaryCodec.decodeLazily(read(offset, programLength));
+    }
+
+    /**
+     * Decodes the inputs of this submission, or returns null if it was stored without inputs.
+     *
+     * @return inputs
+     * @throws IOException if the record cannot be read
+     */
+    public List<Input> readInputs() throws IOException {
+      return decodeInputs(read(offset + programLength, inputsLength));
+    }
+
+    /**
+     * Like {@link #readProgram()}, but for use in streams and loops over the store.
+     */
+    public Program getProgram() {
+      try {
+        return readProgram();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Like {@link #readInputs()}, but for use in streams and loops over the store.
+     */
+    public List<Input> getInputs() {
+      try {
+        return readInputs();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private void readIndex() throws IOException {
+    long size = index.size();
+    if (size < 8) {
+      // empty, or the header of the first append was interrupted
+      index.truncate(0);
+      return;
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Corpus index is too large");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    while (buffer.hasRemaining()) {
+      if (index.read(buffer, buffer.position()) < 0) {
+        throw new EOFException("Corpus index is truncated");
+      }
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+    if (in.readInt() != INDEX_MAGIC) {
+      throw new IOException("Not a corpus index");
+    }
+    int version = in.readInt();
+    if (version != INDEX_VERSION) {
+      throw new IOException(String.format("Unsupported corpus index version %d", version));
+    }
+    long dataSize = data.size();
+    while (in.available() > 0) {
+      long entryStart = size - in.available();
+      Entry entry;
+      try {
+        entry = new Entry(readString(in), in.readLong(), in.readInt(), in.readInt());
+      } catch (EOFException e) {
+        // an interrupted append, whose record is dropped
+        index.truncate(entryStart);
+        break;
+      }
+      if (entry.offset + entry.programLength + entry.inputsLength > dataSize) {
+        throw new IOException(String.format("Corpus data is truncated at %s", entry.id));
+      }
+      entries.put(entry.id, entry);
+    }
+  }
+
+  /**
+   * Returns the given range of the data file, mapping appended parts of the file first.
+   */
+  private byte[] read(long offset, int length) throws IOException {
+    if (!data.isOpen()) {
+      throw new IOException("Corpus store is closed");
+    }
+    long end = offset + length;
+    if (end > mappedSize) {
+      map(end);
+    }
+    MappedByteBuffer[] mapped = segments;
+    byte[] bytes = new byte[length];
+    int done = 0;
+    while (done < length) {
+      long position = offset + done;
+      int segmentIndex = (int) (position / SEGMENT_SIZE);
+      if (segmentIndex >= mapped.length) {
+        // the store was closed concurrently
+        throw new IOException("Corpus store is closed");
+      }
+      ByteBuffer segment = mapped[segmentIndex].duplicate();
+      segment.position((int) (position % SEGMENT_SIZE));
+      int chunk = Math.min(length - done, segment.remaining());
+      segment.get(bytes, done, chunk);
+      done += chunk;
+    }
+    return bytes;
+  }
+
+  /**
+   * Maps the data file at least up to the given position, remapping the last segment if it is
+   * only partially mapped.
+   */
+  private synchronized void map(long end) throws IOException {
+    if (end <= mappedSize) {
+      return;
+    }
+    long size = data.size();
+    if (end > size) {
+      throw new IOException("Corpus data is truncated");
+    }
+    List<MappedByteBuffer> mapped = new ArrayList<>(Arrays.asList(segments));
+    long start = (mappedSize / SEGMENT_SIZE) * SEGMENT_SIZE;
+    if (mappedSize % SEGMENT_SIZE != 0) {
+      mapped.remove(mapped.size() - 1);
+    }
+    while (start < size) {
+      long length = Math.min(SEGMENT_SIZE, size - start);
+      mapped.add(data.map(FileChannel.MapMode.READ_ONLY, start, length));
+      start += length;
+    }
+    segments = mapped.toArray(new MappedByteBuffer[0]);
+    mappedSize = size;
+  }
+
+  private static byte[] encodeInputs(List<Input> inputs) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(inputs == null ? -1 : inputs.size());
+    if (inputs != null) {
+      for (Input input : inputs) {
+        writeStrings(out, input.getInputs());
+        writeStrings(out, input.getArgs());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static List<Input> decodeInputs(byte[] bytes) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    int size = in.readInt();
+    if (size < 0) {
+      return null;
+    }
+    List<Input> inputs = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      inputs.add(new Input(readStrings(in), readStrings(in)));
+    }
+    return inputs;
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+    out.writeInt(strings.length);
+    for (String s : strings) {
+      writeString(out, s);
+    }
+  }
+
+  private static String[] readStrings(DataInputStream in) throws IOException {
+    String[] strings = new String[in.readInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = readString(in);
+    }
+    return strings;
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(utf8.length);
+    out.write(utf8);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] utf8 = new byte[in.readInt()];
+    in.readFully(utf8);
+    return new String(utf8, StandardCharsets.UTF_8);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package sg.edu.nus.se.its.util;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
@@ -11,14 +12,22 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import java.lang.reflect.Type;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
 import sg.edu.nus.se.its.model.Constant;
 import sg.edu.nus.se.its.model.Expression;
+import sg.edu.nus.se.its.model.ExpressionVisitor;
+import sg.edu.nus.se.its.model.Function;
 import sg.edu.nus.se.its.model.Operation;
+import sg.edu.nus.se.its.model.Program;
 import sg.edu.nus.se.its.model.Variable;
 
 /**
- * Custom JSON De-/serializer to incorporate class inheritance.
+ * Custom JSON De-/serializer to incorporate class inheritance. Values are de-/serialized as their
+ * tagged class through the context, so the other adapters of the caller apply to their fields. A
+ * value of the very type that this is registered for would reach this again through the context,
+ * so it is de-/serialized by a Gson with {@link ModelTypeAdapterFactory} instead.
  */
 public class JsonSerializerWithInheritance<T>
     implements JsonSerializer<sg.edu.nus.se.its.util.JsonSerializable>,
@@ -27,40 +36,69 @@ public class JsonSerializerWithInheritance<T>
   static final String TYPE_PROPERTY_NAME = "tokentype";
   static final String DATAMODEL_PACKAGE_NAME = "sg.edu.nus.se.its.model";
 
+  /**
+   * Model classes by their type tag.
+   */
+  private static final Map<String, Class<? extends JsonSerializable>> MODEL_TYPES = Map.of(
+      "Program", Program.class,
+      "Function", Function.class,
+      "Variable", Variable.class,
+      "Constant", Constant.class,
+      "Operation", Operation.class);
+
+  private static final Gson GSON =
+      new GsonBuilder().registerTypeAdapterFactory(new ModelTypeAdapterFactory()).create();
+
   /**
    * Add the tokentype for Operation arguments recursively.
    *
    * @param src A Json Serializable object
    * @param argObject The argument object of the Operation
+   * @deprecated the tokentype of all arguments is written during serialization
    */
+  @Deprecated
   public void addPropertyName(sg.edu.nus.se.its.util.JsonSerializable src, JsonObject argObject) {
-    if (src instanceof Operation) {
-      JsonArray args = argObject.getAsJsonArray("args");
-      List<Expression> argsExpression = ((Operation) src).getArgs();
-      for (int i = 0; i < argsExpression.size(); i++) {
-        JsonObject arg = args.get(i).getAsJsonObject();
-        addPropertyName(argsExpression.get(i), arg);
-      }
-      argObject.addProperty(TYPE_PROPERTY_NAME, src.getType());
-    } else if (src instanceof Variable || src instanceof Constant) {
-      argObject.addProperty(TYPE_PROPERTY_NAME, src.getType());
+    if (!(src instanceof Expression)) {
+      return;
     }
+    Deque<JsonArray> argArrays = new ArrayDeque<>();
+    Deque<Integer> nextIndices = new ArrayDeque<>();
+    ((Expression) src).walk(new ExpressionVisitor() {
+      @Override
+      public boolean enter(Expression expr) {
+        JsonObject object = argObject;
+        if (!argArrays.isEmpty()) {
+          int index = nextIndices.pop();
+          nextIndices.push(index + 1);
+          object = argArrays.peek().get(index).getAsJsonObject();
+        }
+        if (expr instanceof Operation || expr instanceof Variable || expr instanceof Constant) {
+          object.addProperty(TYPE_PROPERTY_NAME, expr.getType());
+        }
+        if (expr instanceof Operation) {
+          argArrays.push(object.getAsJsonArray("args"));
+          nextIndices.push(0);
+        }
+        return true;
+      }
+
+      @Override
+      public void leave(Expression expr) {
+        if (expr instanceof Operation) {
+          argArrays.pop();
+          nextIndices.pop();
+        }
+      }
+    });
   }
 
   @Override
   public JsonElement serialize(sg.edu.nus.se.its.util.JsonSerializable src, Type typeOfSrc,
       JsonSerializationContext context) {
-
-    JsonObject object;
-    if (src.toString().isBlank()) {
-      object = (JsonObject) new Gson().toJsonTree(src);
-    } else {
-      object = context.serialize(src).getAsJsonObject();
-    }
-
+    Class<?> clazz = src.getClass();
+    JsonElement tree = clazz == typeOfSrc ? GSON.toJsonTree(src) : context.serialize(src, clazz);
+    JsonObject object = tree.getAsJsonObject();
     object.addProperty(TYPE_PROPERTY_NAME, src.getType());
-
-    addPropertyName(src, object);
     return object;
   }
 
@@ -70,13 +108,13 @@ public class JsonSerializerWithInheritance<T>
     JsonObject jsonObject = json.getAsJsonObject();
     JsonPrimitive classNamePrimitive = (JsonPrimitive) jsonObject.get(TYPE_PROPERTY_NAME);
 
-    String className = DATAMODEL_PACKAGE_NAME + "." + classNamePrimitive.getAsString();
-
-    Class<?> clazz;
-    try {
-      clazz = Class.forName(className);
-    } catch (ClassNotFoundException e) {
-      throw new JsonParseException(e.getMessage());
+    Class<? extends JsonSerializable> clazz = MODEL_TYPES.get(classNamePrimitive.getAsString());
+    if (clazz == null) {
+      throw new JsonParseException(String.format("Unknown %s %s", TYPE_PROPERTY_NAME,
+          classNamePrimitive.getAsString()));
+    }
+    if (clazz == typeOfT) {
+      return GSON.fromJson(jsonObject, clazz);
     }
     return context.deserialize(jsonObject, clazz);
   }
@@ -0,0 +1,212 @@
+package sg.edu.nus.se.its.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import sg.edu.nus.se.its.model.Program;
+import sg.edu.nus.se.its.model.ProgramJsonReader;
+
+/**
+ * Converts whole directories of program models from the old JSON format to the new one, see
+ * {@link TestUtils#convertProgramJsonFile}. Each file is read by a {@link ProgramJsonReader} and
+ * written with a {@link JsonWriter}, so neither side materializes the JSON document. Files are
+ * converted in parallel, while at most twice as many files as threads are in progress, which bounds
+ * the memory independently of the size of the corpus.
+ *
+ * <p>A file that cannot be converted is reported in the {@link Report} and does not abort the
+ * conversion of the others.
+ */
+public class LegacyModelConverter {
+
+  private static final Gson GSON = new GsonBuilder()
+      .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+      .setPrettyPrinting()
+      .create();
+
+  private final int threads;
+
+  /**
+   * Creates a converter with one thread per available processor.
+   */
+  public LegacyModelConverter() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a converter with the given number of threads.
+   */
+  public LegacyModelConverter(int threads) {
+    if (threads < 1) {
+      throw new RuntimeException(String.format("Invalid number of threads %d", threads));
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * Result of a conversion.
+   */
+  public static final class Report {
+    private final int converted;
+    private final Map<Path, String> failures;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    private Report(int converted, Map<Path, String> failures, long bytes, long elapsedNanos) {
+      this.converted = converted;
+      this.failures = Collections.unmodifiableMap(failures);
+      this.bytes = bytes;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of files that were converted.
+     */
+    public int getConverted() {
+      return converted;
+    }
+
+    /**
+     * Returns the message of the error of each file that could not be converted, ordered by path.
+     */
+    public Map<Path, String> getFailures() {
+      return failures;
+    }
+
+    /**
+     * Returns the total size of the converted files in the old format.
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getElapsedMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Returns the number of converted files per second.
+     */
+    public double getFilesPerSecond() {
+      return elapsedNanos == 0 ? 0 : converted * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+      double seconds = elapsedNanos / 1e9;
+      return String.format("Converted %d files (%d failed) in %.2f s: %.1f files/s, %.1f MB/s",
+          converted, failures.size(), seconds, getFilesPerSecond(),
+          seconds == 0 ? 0 : bytes / 1e6 / seconds);
+    }
+  }
+
+  /**
+   * Converts all .json files below the source directory into the target directory, keeping their
+   * relative paths. Existing files in the target directory are replaced.
+   *
+   * @param sourceDirectory directory of the models in the old format
+   * @param targetDirectory directory for the models in the new format
+   * @return report of the conversion
+   * @throws IOException if the source directory cannot be listed
+   */
+  public Report convert(Path sourceDirectory, Path targetDirectory) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(sourceDirectory)) {
+      files = paths.filter(path -> path.toString().endsWith(".json") && Files.isRegularFile(path))
+          .sorted().collect(Collectors.toList());
+    }
+    long start = System.nanoTime();
+    AtomicInteger converted = new AtomicInteger();
+    AtomicLong bytes = new AtomicLong();
+    Map<Path, String> failures = new ConcurrentSkipListMap<>();
+    Semaphore inProgress = new Semaphore(2 * threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (Path file : files) {
+        inProgress.acquire();
+        executor.execute(() -> {
+          try {
+            Path target = targetDirectory.resolve(sourceDirectory.relativize(file).toString());
+            convertFile(file, target);
+            bytes.addAndGet(Files.size(file));
+            converted.incrementAndGet();
+          } catch (Exception e) {
+            failures.put(file, String.valueOf(e.getMessage()));
+          } finally {
+            inProgress.release();
+          }
+        });
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Conversion was interrupted", e);
+    } finally {
+      executor.shutdownNow();
+    }
+    return new Report(converted.get(), failures, bytes.get(), System.nanoTime() - start);
+  }
+
+  /**
+   * Converts a single file. The program is written to a temporary file first, which replaces the
+   * target only if the conversion succeeds.
+   *
+   * @param source model in the old format
+   * @param target file for the model in the new format
+   * @throws IOException if the file cannot be read, is no program or cannot be written
+   */
+  public static void convertFile(Path source, Path target) throws IOException {
+    Program program = new ProgramJsonReader().read(source);
+    if (program == null) {
+      throw new IOException(String.format("No program in %s", source));
+    }
+    Path parent = target.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temporary = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(temporary);
+          JsonWriter out = GSON.newJsonWriter(writer)) {
+        GSON.toJson(program, Program.class, out);
+      }
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Converts the models below a directory and prints the failures and the throughput.
+   *
+   * @param args source directory, target directory and optionally the number of threads
+   * @throws IOException if the source directory cannot be listed
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: LegacyModelConverter <source dir> <target dir> [threads]");
+      System.exit(1);
+    }
+    LegacyModelConverter converter = args.length > 2
+        ? new LegacyModelConverter(Integer.parseInt(args[2])) : new LegacyModelConverter();
+    Report report = converter.convert(Paths.get(args[0]), Paths.get(args[1]));
+    report.getFailures().forEach((path, message) -> System.err.println(path + ": " + message));
+    System.out.println(report);
+  }
+}
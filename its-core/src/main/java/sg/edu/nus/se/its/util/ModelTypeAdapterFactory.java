@@ -0,0 +1,284 @@
+package sg.edu.nus.se.its.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import sg.edu.nus.se.its.model.Constant;
+import sg.edu.nus.se.its.model.Expression;
+import sg.edu.nus.se.its.model.ExpressionVisitor;
+import sg.edu.nus.se.its.model.Operation;
+import sg.edu.nus.se.its.model.Variable;
+
+/**
+ * Gson type adapter factory for values declared as {@link Expression}, which writes and reads the
+ * expression subtypes with their type tag ("tokentype"). Subtypes are resolved from a fixed table
+ * of tags, and whole expression trees are written and read in a single pass without recursion, so
+ * the cost is linear in the size of the expression. The JSON is the same as written by
+ * {@link JsonSerializerWithInheritance}.
+ *
+ * <p>Register it with {@link com.google.gson.GsonBuilder#registerTypeAdapterFactory}.
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+  private static final String TYPE_PROPERTY_NAME = JsonSerializerWithInheritance.TYPE_PROPERTY_NAME;
+
+  /**
+   * Creates the expression of each type tag from its fields.
+   */
+  private static final Map<String, Subtype> SUBTYPES = Map.of(
+      "Variable", Fields::toVariable,
+      "Constant", Fields::toConstant,
+      "Operation", Fields::toOperation);
+
+  /**
+   * Applied to the names of variables and operations that are read, e.g., to intern them.
+   */
+  private final UnaryOperator<String> names;
+
+  public ModelTypeAdapterFactory() {
+    this(UnaryOperator.identity());
+  }
+
+  /**
+   * Creates a factory whose adapters map the names of all variables and operations they read with
+   * the given function, e.g., to share equal names between expressions.
+   */
+  public ModelTypeAdapterFactory(UnaryOperator<String> names) {
+    this.names = names;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+    if (type.getRawType() != Expression.class) {
+      return null;
+    }
+    TypeAdapter<List<?>> originalAdapter = gson.getAdapter(new TypeToken<List<?>>() {});
+    return (TypeAdapter<T>) new ExpressionAdapter(originalAdapter, names);
+  }
+
+  private interface Subtype {
+    Expression create(Fields fields);
+  }
+
+  /**
+   * Fields of an expression object that is being read.
+   */
+  private static final class Fields {
+    private String type;
+    private String name;
+    private String value;
+    private boolean primed;
+    private int line;
+    private List<?> original;
+    private List<Expression> args;
+    private boolean inArgs;
+
+    Expression toExpression() {
+      if (type == null) {
+        throw new JsonParseException(
+            String.format("Missing %s of expression", TYPE_PROPERTY_NAME));
+      }
+      Subtype subtype = SUBTYPES.get(type);
+      if (subtype == null) {
+        throw new JsonParseException(String.format("Unknown %s %s", TYPE_PROPERTY_NAME, type));
+      }
+      return subtype.create(this);
+    }
+
+    Variable toVariable() {
+      Variable variable = new Variable(name, line, original);
+      if (primed) {
+        variable.setPrimed(true);
+      }
+      return variable;
+    }
+
+    Constant toConstant() {
+      return new Constant(value, line, false, original);
+    }
+
+    Operation toOperation() {
+      return new Operation(name, args, line, original);
+    }
+  }
+
+  private static final class ExpressionAdapter extends TypeAdapter<Expression> {
+    private final TypeAdapter<List<?>> originalAdapter;
+    private final UnaryOperator<String> names;
+
+    ExpressionAdapter(TypeAdapter<List<?>> originalAdapter, UnaryOperator<String> names) {
+      this.originalAdapter = originalAdapter;
+      this.names = names;
+    }
+
+    @Override
+    public void write(JsonWriter out, Expression root) throws IOException {
+      if (root == null) {
+        out.nullValue();
+        return;
+      }
+      try {
+        root.walk(new ExpressionVisitor() {
+          @Override
+          public boolean enter(Expression expr) {
+            try {
+              return writeStart(out, expr);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          }
+
+          @Override
+          public void leave(Expression expr) {
+            try {
+              writeEnd(out, expr);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+
+    /**
+     * Writes the fields of the given expression that precede its arguments, in the order of the
+     * reflective serialization, and returns whether it has arguments.
+     */
+    private boolean writeStart(JsonWriter out, Expression expr) throws IOException {
+      if (expr == null) {
+        out.nullValue();
+        return false;
+      }
+      out.beginObject();
+      if (expr instanceof Variable) {
+        Variable variable = (Variable) expr;
+        out.name("name").value(variable.getUnprimedName());
+        out.name("primed").value(variable.isPrimed());
+      } else if (expr instanceof Constant) {
+        out.name("value").value(((Constant) expr).getValue());
+      } else if (expr instanceof Operation) {
+        Operation operation = (Operation) expr;
+        out.name("name").value(operation.getName());
+        out.name("args");
+        if (operation.getArgs() == null) {
+          out.nullValue();
+          return false;
+        }
+        out.beginArray();
+        return true;
+      } else {
+        throw new JsonParseException(String.format("Cannot serialize expression of type %s",
+            expr.getClass().getName()));
+      }
+      return false;
+    }
+
+    /**
+     * Writes the fields of the given expression that follow its arguments.
+     */
+    private void writeEnd(JsonWriter out, Expression expr) throws IOException {
+      if (expr == null) {
+        return;
+      }
+      if (expr instanceof Operation && ((Operation) expr).getArgs() != null) {
+        out.endArray();
+      }
+      out.name("line").value(expr.getLineNumber());
+      out.name("original");
+      originalAdapter.write(out, expr.getOriginal());
+      out.name(TYPE_PROPERTY_NAME).value(expr.getType());
+      out.endObject();
+    }
+
+    @Override
+    public Expression read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      Deque<Fields> stack = new ArrayDeque<>();
+      in.beginObject();
+      stack.push(new Fields());
+      while (true) {
+        Fields fields = stack.peek();
+        if (fields.inArgs) {
+          if (!in.hasNext()) {
+            in.endArray();
+            fields.inArgs = false;
+          } else if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            fields.args.add(null);
+          } else {
+            in.beginObject();
+            stack.push(new Fields());
+          }
+        } else if (in.hasNext()) {
+          readField(in, fields);
+        } else {
+          in.endObject();
+          Expression expr = stack.pop().toExpression();
+          if (stack.isEmpty()) {
+            return expr;
+          }
+          stack.peek().args.add(expr);
+        }
+      }
+    }
+
+    /**
+     * Reads the next field of an expression object. For the arguments, only the start of the array
+     * is read.
+     */
+    private void readField(JsonReader in, Fields fields) throws IOException {
+      String field = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return;
+      }
+      switch (field) {
+        case TYPE_PROPERTY_NAME:
+          fields.type = in.nextString();
+          break;
+        case "name":
+          fields.name = names.apply(in.nextString());
+          break;
+        case "value":
+          fields.value = in.nextString();
+          break;
+        case "primed":
+          fields.primed = in.nextBoolean();
+          break;
+        case "line":
+          fields.line = in.nextInt();
+          break;
+        case "original":
+          fields.original = originalAdapter.read(in);
+          break;
+        case "args":
+          in.beginArray();
+          fields.args = new ArrayList<>();
+          fields.inArgs = true;
+          break;
+        default:
+          in.skipValue();
+          break;
+      }
+    }
+  }
+}
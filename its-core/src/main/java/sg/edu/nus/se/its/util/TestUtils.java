@@ -8,10 +8,15 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -34,6 +39,8 @@ import sg.edu.nus.se.its.model.Function;
 import sg.edu.nus.se.its.model.Input;
 import sg.edu.nus.se.its.model.Operation;
 import sg.edu.nus.se.its.model.Program;
+import sg.edu.nus.se.its.model.ProgramBinaryCodec;
+import sg.edu.nus.se.its.model.ProgramJsonReader;
 import sg.edu.nus.se.its.model.Variable;
 
 /**
@@ -92,7 +99,7 @@ public class TestUtils {
 
   /**
    * Converts a JSON file that represents a Program object in the old format, to a JSON file with
-   * the new format.
+   * the new format. Whole directories are converted by {@link LegacyModelConverter}.
    *
    * @param filePathOldJsonFormatFile - file path of the JSON file in the old format
    * @param newFilePath - file path for the JSON file in the new format
@@ -100,8 +107,14 @@ public class TestUtils {
    */
   public static boolean convertProgramJsonFile(String filePathOldJsonFormatFile,
       String newFilePath) {
-    Program program = loadProgramByFilePathOld(filePathOldJsonFormatFile);
-    return storeProgramAsJsonFile(program, newFilePath);
+    try {
+      LegacyModelConverter.convertFile(Paths.get(filePathOldJsonFormatFile),
+          Paths.get(newFilePath));
+      return true;
+    } catch (IOException | RuntimeException e) {
+      e.printStackTrace();
+      return false;
+    }
   }
 
   /**
@@ -113,7 +126,7 @@ public class TestUtils {
    */
   public static boolean storeProgramAsJsonFile(Program program, String filePath) {
     GsonBuilder builder = new GsonBuilder();
-    builder.registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>());
+    builder.registerTypeAdapterFactory(new ModelTypeAdapterFactory());
     builder.setPrettyPrinting();
     Gson gson = builder.create();
     String value = gson.toJson(program);
@@ -131,24 +144,78 @@ public class TestUtils {
 
   /**
    * Loads the Program model from the JSON format into the Program object. This version of loading
-   * does not match Clara's format.
+   * does not match Clara's format. The file is read by {@link ProgramJsonReader}.
    *
    * @param filePath - String
    * @return Program object
    */
   public static Program loadProgramByFilePath(String filePath) {
-    GsonBuilder builder = new GsonBuilder();
-    builder.registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>());
-    Gson gson = builder.create();
-    File modelFile = new File(filePath);
     try {
-      return gson.fromJson(new FileReader(modelFile), Program.class);
-    } catch (FileNotFoundException e) {
+      return new ProgramJsonReader().read(Paths.get(filePath));
+    } catch (IOException e) {
       e.printStackTrace();
       return null;
     }
   }
 
+  /**
+   * Stores given program in the binary format, see {@link ProgramBinaryCodec}.
+   *
+   * @param program - Program
+   * @param filePath - String
+   * @return success
+   */
+  public static boolean storeProgramAsBinaryFile(Program program, String filePath) {
+    try (OutputStream out = new FileOutputStream(filePath)) {
+      ProgramBinaryCodec.encode(program, out);
+      return true;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Loads the Program model from the binary format, see {@link ProgramBinaryCodec}.
+   *
+   * @param filePath - String
+   * @return Program object
+   */
+  public static Program loadProgramByBinaryFilePath(String filePath) {
+    try (InputStream in = new FileInputStream(filePath)) {
+      return ProgramBinaryCodec.decode(in);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Converts a program model from the JSON format into the binary format.
+   *
+   * @param jsonFilePath - file path of the JSON file
+   * @param binaryFilePath - file path for the binary file
+   * @return success flag
+   */
+  public static boolean convertProgramJsonToBinaryFile(String jsonFilePath,
+      String binaryFilePath) {
+    Program program = loadProgramByFilePath(jsonFilePath);
+    return program != null && storeProgramAsBinaryFile(program, binaryFilePath);
+  }
+
+  /**
+   * Converts a program model from the binary format into the JSON format.
+   *
+   * @param binaryFilePath - file path of the binary file
+   * @param jsonFilePath - file path for the JSON file
+   * @return success flag
+   */
+  public static boolean convertProgramBinaryToJsonFile(String binaryFilePath,
+      String jsonFilePath) {
+    Program program = loadProgramByBinaryFilePath(binaryFilePath);
+    return program != null && storeProgramAsJsonFile(program, jsonFilePath);
+  }
+
   /**
    * Loads the Program model from the JSON format into the Program object. This version of loading
    * does not match Clara's format.
@@ -157,18 +224,7 @@ public class TestUtils {
    * @return Program object
    */
   public static Program loadProgramByName(String name) {
-    GsonBuilder builder = new GsonBuilder();
-    builder.registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>());
-    Gson gson = builder.create();
-
-    File modelFile = new File("../its-core/src/test/resources/model/" + name + ".json");
-
-    try {
-      return gson.fromJson(new FileReader(modelFile), Program.class);
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
-      return null;
-    }
+    return loadProgramByFilePath("../its-core/src/test/resources/model/" + name + ".json");
   }
 
   public static File loadFileResourceByName(String name) {
@@ -343,7 +399,7 @@ public class TestUtils {
    */
   public static VariableMapping loadVariableMappingFromFile(String filePath) {
     GsonBuilder builder = new GsonBuilder().enableComplexMapKeySerialization();
-    builder.registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>());
+    builder.registerTypeAdapterFactory(new ModelTypeAdapterFactory());
     Gson gson = builder.create();
     File modelFile = new File(filePath);
     try {
@@ -364,7 +420,7 @@ public class TestUtils {
   public static boolean storeStructuralMappingAsJsonFile(StructuralMapping mapping,
       String filePath) {
     GsonBuilder builder = new GsonBuilder();
-    builder.registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>());
+    builder.registerTypeAdapterFactory(new ModelTypeAdapterFactory());
     builder.setPrettyPrinting();
     Gson gson = builder.create();
     String value = gson.toJson(mapping);
@@ -390,7 +446,7 @@ public class TestUtils {
   public static boolean storeVariableMappingAsJsonFile(VariableMapping mapping, String filePath) {
     // Enable complex map-key serialization as VariableMapping contains Map<Variable, Variable>
     GsonBuilder builder = new GsonBuilder().enableComplexMapKeySerialization();
-    builder.registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>());
+    builder.registerTypeAdapterFactory(new ModelTypeAdapterFactory());
     builder.setPrettyPrinting();
     Gson gson = builder.create();
     String value = gson.toJson(mapping);
@@ -1,7 +1,5 @@
 package sg.edu.nus.se.its.util;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
@@ -15,7 +13,6 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.FileUtils;
-import sg.edu.nus.se.its.model.Expression;
 import sg.edu.nus.se.its.model.Program;
 
 /**
@@ -245,18 +242,14 @@ public class UtilFunctions {
   }
 
   /**
-   * Generates a deep copy of the provided program.
+   * Generates a deep copy of the provided program. The copy is created structurally, see
+   * {@link Program#deepCopy()}.
    *
    * @param program the program to be copied
    * @return a deep copy of the program
    */
   public static Program deepCopyProgram(Program program) {
-    GsonBuilder builder = new GsonBuilder();
-    builder.registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>());
-    builder.setPrettyPrinting();
-
-    Gson gson = builder.create();
-    return gson.fromJson(gson.toJson(program), Program.class);
+    return program.deepCopy();
   }
 
 }
@@ -0,0 +1,81 @@
+package sg.edu.nus.se.its.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sg.edu.nus.se.its.model.Expression;
+import sg.edu.nus.se.its.model.Program;
+import sg.edu.nus.se.its.util.JsonSerializerWithInheritance;
+import sg.edu.nus.se.its.util.TestUtils;
+
+/**
+ * Compares the structural deep copy of programs with the former Gson round-trip, over all program
+ * models in the test resources. Run from the its-core directory after {@code mvn test-compile},
+ * using the test classpath, e.g., via the main method of this class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeepCopyBenchmark {
+
+  private List<Program> programs;
+
+  private Gson gson;
+
+  /**
+   * Loads all program models.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    try (Stream<Path> files = Files.walk(Paths.get("src/test/resources/model"))) {
+      programs = files.filter(path -> path.toString().endsWith(".json"))
+          .map(path -> TestUtils.loadProgramByFilePath(path.toString()))
+          .collect(Collectors.toList());
+    }
+    gson = new GsonBuilder()
+        .registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>())
+        .setPrettyPrinting().create();
+  }
+
+  @Benchmark
+  public void gsonRoundTrip(Blackhole blackhole) {
+    for (Program program : programs) {
+      blackhole.consume(gson.fromJson(gson.toJson(program), Program.class));
+    }
+  }
+
+  @Benchmark
+  public void structuralCopy(Blackhole blackhole) {
+    for (Program program : programs) {
+      blackhole.consume(program.deepCopy());
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(DeepCopyBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,84 @@
+package sg.edu.nus.se.its.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import sg.edu.nus.se.its.model.Constant;
+import sg.edu.nus.se.its.model.Expression;
+import sg.edu.nus.se.its.model.Operation;
+import sg.edu.nus.se.its.model.Variable;
+
+/**
+ * Measures priming, unpriming and replacing variables on deep expressions, i.e., left-deep chains
+ * of binary operations as produced by long arithmetic statements. Run with the -prof gc option to
+ * see the allocation rate. Run from the its-core directory after {@code mvn test-compile}, using
+ * the test classpath, e.g., via the main method of this class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimeBenchmark {
+
+  @Param({"1", "100", "1000"})
+  private int depth;
+
+  private Expression expression;
+
+  private Set<String> names;
+
+  /**
+   * Builds a chain of the given depth over 16 distinct variables, and a set of 8 of them.
+   */
+  @Setup
+  public void setUp() {
+    names = new HashSet<>();
+    expression = new Variable("v0", 1);
+    for (int i = 1; i <= depth; i++) {
+      Expression leaf = i % 3 == 0 ? new Constant(Integer.toString(i), 1)
+          : new Variable("v" + i % 16, 1);
+      expression = new Operation(i % 2 == 0 ? "+" : "*",
+          new ArrayList<>(Arrays.asList(expression, leaf)), 1);
+    }
+    for (int i = 0; i < 16; i += 2) {
+      names.add("v" + i);
+    }
+  }
+
+  @Benchmark
+  public Expression primeAndUnprime() {
+    return expression.prime().unprime();
+  }
+
+  @Benchmark
+  public Expression primeSelected() {
+    return expression.prime(names).unprime();
+  }
+
+  @Benchmark
+  public Expression replaceMissing() {
+    return expression.replace("missing", expression);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(PrimeBenchmark.class.getSimpleName()).build()).run();
+  }
+}
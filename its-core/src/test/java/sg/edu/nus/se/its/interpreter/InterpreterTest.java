@@ -0,0 +1,116 @@
+package sg.edu.nus.se.its.interpreter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import sg.edu.nus.se.its.model.Constant;
+import sg.edu.nus.se.its.model.Expression;
+import sg.edu.nus.se.its.model.Function;
+import sg.edu.nus.se.its.model.Input;
+import sg.edu.nus.se.its.model.Memory;
+import sg.edu.nus.se.its.model.Operation;
+import sg.edu.nus.se.its.model.Program;
+import sg.edu.nus.se.its.model.SlotMemory;
+import sg.edu.nus.se.its.model.SymbolTable;
+import sg.edu.nus.se.its.model.Variable;
+
+/**
+ * Tests for the default methods of {@link Interpreter}.
+ */
+public class InterpreterTest {
+
+  @Test
+  void testExecuteAsLong_ArithmeticWithoutExecution_Success() {
+    RecordingInterpreter interpreter = new RecordingInterpreter();
+    SlotMemory memory = new SlotMemory(new SymbolTable());
+    memory.setInt(memory.getSymbolTable().slotOf("x", true), 7);
+    memory.setDouble(memory.getSymbolTable().slotOf("d", true), 0.5);
+    memory.put("boxed", 3);
+
+    assertEquals(8, interpreter.executeAsLong(op("+", var("x"), new Constant("'\\x01'", 0)),
+        memory));
+    assertEquals(27, interpreter.executeAsLong(op("*", op("-", var("x"), new Constant("010", 0)),
+        op("-", new Constant("0x1b", 0))), memory));
+    assertEquals(7.5, interpreter.executeAsDouble(op("+", var("x"), var("d")), memory));
+    assertEquals(1, interpreter.executeAsLong(op("<", var("boxed"), var("x")), memory));
+    assertEquals(-4, interpreter.executeAsLong(op("//", op("-", var("x")), new Constant("2", 0)),
+        memory));
+    assertEquals(14.0, interpreter.executeAsDouble(op("/", var("x"), var("d")), memory));
+    assertEquals(List.of("boxed"), interpreter.executed);
+  }
+
+  @Test
+  void testExecuteAsLong_UnsupportedOperations_Executed() {
+    RecordingInterpreter interpreter = new RecordingInterpreter();
+    Memory memory = new Memory();
+    memory.put("x", 7);
+
+    Expression division = op("/", var("x"), new Constant("2", 0));
+    Expression byZero = op("/", new Constant("1.0", 0), new Constant("0.0", 0));
+    Expression call = op("+", var("x"), op("FuncCall", var("f")));
+    assertEquals(42, interpreter.executeAsLong(division, memory));
+    assertEquals(42.0, interpreter.executeAsDouble(byZero, memory));
+    assertEquals(42, interpreter.executeAsLong(call, memory));
+    assertEquals(List.of("x", division.toString(), byZero.toString(), "x", call.toString()),
+        interpreter.executed);
+  }
+
+  private static Expression var(String name) {
+    return new Variable(name);
+  }
+
+  private static Expression op(String name, Expression... args) {
+    return new Operation(name, List.of(args), 0);
+  }
+
+  /**
+   * Interpreter that reads variables from the memory, returns 42 for all other expressions, and
+   * records what it executes.
+   */
+  private static class RecordingInterpreter implements Interpreter {
+    private final List<String> executed = new ArrayList<>();
+
+    @Override
+    public Trace executeProgram(Program program) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Trace executeProgram(Program program, Input input) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object execute(Executable executable, Memory memory) {
+      executed.add(executable.toString());
+      if (executable instanceof Variable) {
+        return memory.get(((Variable) executable).getName());
+      }
+      return 42;
+    }
+
+    @Override
+    public Object executeFunction(Function function, Memory memory) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object executeConstant(Constant constant, Memory memory) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object executeOperation(Operation operation, Memory memory) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object executeVariable(Variable variable, Memory memory) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setTimeout(int timeout) {}
+  }
+}
@@ -0,0 +1,148 @@
+package sg.edu.nus.se.its.interpreter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import sg.edu.nus.se.its.model.Memory;
+
+/**
+ * Tests the lookup of trace entries by location.
+ */
+public class TraceTest {
+
+  private static Trace loopTrace() {
+    Trace trace = new Trace();
+    trace.add("main", 1, new Memory());
+    for (int i = 0; i < 3; i++) {
+      trace.add("main", 2, new Memory());
+      trace.add("main", 3, new Memory());
+    }
+    trace.add("main", 4, new Memory());
+    return trace;
+  }
+
+  @Test
+  void testGetUnique_ReturnsEachEntryOnce_Success() {
+    Trace trace = loopTrace();
+    List<TraceEntry> loop = trace.getAll(2);
+    assertEquals(3, loop.size());
+    assertSame(trace.getEntries().get(1), loop.get(0));
+    assertSame(trace.getEntries().get(5), loop.get(2));
+
+    for (TraceEntry entry : loop) {
+      assertSame(entry, trace.getUnique(2));
+    }
+    assertNull(trace.getUnique(2));
+    assertSame(trace.getLastEntry(), trace.getUnique(4));
+    assertNull(trace.getUnique(5));
+    assertTrue(trace.getAll(5).isEmpty());
+  }
+
+  @Test
+  void testCursor_LocationsAddedAfterUse_Success() {
+    Trace trace = new Trace();
+    trace.add("main", 7, new Memory());
+    Trace.Cursor cursor = trace.cursor();
+    assertSame(trace.getEntries().get(0), cursor.next(7));
+    trace.add("main", -1, new Memory());
+    trace.add("main", 7, new Memory());
+
+    assertTrue(cursor.hasNext(-1));
+    assertSame(trace.getEntries().get(1), cursor.next(-1));
+    assertSame(trace.getEntries().get(2), cursor.next(7));
+    assertFalse(cursor.hasNext(7));
+    assertFalse(cursor.hasNext(8));
+  }
+
+  @Test
+  void testGetEntries_Modified_IndexRebuilt() {
+    Trace trace = loopTrace();
+    trace.getUnique(2);
+    Iterator<TraceEntry> iterator = trace.iterator();
+    iterator.next();
+    iterator.next();
+    iterator.remove();
+    TraceEntry added = new TraceEntry("main", 5, new Memory());
+    trace.getEntries().add(0, added);
+
+    assertEquals(8, trace.size());
+    assertEquals(2, trace.getAll(2).size());
+    assertSame(trace.getEntries().get(3), trace.getUnique(2));
+    assertSame(added, trace.getUnique(5));
+    trace.getEntries().clear();
+    assertTrue(trace.getAll(3).isEmpty());
+  }
+
+  @Test
+  void testCursor_IndependentOfOtherReaders_Success() {
+    Trace trace = loopTrace();
+    trace.getUnique(3);
+    Trace.Cursor first = trace.cursor();
+    Trace.Cursor second = trace.cursor();
+
+    assertSame(trace.getAll(3).get(0), first.next(3));
+    assertSame(trace.getAll(3).get(1), first.next(3));
+    assertSame(trace.getAll(3).get(0), second.next(3));
+    assertSame(trace.getAll(3).get(2), first.next(3));
+    assertFalse(first.hasNext(3));
+    assertNull(first.next(3));
+    assertTrue(second.hasNext(3));
+    assertSame(trace.getAll(3).get(1), trace.getUnique(3));
+  }
+
+  @Test
+  void testDeltaTrace_EqualToFullTrace_Success() {
+    Trace full = new Trace();
+    Trace delta = new Trace(4);
+    Memory mem = new Memory();
+    mem.put("n", 10);
+    mem.put("s", null);
+    for (int i = 0; i < 10; i++) {
+      mem.put("i", i);
+      mem.put("s", i % 3 == 0 ? null : "s" + i);
+      if (i == 5) {
+        mem.remove("n");
+      } else if (i == 7) {
+        mem.put("n", 3);
+      }
+      full.add("main", 2 + i % 2, mem.copy());
+      delta.add("main", 2 + i % 2, mem);
+    }
+
+    assertEquals(full.toString(), delta.toString());
+    for (int i = 0; i < full.size(); i++) {
+      TraceEntry expected = full.getEntries().get(i);
+      TraceEntry actual = delta.getEntries().get(i);
+      assertEquals(i % 4 != 0, actual.isDelta());
+      assertEquals(expected.getMem(), actual.getMem());
+      for (String name : new String[] {"n", "s", "i", "x"}) {
+        assertEquals(expected.getMem().get(name), actual.getValueForVariable(name));
+      }
+    }
+    assertFalse(full.getEntries().get(1).isDelta());
+    assertNull(full.getEntries().get(1).getChanges());
+    assertEquals(Map.of("i", 1, "s", "s1"), delta.getEntries().get(1).getChanges());
+    assertEquals(Set.of("n"), delta.getEntries().get(5).getRemoved());
+    assertTrue(delta.getEntries().get(6).getRemoved().isEmpty());
+    assertSame(delta.getEntries().get(3), delta.getAll(3).get(1));
+
+    TraceEntry last = delta.getLastEntry();
+    delta.getEntries().remove(4);
+    full.getEntries().remove(4);
+    for (int i = 0; i < full.size(); i++) {
+      assertEquals(full.getEntries().get(i).getMem(), delta.getEntries().get(i).getMem());
+    }
+    assertFalse(last.isDelta());
+    assertEquals(full.getLastEntry().getMem(), last.getMem());
+    delta.add("main", 2, mem);
+    assertEquals(mem, delta.getLastEntry().getMem());
+  }
+}
@@ -0,0 +1,366 @@
+package sg.edu.nus.se.its.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.javatuples.Pair;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the expression model and its utilities.
+ */
+public class ExpressionTest {
+
+  static Operation binary(String name, Expression left, Expression right) {
+    return new Operation(name, new ArrayList<>(Arrays.asList(left, right)), 1);
+  }
+
+  @Test
+  void testInterner_StructurallyIdentical_SameInstance() {
+    ExpressionInterner interner = new ExpressionInterner();
+    Expression first = binary("+", new Variable("a", 1), new Constant("1", 1));
+    Expression second = binary("+", new Variable("a", 1), new Constant("1", 1));
+
+    Expression interned = interner.intern(first);
+    assertSame(interned, interner.intern(second));
+    assertSame(interned, interner.intern(interned));
+    assertEquals(first, interned);
+    assertEquals(interner.structuralHash(first), interner.structuralHash(second));
+    assertTrue(interner.isInterned(interned));
+    assertEquals(3, interner.size());
+  }
+
+  @Test
+  void testInterner_SharedSubtrees_Success() {
+    ExpressionInterner interner = new ExpressionInterner();
+    Operation sum = (Operation) interner.intern(
+        binary("*", binary("+", new Variable("a", 1), new Variable("b", 1)),
+            binary("+", new Variable("a", 1), new Variable("b", 1))));
+    assertSame(sum.getArgs().get(0), sum.getArgs().get(1));
+  }
+
+  @Test
+  void testInterner_DifferentPrimeOrLine_DifferentInstance() {
+    ExpressionInterner interner = new ExpressionInterner();
+    Variable primed = new Variable("a", 1);
+    primed.setPrimed(true);
+    assertNotSame(interner.intern(new Variable("a", 1)), interner.intern(primed));
+    assertNotSame(interner.intern(new Constant("1", 1)), interner.intern(new Constant("1", 2)));
+
+    ExpressionInterner lineInsensitive = new ExpressionInterner(true);
+    assertSame(lineInsensitive.intern(new Constant("1", 1)),
+        lineInsensitive.intern(new Constant("1", 2)));
+  }
+
+  @Test
+  void testInterner_PrimeAndReplace_InternedUnchanged() {
+    ExpressionInterner interner = new ExpressionInterner();
+    Operation interned = (Operation) interner.intern(binary("+", new Variable("a", 1),
+        binary("*", new Variable("b", 1), new Constant("2", 1))));
+    Variable variable = (Variable) interned.getArgs().get(0);
+    int hash = variable.hashCode();
+
+    assertEquals("+(a', *(b', 2))", interned.prime().toString());
+    assertEquals("+(a', *(b, 2))", interned.prime(Set.of("a")).toString());
+    assertEquals("+(a, *(3, 2))", interned.replace("b", new Constant("3", 1)).toString());
+    assertEquals("a'", variable.prime().toString());
+    assertEquals("+(a, *(b, 2))", interned.toString());
+    assertSame(variable, interned.getArgs().get(0));
+    assertFalse(variable.isPrimed());
+    assertEquals(hash, variable.hashCode());
+    assertSame(variable, interner.intern(new Variable("a", 1)));
+    assertSame(interned, interner.intern(binary("+", new Variable("a", 1),
+        binary("*", new Variable("b", 1), new Constant("2", 1)))));
+    assertThrows(UnsupportedOperationException.class, () -> variable.setPrimed(true));
+  }
+
+  @Test
+  void testPrimeAndReplace_ImmutableArgumentLists_Success() {
+    Operation fixed = new Operation("+", List.of(new Variable("a", 1), new Variable("b", 1)), 1);
+    assertEquals("+(3, b)", fixed.replace("a", new Constant("3", 1)).toString(false));
+    assertEquals("+(3, b')", fixed.prime(Set.of("b")).toString(false));
+
+    Operation inner = new Operation("*", Arrays.asList(new Variable("c", 1),
+        new Constant("2", 1)), 1);
+    Operation nested = new Operation("-", List.of(inner, new Variable("c", 1)), 1);
+    assertEquals("-(*(c', 2), c')", nested.prime().toString(false));
+    assertEquals("-(*(c, 2), c)", nested.unprime().toString(false));
+  }
+
+  @Test
+  void testPrimeAndReplace_InPlace_Success() {
+    Operation expr = binary("+", new Variable("a", 1), binary("*", new Variable("b", 1),
+        new Constant("2", 1)));
+    List<Expression> args = expr.getArgs();
+
+    assertSame(expr, expr.prime(Set.of("b")));
+    assertSame(args, expr.getArgs());
+    assertEquals("+(a, *(b', 2))", expr.toString());
+    assertEquals("+(a', *(b', 2))", expr.prime().toString());
+    assertEquals("+(a, *(b, 2))", expr.unprime().toString());
+
+    Expression inner = args.get(1);
+    assertSame(expr, expr.replace("a", new Constant("3", 1)));
+    assertSame(args, expr.getArgs());
+    assertSame(inner, args.get(1));
+    assertEquals("+(3, *(b, 2))", expr.toString());
+
+    Operation interned = (Operation) new ExpressionInterner().intern(expr);
+    assertEquals("+(3, *(1, 2))", interned.replace("b", new Constant("1", 1)).toString());
+  }
+
+  @Test
+  void testWalker_DeepExpression_NoStackOverflow() {
+    Expression expr = new Variable("x", 1);
+    for (int i = 0; i < 100000; i++) {
+      expr = binary("+", expr, new Variable("y", 1));
+    }
+    expr.prime();
+    Expression copy = expr.deepCopy();
+    expr.replace("y", new Constant("1", 1));
+
+    String string = copy.toString();
+    assertTrue(string.startsWith("+(+(+("));
+    assertTrue(string.endsWith("y'), y'), y')"));
+    assertEquals(string.replace("y'", "1"), expr.toString());
+  }
+
+  @Test
+  void testWalker_FusedVisitorsWithSkip_Success() {
+    Expression expr = binary("+", binary("*", new Variable("a", 1), new Variable("b", 1)),
+        new Variable("c", 1));
+    StringBuilder all = new StringBuilder();
+    StringBuilder top = new StringBuilder();
+    expr.walk(new ExpressionVisitor() {
+      @Override
+      public boolean enter(Expression node) {
+        all.append('<').append(node instanceof Operation ? ((Operation) node).getName() : node);
+        return true;
+      }
+
+      @Override
+      public void leave(Expression node) {
+        all.append('>');
+      }
+    }, new ExpressionVisitor() {
+      @Override
+      public boolean enter(Expression node) {
+        top.append(node instanceof Operation ? ((Operation) node).getName() : node);
+        return node == expr;
+      }
+    });
+
+    assertEquals("<+<*<a><b>><c>>", all.toString());
+    assertEquals("+*c", top.toString());
+    assertEquals(Integer.valueOf(3), expr.fold(new ExpressionFolder<Integer>() {
+      @Override
+      public Integer leaf(Expression node) {
+        return 1;
+      }
+
+      @Override
+      public Integer node(Operation operation, List<Integer> args) {
+        return args.stream().mapToInt(Integer::intValue).sum();
+      }
+    }));
+  }
+
+  @Test
+  void testOpcode_ResolvedForAllOperations_AllModels() throws IOException {
+    for (Program program : FunctionTest.loadAllPrograms()) {
+      for (Function function : program.getFncs().values()) {
+        for (int loc : function.getLocations()) {
+          for (Pair<String, Expression> pair : function.getExprs(loc)) {
+            pair.getValue1().walk(new ExpressionVisitor() {
+              @Override
+              public boolean enter(Expression node) {
+                if (node instanceof Operation) {
+                  Opcode opcode = ((Operation) node).getOpcode();
+                  assertNotEquals(Opcode.UNKNOWN, opcode, node.toString());
+                  assertEquals(((Operation) node).getName(), opcode.getSymbol());
+                  assertTrue(opcode.acceptsArity(((Operation) node).getArgs().size()));
+                }
+                return true;
+              }
+            });
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testOpcodeTable_Dispatch_Success() {
+    OpcodeTable<String> table = new OpcodeTable<String>("other")
+        .putAll(Opcode.Category.COMPARISON, "compare").put(Opcode.ADD, "add");
+
+    assertEquals("add", table.get(binary("+", new Constant("1", 1), new Constant("2", 1))));
+    assertEquals("compare", table.get(binary("<=", new Constant("1", 1), new Constant("2", 1))));
+    assertEquals("other", table.get(binary("unknown", new Constant("1", 1), new Constant("2", 1))));
+    assertEquals(Opcode.AND, Opcode.ofPythonName("And"));
+    assertEquals(Opcode.SUB, Opcode.ofPythonName("USub"));
+    assertEquals(Opcode.UNKNOWN, Opcode.ofPythonName("Is"));
+  }
+
+  @Test
+  void testNormalizer_CommutativeAndAssociative_Equivalent() {
+    ExpressionNormalizer normalizer =
+        new ExpressionNormalizer(Map.of("a", "int", "b", "int", "c", "float"));
+    Variable a = new Variable("a", 1);
+    Variable b = new Variable("b", 1);
+    Variable c = new Variable("c", 1);
+    Expression left = binary("+", binary("+", a, b), c);
+    Expression right = binary("+", c.deepCopy(), binary("+", b.deepCopy(), a.deepCopy()));
+    String original = right.toString();
+
+    assertTrue(normalizer.equivalent(left, right));
+    assertEquals(normalizer.normalize(left), normalizer.normalize(right));
+    assertSame(normalizer.normalize(left), normalizer.normalize(left));
+    assertTrue(normalizer.normalize(left).isFrozen());
+    assertTrue(!left.isFrozen());
+    assertEquals(original, right.toString());
+    assertTrue(normalizer.equivalent(binary("&&", a, b), binary("&&", a, b)));
+    assertTrue(!normalizer.equivalent(binary("&&", a, b), binary("&&", b, a)));
+    assertTrue(!normalizer.equivalent(binary("-", a, b), binary("-", b, a)));
+  }
+
+  @Test
+  void testNormalizer_Concatenation_NotReordered() {
+    ExpressionNormalizer normalizer = new ExpressionNormalizer(Map.of("n", "int"));
+    Variable name = new Variable("name", 1);
+    Constant greeting = new Constant("\"Hi \"", 1);
+    assertTrue(!normalizer.equivalent(binary("+", greeting, name), binary("+", name, greeting)));
+    Variable first = new Variable("first", 1);
+    Variable second = new Variable("second", 1);
+    assertTrue(!normalizer.equivalent(binary("+", first, second), binary("+", second, first)));
+    assertEquals("+(+(name, 1), 2)", normalizer.normalize(binary("+",
+        binary("+", name, new Constant("1", 1)), new Constant("2", 1))).toString(false));
+
+    Variable n = new Variable("n", 1);
+    assertTrue(normalizer.equivalent(binary("+", n, binary("*", n, new Constant("2", 1))),
+        binary("+", binary("*", new Constant("2", 1), n), n)));
+    assertTrue(normalizer.equivalent(binary("*", greeting, n), binary("*", n, greeting)));
+  }
+
+  @Test
+  void testNormalizer_ConstantFolding_Success() {
+    ExpressionNormalizer normalizer = new ExpressionNormalizer(Map.of("x", "int"));
+    Variable x = new Variable("x", 1);
+
+    Expression product = binary("*", binary("+", new Constant("1", 1), new Constant("2", 1)), x);
+    assertEquals("*(x, 3)", normalizer.normalize(product).toString(false));
+    Expression sum = binary("+", binary("+", new Constant("2", 1), x), new Constant("-2", 1));
+    assertEquals("x", normalizer.normalize(sum).toString(false));
+    // True and False in Python, but 1 and 0 in C
+    assertEquals("<(1.5, 2)", normalizer.normalize(
+        binary("<", new Constant("1.5", 1), new Constant("2", 1))).toString(false));
+    assertEquals("&&(1, 0)", normalizer.normalize(
+        binary("&&", new Constant("1", 1), new Constant("0", 1))).toString(false));
+    // integer division differs between C and Python, overflow and strings are kept
+    assertEquals("/(7, 2)", normalizer.normalize(
+        binary("/", new Constant("7", 1), new Constant("2", 1))).toString(false));
+    assertEquals("+(2147483647, 1)", normalizer.normalize(
+        binary("+", new Constant("2147483647", 1), new Constant("1", 1))).toString(false));
+    assertTrue(normalizer.normalize(binary("+", new Constant("'a'", 1), new Constant("1", 1)))
+        instanceof Operation);
+  }
+
+  @Test
+  void testNormalizer_Idempotent_AllModels() throws IOException {
+    ExpressionNormalizer normalizer = new ExpressionNormalizer();
+    for (Program program : FunctionTest.loadAllPrograms()) {
+      for (Function function : program.getFncs().values()) {
+        for (int loc : function.getLocations()) {
+          for (Pair<String, Expression> pair : function.getExprs(loc)) {
+            Expression normalized = normalizer.normalize(pair.getValue1());
+            assertEquals(normalized, new ExpressionNormalizer().normalize(normalized));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testWriteTo_WithOriginal_MatchesToString() throws IOException {
+    Variable primed = new Variable("x", 2, List.of("x", 1));
+    primed.setPrimed(true);
+    Expression expr = new Operation("+", new ArrayList<>(Arrays.asList(primed,
+        new Constant("1", 3, false, List.of("c")))), 4, List.of("y"));
+
+    for (boolean withOriginal : new boolean[] {true, false}) {
+      StringWriter out = new StringWriter();
+      expr.writeTo(out, withOriginal);
+      assertEquals(expr.toString(withOriginal), out.toString());
+    }
+    assertEquals("+(x'{2, [x, 1]}, 1{3, [c]}){4, [y]}", expr.toString());
+    assertEquals("+(x'{2, [x, 1]}, 1)", expr.toString(false));
+
+    for (Program program : FunctionTest.loadAllPrograms()) {
+      StringWriter out = new StringWriter();
+      program.writeTo(out, true);
+      assertEquals(program.toString(), out.toString());
+    }
+  }
+
+  @Test
+  void testConstant_TypedValues_Success() {
+    assertEquals(Constant.Kind.INTEGER, new Constant("-42", 1).getKind());
+    assertEquals(-42, new Constant("-42", 1).getLongValue());
+    assertEquals(1.5, new Constant("1.5", 1).getDoubleValue());
+    assertEquals(1, new Constant("1.5", 1).getLongValue());
+    assertEquals(Constant.Kind.FLOATING, new Constant("99999999999999999999", 1).getKind());
+    assertEquals('\n', new Constant("'\\n'", 1).getCharValue());
+    assertEquals('a', new Constant("'a'", 1).getLongValue());
+    assertEquals("%d\\n", new Constant("\"%d\\n\"", 1).getStringValue());
+    assertEquals(Constant.Kind.OTHER, new Constant("EOF", 1).getKind());
+    assertThrows(RuntimeException.class, () -> new Constant("\"1\"", 1).getLongValue());
+  }
+
+  @Test
+  void testConstant_CIntegerSyntax_Success() {
+    assertEquals(8, new Constant("010", 1).getLongValue());
+    assertEquals(0, new Constant("0", 1).getLongValue());
+    assertEquals(31, new Constant("0x1F", 1).getLongValue());
+    assertEquals(-31, new Constant("-0X1f", 1).getLongValue());
+    assertEquals(5, new Constant("0b101", 1).getLongValue());
+    assertEquals(15, new Constant("0o17", 1).getLongValue());
+    for (String literal : List.of("10L", "10u", "10UL", "10ull", "10LLU", "012l")) {
+      assertEquals(Constant.Kind.INTEGER, new Constant(literal, 1).getKind(), literal);
+      assertEquals(10, new Constant(literal, 1).getLongValue(), literal);
+    }
+    assertEquals(-1, new Constant("0xFFFFFFFFFFFFFFFF", 1).getLongValue());
+    assertEquals(Constant.Kind.FLOATING, new Constant("0xFFFFFFFFFFFFFFFF", 1).getKind());
+    assertEquals(1.5, new Constant("1.5L", 1).getDoubleValue());
+    assertEquals(Constant.Kind.OTHER, new Constant("0x", 1).getKind());
+    assertEquals(Constant.Kind.OTHER, new Constant("10UU", 1).getKind());
+  }
+
+  @Test
+  void testConstant_CEscapes_Success() {
+    assertEquals('A', new Constant("'\\x41'", 1).getCharValue());
+    assertEquals('A', new Constant("'\\101'", 1).getCharValue());
+    assertEquals(0, new Constant("'\\0'", 1).getLongValue());
+    assertEquals(11, new Constant("'\\v'", 1).getLongValue());
+    assertEquals(7, new Constant("'\\a'", 1).getLongValue());
+    assertEquals('?', new Constant("'\\?'", 1).getCharValue());
+    assertEquals('\'', new Constant("'\\''", 1).getCharValue());
+    assertEquals('\u00e9', new Constant("'\\u00e9'", 1).getCharValue());
+    assertEquals(0x41B, new Constant("'\\x41B'", 1).getLongValue());
+    assertEquals(Constant.Kind.STRING, new Constant("'\\x41g'", 1).getKind());
+    assertEquals(Constant.Kind.STRING, new Constant("'abc'", 1).getKind());
+    assertEquals("abc", new Constant("'abc'", 1).getStringValue());
+    assertEquals(Constant.Kind.STRING, new Constant("'\\q'", 1).getKind());
+  }
+}
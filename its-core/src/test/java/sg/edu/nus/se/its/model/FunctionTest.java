@@ -0,0 +1,328 @@
+package sg.edu.nus.se.its.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.javatuples.Pair;
+import org.junit.jupiter.api.Test;
+import sg.edu.nus.se.its.util.Constants;
+import sg.edu.nus.se.its.util.TestUtils;
+
+/**
+ * Tests for the cached structures of the Function model.
+ */
+public class FunctionTest {
+
+  static List<Program> loadAllPrograms() throws IOException {
+    try (Stream<Path> files = Files.walk(Paths.get("src/test/resources/model"))) {
+      return files.filter(path -> path.toString().endsWith(".json")).sorted()
+          .map(path -> TestUtils.loadProgramByFilePath(path.toString()))
+          .collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  void testCfg_MatchesTransitionTables_AllModels() throws IOException {
+    for (Program program : loadAllPrograms()) {
+      for (Function function : program.getFncs().values()) {
+        HashMap<Integer, HashMap<Boolean, Integer>> loctrans = function.getLoctrans();
+        ControlFlowGraph cfg = function.getCfg();
+        assertEquals(loctrans.size(), cfg.size());
+        for (int loc : loctrans.keySet()) {
+          int index = cfg.indexOf(loc);
+          assertEquals(loc, cfg.locationAt(index));
+          assertEquals(function.getLocdescAt(loc), cfg.descriptionAt(index));
+          for (boolean cond : new boolean[] {true, false}) {
+            assertEquals(loctrans.get(loc).get(cond), function.getTrans(loc, cond));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testCfg_IncrementalUpdates_Success() {
+    Function function = new Function(Constants.DEFAULT_ENTRY_FUNCTION_NAME, new ArrayList<>(),
+        "int");
+    int first = function.addLocation(0, "first");
+    int second = function.addLocation(0, "second");
+    ControlFlowGraph cfg = function.getCfg();
+
+    int third = function.addLocation(0, "third");
+    function.addLocationTrans(first, second, third);
+    function.addLocationTrans(second, third, null);
+
+    assertEquals(3, cfg.size());
+    assertEquals(2, function.getTransCount(first));
+    assertEquals(1, function.getTransCount(second));
+    assertEquals(third, function.getTrans(second, true));
+    assertNull(function.getTrans(second, false));
+    assertArrayEquals(new int[] {cfg.indexOf(first), cfg.indexOf(second)},
+        sorted(cfg.predecessors(cfg.indexOf(third))));
+
+    function.removeTransitionBranch(first, false);
+    assertEquals(1, function.getTransCount(first));
+    assertArrayEquals(new int[] {cfg.indexOf(second)}, cfg.predecessors(cfg.indexOf(third)));
+
+    function.removeLocation(first);
+    assertFalse(cfg.contains(first));
+    assertEquals(2, cfg.size());
+    assertEquals("third", cfg.descriptionAt(cfg.indexOf(third)));
+    assertNull(function.getTrans(first, true));
+  }
+
+  @Test
+  void testTables_ModifiedThroughGetters_CachesDropped() {
+    Function function = new Function(Constants.DEFAULT_ENTRY_FUNCTION_NAME, new ArrayList<>(),
+        "int");
+    int first = function.addLocation(0, "first");
+    int second = function.addLocation(0, "second");
+    ControlFlowGraph cfg = function.getCfg();
+    DefUseIndex defUse = function.getDefUseIndex();
+    long fingerprint = function.getFingerprint();
+
+    function.getLoctrans().get(first).put(true, second);
+    assertEquals(second, function.getTrans(first, true));
+    assertNotSame(cfg, function.getCfg());
+    function.getExprs(first).add(new Pair<>("x", new Constant("1", 0)));
+    assertEquals(Set.of(first), function.getDefUseIndex().getDefinitions("x"));
+    assertNotSame(defUse, function.getDefUseIndex());
+    assertNotEquals(fingerprint, function.getFingerprint());
+
+    function.getLocexprs().put(second, new ArrayList<>());
+    function.addExpr(second, "y", new Variable("x"), 0);
+    assertEquals(Set.of(second), function.getDefUseIndex().getUses("x"));
+    assertEquals(1, function.getExprs(second).size());
+
+    function.freeze();
+    assertThrows(UnsupportedOperationException.class,
+        () -> function.getLoctrans().get(first).put(false, first));
+    assertThrows(UnsupportedOperationException.class, () -> function.getExprs(first).clear());
+    assertThrows(UnsupportedOperationException.class, () -> function.getTypes().put("x", "int"));
+    assertThrows(UnsupportedOperationException.class, () -> function.getParams().clear());
+    assertThrows(UnsupportedOperationException.class,
+        () -> function.getLocations().remove(first));
+    assertEquals(2, function.getLocations().size());
+  }
+
+  @Test
+  void testCfg_SparseAndNegativeLocations_Success() {
+    Function function = new Function(Constants.DEFAULT_ENTRY_FUNCTION_NAME, new ArrayList<>(),
+        "int");
+    function.addLocation(-3, "negative");
+    function.addLocation(1_000_000, "sparse");
+    function.addLocation(-1, "minus one");
+    function.addLocationTrans(-3, -1, 1_000_000);
+    function.addLocationTrans(-1, 1_000_000, null);
+
+    assertEquals(-1, function.getTrans(-3, true));
+    assertEquals(1_000_000, function.getTrans(-3, false));
+    assertNull(function.getTrans(-1, false));
+    assertEquals(1, function.getTransCount(-1));
+    ControlFlowGraph cfg = function.getCfg();
+    assertEquals("minus one", cfg.descriptionAt(cfg.indexOf(-1)));
+    assertEquals(2, cfg.predecessors(cfg.indexOf(1_000_000)).length);
+  }
+
+  @Test
+  void testCfg_ExtremeLocationIds_Success() {
+    ControlFlowGraph cfg = new ControlFlowGraph(4);
+    int[] locations = {Integer.MAX_VALUE, 7, Integer.MIN_VALUE, -1, 8};
+    for (int loc : locations) {
+      cfg.addLocation(loc, "l" + loc);
+    }
+    cfg.setTransitions(7, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    for (int loc : locations) {
+      assertEquals(loc, cfg.locationAt(cfg.indexOf(loc)));
+    }
+    assertFalse(cfg.contains(0));
+    assertFalse(cfg.hasTransition(cfg.indexOf(8), true));
+    assertEquals(Integer.MIN_VALUE, cfg.successorLocation(cfg.indexOf(7), true));
+
+    cfg.removeLocation(Integer.MIN_VALUE);
+    assertFalse(cfg.contains(Integer.MIN_VALUE));
+    assertEquals(4, cfg.size());
+    assertEquals("l-1", cfg.descriptionAt(cfg.indexOf(-1)));
+    assertEquals(Integer.MAX_VALUE, cfg.successorLocation(cfg.indexOf(7), false));
+  }
+
+  @Test
+  void testDefUse_MatchesExpressions_AllModels() throws IOException {
+    for (Program program : loadAllPrograms()) {
+      for (Function function : program.getFncs().values()) {
+        DefUseIndex index = function.getDefUseIndex();
+        for (int loc : function.getLocations()) {
+          Set<String> writes = new HashSet<>();
+          for (Pair<String, Expression> pair : function.getExprs(loc)) {
+            writes.add(pair.getValue0());
+            assertTrue(index.getDefinitions(pair.getValue0()).contains(loc));
+          }
+          assertEquals(writes, index.getWrites(loc));
+          for (String var : index.getReads(loc)) {
+            assertTrue(index.getUses(var).contains(loc));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testDefUse_IncrementalUpdates_Success() {
+    Function function = new Function(Constants.DEFAULT_ENTRY_FUNCTION_NAME, new ArrayList<>(),
+        "int");
+    int first = function.addLocation(0, "first");
+    int second = function.addLocation(0, "second");
+    DefUseIndex index = function.getDefUseIndex();
+
+    function.addExpr(first, "x", new Constant("1", 1), 0);
+    function.addExpr(second, "y", ExpressionTest.binary("+", new Variable("x", 2),
+        new Variable("y", 2)), 0);
+    assertEquals(Set.of(first), index.getDefinitions("x"));
+    assertEquals(Set.of(second), index.getUses("x"));
+    assertEquals(Set.of("x", "y"), index.getReads(second));
+
+    ArrayList<Pair<String, Expression>> exprs = new ArrayList<>();
+    exprs.add(new Pair<>("x", new Variable("z", 3)));
+    function.replaceLocExpressions(second, exprs);
+    assertEquals(Set.of(first, second), index.getDefinitions("x"));
+    assertTrue(index.getUses("x").isEmpty());
+    assertTrue(index.getDefinitions("y").isEmpty());
+
+    function.removeLocation(first);
+    assertEquals(Set.of(second), index.getDefinitions("x"));
+    assertEquals(Set.of("x", "z"), index.getVariables());
+  }
+
+  @Test
+  void testCfgAnalysis_NestedLoops_Success() {
+    // 1 -> 2; while (2) { 3; while (4) { 5 } 6 } 7
+    Function function = new Function(Constants.DEFAULT_ENTRY_FUNCTION_NAME, new ArrayList<>(),
+        "int");
+    for (int i = 0; i < 7; i++) {
+      function.addLocation(0, "block");
+    }
+    function.addLocationTrans(1, 2, null);
+    function.addLocationTrans(2, 3, 7);
+    function.addLocationTrans(3, 4, null);
+    function.addLocationTrans(4, 5, 6);
+    function.addLocationTrans(5, 4, null);
+    function.addLocationTrans(6, 2, null);
+    CfgAnalysis analysis = function.getCfgAnalysis();
+    ControlFlowGraph cfg = analysis.getCfg();
+
+    assertEquals(CfgAnalysis.NONE, analysis.immediateDominator(cfg.indexOf(1)));
+    assertEquals(cfg.indexOf(2), analysis.immediateDominator(cfg.indexOf(7)));
+    assertEquals(cfg.indexOf(4), analysis.immediateDominator(cfg.indexOf(6)));
+    assertTrue(analysis.dominates(cfg.indexOf(1), cfg.indexOf(5)));
+    assertFalse(analysis.dominates(cfg.indexOf(5), cfg.indexOf(6)));
+    assertEquals(cfg.indexOf(7), analysis.immediatePostDominator(cfg.indexOf(2)));
+    assertEquals(cfg.indexOf(6), analysis.immediatePostDominator(cfg.indexOf(4)));
+    assertEquals(CfgAnalysis.NONE, analysis.immediatePostDominator(cfg.indexOf(7)));
+    assertTrue(analysis.postDominates(cfg.indexOf(2), cfg.indexOf(5)));
+
+    assertArrayEquals(sorted(new int[] {cfg.indexOf(2), cfg.indexOf(4)}),
+        analysis.getLoopHeaders());
+    assertArrayEquals(sorted(new int[] {cfg.indexOf(4), cfg.indexOf(5)}),
+        analysis.getLoopBody(cfg.indexOf(4)));
+    assertEquals(5, analysis.getLoopBody(cfg.indexOf(2)).length);
+    assertEquals(2, analysis.nestingDepth(cfg.indexOf(5)));
+    assertEquals(1, analysis.nestingDepth(cfg.indexOf(6)));
+    assertEquals(0, analysis.nestingDepth(cfg.indexOf(7)));
+    assertEquals(cfg.indexOf(4), analysis.innermostLoopHeader(cfg.indexOf(5)));
+    assertEquals(cfg.indexOf(2), analysis.innermostLoopHeader(cfg.indexOf(3)));
+
+    function.addLocationTrans(6, 7, null);
+    assertNotSame(analysis, function.getCfgAnalysis());
+    assertFalse(function.getCfgAnalysis().isLoopHeader(cfg.indexOf(2)));
+  }
+
+  @Test
+  void testCfgAnalysis_EntryDominatesReachable_AllModels() throws IOException {
+    for (Program program : loadAllPrograms()) {
+      for (Function function : program.getFncs().values()) {
+        CfgAnalysis analysis = function.getCfgAnalysis();
+        int entry = analysis.getCfg().indexOf(function.getInitloc());
+        for (int index = 0; index < analysis.getCfg().size(); index++) {
+          if (analysis.isReachable(index)) {
+            assertTrue(analysis.dominates(entry, index));
+          }
+          int header = analysis.innermostLoopHeader(index);
+          if (header != CfgAnalysis.NONE) {
+            assertTrue(analysis.dominates(header, index));
+            assertTrue(analysis.nestingDepth(index) > 0);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testBuilder_SameAsIncrementalConstruction_Success() {
+    Function expected = new Function("f", new ArrayList<>(), "int");
+    int first = expected.addLocation(0, "first");
+    int second = expected.addLocation(0, "second");
+    expected.addExpr(first, "x", new Constant("1", 1), 0);
+    expected.addLocationTrans(first, second, null);
+    expected.addType("x", "int");
+
+    Function.Builder builder = new Function.Builder("f", new ArrayList<>(), "int", 2);
+    assertEquals(first, builder.addLocation("first"));
+    assertEquals(second, builder.addLocation("second"));
+    Function actual = builder.addExpr(first, "x", new Constant("1", 1))
+        .setTransitions(first, second, null).addType("x", "int").build();
+
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(expected.getTypes(), actual.getTypes());
+    assertEquals(expected.getInitloc(), actual.getInitloc());
+    assertEquals(second + 1, actual.addLocation(0, "third"));
+    assertThrows(RuntimeException.class, () -> builder.addLocation("fourth"));
+  }
+
+  @Test
+  void testBuilder_UnknownTransitionTarget_Exception() {
+    Function.Builder builder = new Function.Builder("f", new ArrayList<>(), "int");
+    int loc = builder.addLocation("first");
+    builder.setTransitions(loc, loc + 1, null);
+    assertThrows(RuntimeException.class, builder::build);
+  }
+
+  @Test
+  void testAddLocation_RemovedMaximum_Renumbered() {
+    Function function = new Function("f", new ArrayList<>(), "int");
+    for (int i = 0; i < 10000; i++) {
+      function.addLocation(0, "block");
+    }
+    assertEquals(10001, function.addLocation(0, "block"));
+    function.removeLocation(10001);
+    function.removeLocation(10000);
+    assertEquals(10000, function.addLocation(0, "block"));
+    assertEquals(20000, function.addLocation(20000, "block"));
+    assertEquals(20001, function.addLocation(0, "block"));
+  }
+
+  private static int[] sorted(int[] values) {
+    int[] copy = values.clone();
+    Arrays.sort(copy);
+    return copy;
+  }
+}
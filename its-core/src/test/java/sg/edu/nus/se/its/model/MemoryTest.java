@@ -0,0 +1,99 @@
+package sg.edu.nus.se.its.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import sg.edu.nus.se.its.util.Constants;
+import sg.edu.nus.se.its.util.TestUtils;
+
+/**
+ * Tests for the memory implementations.
+ */
+public class MemoryTest {
+
+  @Test
+  void testSymbolTable_ContainsFunctionVariables_Success() {
+    Program program = TestUtils.loadProgramByName("recur.c");
+    SymbolTable symbols = program.getfnc("fact").getSymbolTable();
+
+    for (String name : new String[] {Constants.VAR_IN, Constants.VAR_OUT, Constants.VAR_RET,
+        Constants.VAR_COND, "x"}) {
+      int slot = symbols.slotOf(name);
+      assertNotEquals(SymbolTable.NONE, slot);
+      assertEquals(name, symbols.nameAt(slot));
+    }
+    assertEquals(SymbolTable.NONE, symbols.slotOf("unknown"));
+  }
+
+  @Test
+  void testSlotMemory_BehavesLikeMemory_Success() {
+    SymbolTable symbols = new SymbolTable();
+    Memory expected = new Memory();
+    SlotMemory actual = new SlotMemory(symbols);
+
+    for (Memory memory : new Memory[] {expected, actual}) {
+      memory.put("a", 1);
+      memory.put(Constants.VAR_OUT, "");
+      memory.put("b", null);
+      memory.put("a", 2);
+      memory.putIfAbsent("c", 3.0);
+      memory.merge("c", 1.0, (x, y) -> (Double) x + (Double) y);
+      memory.remove(Constants.VAR_OUT);
+    }
+
+    assertEquals(expected, actual);
+    assertEquals(actual, expected);
+    assertEquals(expected.hashCode(), actual.hashCode());
+    assertEquals(expected.keySet(), actual.keySet());
+    assertEquals(3, actual.size());
+    assertTrue(actual.containsKey("b"));
+    assertNull(actual.getValueForVariable("b"));
+    assertEquals(4.0, actual.getValueForVariable("c"));
+    assertEquals(2, actual.getValue(symbols.slotOf("a")));
+    assertFalse(actual.containsKey(Constants.VAR_OUT));
+  }
+
+  @Test
+  void testSlotMemory_CopyIsIndependent_Success() {
+    SlotMemory memory = new SlotMemory(new SymbolTable());
+    memory.put("a", 1);
+    Memory copy = memory.copy();
+    memory.put("a", 2);
+    memory.put("b", 3);
+
+    assertEquals(1, copy.get("a"));
+    assertFalse(copy.containsKey("b"));
+    assertEquals(2, memory.get("a"));
+  }
+
+  @Test
+  void testSlotMemory_PrimitiveLanes_Success() {
+    SymbolTable symbols = new SymbolTable();
+    int i = symbols.slotOf("i", true);
+    int d = symbols.slotOf("d", true);
+    SlotMemory memory = new SlotMemory(symbols);
+
+    memory.setInt(i, 41);
+    memory.setDouble(d, 2.5);
+    assertEquals(SlotMemory.ValueType.INT, memory.getValueType(i));
+    assertEquals(41, memory.getLong(i));
+    assertEquals(2.5, memory.getDouble(d));
+    assertEquals(2, memory.getLong(d));
+    assertEquals(41, memory.get("i"));
+    assertEquals(2.5, memory.get("d"));
+    assertEquals(2, memory.size());
+
+    Memory copy = memory.copy();
+    memory.put("i", "text");
+    assertEquals(SlotMemory.ValueType.OBJECT, memory.getValueType(i));
+    assertEquals("text", memory.get("i"));
+    assertEquals(41, copy.get("i"));
+
+    memory.setLong(i, 5L);
+    assertEquals(5L, memory.put("i", 1));
+  }
+}
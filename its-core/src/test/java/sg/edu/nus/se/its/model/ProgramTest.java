@@ -0,0 +1,428 @@
+package sg.edu.nus.se.its.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.javatuples.Pair;
+import org.javatuples.Tuple;
+import org.junit.jupiter.api.Test;
+import sg.edu.nus.se.its.util.Constants;
+import sg.edu.nus.se.its.util.JsonSerializerWithInheritance;
+import sg.edu.nus.se.its.util.ModelTypeAdapterFactory;
+import sg.edu.nus.se.its.util.TestUtils;
+
+/**
+ * Tests for copying and deriving Program objects.
+ */
+public class ProgramTest {
+
+  final String main = Constants.DEFAULT_ENTRY_FUNCTION_NAME;
+
+  @Test
+  void testDeepCopy_EqualToOriginal_AllModels() throws IOException {
+    for (Program program : FunctionTest.loadAllPrograms()) {
+      Program copy = program.deepCopy();
+      assertEquals(program.toString(), copy.toString());
+      assertEquals(new ArrayList<>(program.getFncs().keySet()),
+          new ArrayList<>(copy.getFncs().keySet()));
+      for (Function function : program.getFncs().values()) {
+        Function copiedFunction = copy.getfnc(function.getName());
+        assertNotSame(function, copiedFunction);
+        assertEquals(function.getInitloc(), copiedFunction.getInitloc());
+        assertEquals(function.getEndloc(), copiedFunction.getEndloc());
+        assertEquals(function.getParams(), copiedFunction.getParams());
+        assertEquals(function.getTypes(), copiedFunction.getTypes());
+        assertEquals(function.getLoctrans(), copiedFunction.getLoctrans());
+        assertEquals(function.getLocdescs(), copiedFunction.getLocdescs());
+      }
+    }
+  }
+
+  @Test
+  void testBinaryCodec_RoundTrip_AllModels() throws IOException {
+    Gson gson = jsonWithoutTuples();
+    for (Program program : FunctionTest.loadAllPrograms()) {
+      byte[] encoded = ProgramBinaryCodec.encode(program);
+      Program decoded = ProgramBinaryCodec.decode(encoded);
+      assertEquals(gson.toJson(program), gson.toJson(decoded));
+      assertEquals(program.toString(), decoded.toString());
+      assertTrue(encoded.length < gson.toJson(program).length());
+    }
+    assertThrows(IOException.class, () -> ProgramBinaryCodec.decode(new byte[] {'I', 'T'}));
+    byte[] hugeCount = {'I', 'T', 'S', 'B', 1, -1, -1, -1, -1, 7};
+    assertThrows(IOException.class, () -> ProgramBinaryCodec.decode(hugeCount));
+  }
+
+  @Test
+  void testBinaryCodec_DecodeLazily_Success() throws IOException {
+    Program program = TestUtils.loadProgramByName("c9.c");
+    byte[] encoded = ProgramBinaryCodec.encode(program);
+
+    Program lazy = ProgramBinaryCodec.decodeLazily(encoded);
+    LazyFunctionMap fncs = (LazyFunctionMap) lazy.getFncs();
+    assertEquals(program.getFncs().keySet(), fncs.keySet());
+    assertFalse(fncs.isDecoded(main));
+    assertFalse(fncs.isDecoded("check_prime"));
+
+    Program variant = lazy.derive();
+    assertEquals(program.getfnc(main).toString(), lazy.getfnc(main).toString());
+    assertTrue(fncs.isDecoded(main));
+    assertFalse(fncs.isDecoded("check_prime"));
+    Function decodedByVariant = variant.getFncs().get("check_prime");
+    assertFalse(fncs.isDecoded("check_prime"));
+    assertNotSame(fncs.get("check_prime"), decodedByVariant);
+
+    assertEquals(program.toString(), ProgramBinaryCodec.decodeLazily(encoded).toString());
+    assertEquals(program.toString(), variant.toString());
+
+    LazyFunctionMap replaced = (LazyFunctionMap) ProgramBinaryCodec.decodeLazily(encoded).getFncs();
+    for (Map.Entry<String, Function> entry : replaced.entrySet()) {
+      if (entry.getKey().equals("check_prime")) {
+        assertEquals(program.getfnc("check_prime").toString(), entry.setValue(null).toString());
+      }
+    }
+    Function decoded = replaced.get(main);
+    assertSame(decoded, replaced.put(main, null));
+    assertNull(replaced.put(main, decoded));
+    LazyFunctionMap removed = (LazyFunctionMap) ProgramBinaryCodec.decodeLazily(encoded).getFncs();
+    assertEquals(program.getfnc(main).toString(), removed.remove(main).toString());
+    assertTrue(removed.keySet().remove("check_prime"));
+    assertFalse(removed.containsKey("check_prime"));
+  }
+
+  @Test
+  void testJsonReader_EqualToGson_AllModels() throws IOException {
+    Gson gson = jsonWithoutTuples();
+    Gson loader = new GsonBuilder().registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+        .create();
+    ProgramJsonReader reader = new ProgramJsonReader();
+    try (Stream<Path> files = Files.walk(Paths.get("src/test/resources/model"))) {
+      for (Path path : files.filter(p -> p.toString().endsWith(".json")).sorted()
+          .collect(Collectors.toList())) {
+        Program expected;
+        try (Reader json = Files.newBufferedReader(path)) {
+          expected = loader.fromJson(json, Program.class);
+        }
+        Program program = reader.read(path);
+        assertEquals(gson.toJson(expected), gson.toJson(program));
+        assertEquals(expected.toString(), program.toString());
+      }
+    }
+
+    Path path = Paths.get("src/test/resources/model/c1.c.json");
+    Pair<String, Expression> first = reader.read(path).getfnc(main).getLocexprs().get(1).get(0);
+    Pair<String, Expression> second = reader.read(path).getfnc(main).getLocexprs().get(1).get(0);
+    assertNotSame(first, second);
+    assertSame(first.getValue0(), second.getValue0());
+  }
+
+  /**
+   * Returns a Gson that serializes tuples without their derived fields, which are not restored
+   * when loading from JSON.
+   */
+  private static Gson jsonWithoutTuples() {
+    return new GsonBuilder()
+        .registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>())
+        .setExclusionStrategies(new ExclusionStrategy() {
+          @Override
+          public boolean shouldSkipField(FieldAttributes field) {
+            return field.getDeclaringClass() == Tuple.class;
+          }
+
+          @Override
+          public boolean shouldSkipClass(Class<?> type) {
+            return false;
+          }
+        })
+        .create();
+  }
+
+  @Test
+  void testDeepCopy_DoesNotModifyOriginalProgram_Success() {
+    Program program = TestUtils.loadProgramByName("c6.c");
+    String original = program.toString();
+
+    Program copy = program.deepCopy();
+    Function function = copy.getfnc(main);
+    int loc = function.addLocation(0, "dummy block");
+    function.addLocationTrans(2, loc, loc);
+    for (Pair<String, Expression> pair : function.getExprs(1)) {
+      pair.getValue1().prime();
+    }
+
+    assertNull(program.getfnc(main).getLocexprs().get(loc));
+    assertEquals(original, program.toString());
+    assertFalse(original.equals(copy.toString()));
+  }
+
+  @Test
+  void testDeepCopy_KeepsOriginalField_Success() {
+    Program program = TestUtils.loadProgramByName("i5.c");
+    Program copy = program.deepCopy();
+    List<Pair<String, Expression>> exprs = program.getfnc(main).getExprs(1);
+    List<Pair<String, Expression>> copiedExprs = copy.getfnc(main).getExprs(1);
+    for (int i = 0; i < exprs.size(); i++) {
+      assertEquals(exprs.get(i).getValue1().toString(true),
+          copiedExprs.get(i).getValue1().toString(true));
+    }
+  }
+
+  @Test
+  void testDerive_SharesUntouchedFunctions_Success() {
+    Program program = TestUtils.loadProgramByName("recur.c");
+    Program variant = program.derive();
+
+    Function modified = variant.getFncs().get("fact");
+    assertNotSame(program.getFncs().get("fact"), modified);
+    assertSame(modified, variant.getfnc("fact"));
+    assertSame(modified.getExprs(modified.getInitloc()).get(0).getValue1(),
+        program.getFncs().get("fact").getExprs(modified.getInitloc()).get(0).getValue1());
+  }
+
+  @Test
+  void testDerive_DoesNotModifyParentOrSiblings_Success() {
+    Program program = TestUtils.loadProgramByName("c6.c");
+    String original = program.toString();
+
+    Program first = program.derive();
+    Program second = program.derive();
+    Function function = first.getfnc(main);
+    int loc = function.addLocation(0, "dummy block");
+    function.addLocationTrans(2, loc, loc);
+    ArrayList<Pair<String, Expression>> exprs = new ArrayList<>();
+    exprs.add(new Pair<>("x", new Constant("1", 0)));
+    function.replaceLocExpressions(1, exprs);
+
+    assertEquals(original, program.toString());
+    assertEquals(original, second.toString());
+    assertNull(program.getfnc(main).getLocexprs().get(loc));
+    assertNull(second.getfnc(main).getLocexprs().get(loc));
+
+    Program third = first.derive();
+    first.getfnc(main).addLocation(0, "another block");
+    assertEquals(loc, third.getfnc(main).getLocations().stream().max(Integer::compare).get());
+  }
+
+  @Test
+  void testDerive_ReferenceTakenBeforeDerive_Success() {
+    Program program = TestUtils.loadProgramByName("c6.c");
+    String original = program.toString();
+    Function before = program.getfnc(main);
+    Program variant = program.derive();
+
+    int loc = before.addLocation(0, "dummy");
+    before.replaceLocExpressions(1, new ArrayList<>());
+    new ExpressionInterner().intern(program);
+    assertSame(before, program.getfnc(main));
+    assertEquals(original, variant.toString());
+    assertNull(variant.getfnc(main).getLocexprs().get(loc));
+
+    Program second = program.derive();
+    second.getFncs().get(main).addLocation(0, "another dummy");
+    assertEquals(before.toString(), program.getfnc(main).toString());
+    assertEquals(original, variant.toString());
+  }
+
+  @Test
+  void testFingerprint_InsensitiveToRenumberingAndPriming_AllModels() throws IOException {
+    for (Program program : FunctionTest.loadAllPrograms()) {
+      long fingerprint = program.getFingerprint();
+      Program copy = program.deepCopy();
+      assertEquals(fingerprint, copy.getFingerprint());
+
+      for (Function function : program.getFncs().values()) {
+        Function renumbered = renumber(function);
+        assertEquals(function.getFingerprint(), renumbered.getFingerprint());
+        copy.addfnc(renumbered);
+        for (int loc : function.getLocations()) {
+          for (Pair<String, Expression> pair : function.getExprs(loc)) {
+            pair.getValue1().prime();
+          }
+        }
+        function.invalidateCaches();
+      }
+      assertEquals(fingerprint, copy.getFingerprint());
+      assertEquals(fingerprint, program.getFingerprint());
+    }
+  }
+
+  @Test
+  void testFingerprint_SensitiveToStructure_Success() {
+    Program program = TestUtils.loadProgramByName("c6.c");
+    long fingerprint = program.getFingerprint();
+    Function function = program.getfnc(main);
+    long locationFingerprint = function.getLocationFingerprint(1);
+
+    ArrayList<Pair<String, Expression>> exprs = new ArrayList<>(function.getExprs(1));
+    exprs.add(new Pair<>("x", new Constant("1", 0)));
+    function.replaceLocExpressions(1, exprs);
+    assertNotEquals(locationFingerprint, function.getLocationFingerprint(1));
+    assertNotEquals(fingerprint, program.getFingerprint());
+
+    exprs.remove(exprs.size() - 1);
+    function.replaceLocExpressions(1, exprs);
+    assertEquals(fingerprint, program.getFingerprint());
+
+    Integer target = function.getTrans(1, true);
+    function.addLocationTrans(1, function.getTrans(1, false), target);
+    assertNotEquals(fingerprint, program.getFingerprint());
+  }
+
+  @Test
+  void testFreeze_RejectsMutation_Success() {
+    Program program = TestUtils.loadProgramByName("c6.c");
+    long fingerprint = program.getFingerprint();
+    String original = program.toString();
+    program.freeze();
+    Function function = program.getfnc(main);
+
+    assertTrue(function.isFrozen());
+    assertThrows(UnsupportedOperationException.class, () -> function.addLocation(0, "block"));
+    assertThrows(UnsupportedOperationException.class, () -> function.removeLocation(1));
+    assertThrows(UnsupportedOperationException.class, () -> function.getLocexprs().remove(1));
+    assertThrows(UnsupportedOperationException.class,
+        () -> function.getExprs(1).add(new Pair<>("x", new Constant("1", 0))));
+    assertThrows(UnsupportedOperationException.class,
+        () -> function.getLoctrans().get(1).put(true, 1));
+    assertThrows(UnsupportedOperationException.class,
+        () -> function.getLocexprs().entrySet().iterator().next().setValue(null));
+    assertThrows(UnsupportedOperationException.class, () -> program.addfnc(function));
+    assertThrows(UnsupportedOperationException.class, () -> program.getFncs().clear());
+
+    Expression expr = function.getLocexprs().values().stream().flatMap(List::stream)
+        .map(Pair::getValue1).filter(e -> e instanceof Operation).findFirst().get();
+    Expression primed = expr.prime();
+    assertNotSame(expr, primed);
+    assertEquals(original, program.toString());
+    assertEquals(fingerprint, program.getFingerprint());
+    assertNotEquals(expr.toString(), primed.toString());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void testGuardedTables_SerializedAndCloned_Success() throws Exception {
+    AtomicInteger guarded = new AtomicInteger();
+    GuardedArrayList<String> list = new GuardedArrayList<>(List.of("a", "b"));
+    GuardedHashMap<Integer, String> map = new GuardedHashMap<>(Map.of(1, "a", 2, "b"));
+    list.adopt(guarded::incrementAndGet);
+    map.adopt(guarded::incrementAndGet);
+    list.listIterator().add("c");
+    list.subList(1, 2).clear();
+    map.entrySet().iterator().next().setValue("c");
+    map.keySet().remove(2);
+    assertEquals(4, guarded.get());
+    assertEquals(List.of("c", "b"), list);
+    assertEquals(Map.of(1, "c"), map);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(list);
+      out.writeObject(map);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      List<String> readList = (List<String>) in.readObject();
+      Map<Integer, String> readMap = (Map<Integer, String>) in.readObject();
+      readList.listIterator().add("d");
+      readMap.entrySet().iterator().next().setValue("d");
+      assertEquals(List.of("d", "c", "b"), new ArrayList<>(readList.subList(0, 3)));
+      assertEquals(Map.of(1, "d"), Map.copyOf(readMap));
+    }
+
+    GuardedArrayList<String> listCopy = (GuardedArrayList<String>) list.clone();
+    GuardedHashMap<Integer, String> mapCopy = (GuardedHashMap<Integer, String>) map.clone();
+    listCopy.add("e");
+    mapCopy.put(3, "e");
+    assertEquals(List.of("c", "b", "e"), new ArrayList<>(listCopy));
+    assertEquals(Map.of(1, "c", 3, "e"), Map.copyOf(mapCopy));
+    assertEquals(4, guarded.get());
+  }
+
+  @Test
+  void testFreeze_ConcurrentVariants_Success() throws Exception {
+    Program reference = TestUtils.loadProgramByName("c6.c").freeze();
+    String original = reference.toString();
+    String expected = primeMain(reference.deepCopy());
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> variants = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        variants.add(executor.submit(() -> primeMain(reference.derive())));
+      }
+      for (Future<String> variant : variants) {
+        assertEquals(expected, variant.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(original, reference.toString());
+  }
+
+  /**
+   * Primes all expressions of the main function of the given program.
+   */
+  private String primeMain(Program program) {
+    Function function = program.getfnc(main);
+    for (int loc : new ArrayList<>(function.getLocations())) {
+      ArrayList<Pair<String, Expression>> exprs = new ArrayList<>();
+      for (Pair<String, Expression> pair : function.getExprs(loc)) {
+        exprs.add(new Pair<>(pair.getValue0(), pair.getValue1().prime()));
+      }
+      function.replaceLocExpressions(loc, exprs);
+    }
+    function.getCfgAnalysis();
+    return program.toString() + function.getFingerprint();
+  }
+
+  /**
+   * Rebuilds the function with reversed location ids.
+   */
+  private static Function renumber(Function function) {
+    int offset = function.getLocations().stream().max(Integer::compare).orElse(0) + 1;
+    Function.Builder builder = new Function.Builder(function.getName(), function.getParams(),
+        function.getRettype());
+    for (int loc : function.getLocations()) {
+      builder.addLocation(offset - loc, function.getLocdescAt(loc));
+      for (Pair<String, Expression> pair : function.getExprs(loc)) {
+        builder.addExpr(offset - loc, pair.getValue0(), pair.getValue1());
+      }
+    }
+    for (int loc : function.getLocations()) {
+      Integer t = function.getTrans(loc, true);
+      Integer f = function.getTrans(loc, false);
+      builder.setTransitions(offset - loc, t == null ? null : offset - t,
+          f == null ? null : offset - f);
+    }
+    function.getTypes().forEach(builder::addType);
+    return builder.setInitloc(offset - function.getInitloc()).build();
+  }
+}
@@ -0,0 +1,91 @@
+package sg.edu.nus.se.its.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sg.edu.nus.se.its.model.Input;
+import sg.edu.nus.se.its.model.Program;
+
+/**
+ * Tests the corpus store.
+ */
+public class CorpusStoreTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void testImportResources_MatchesFiles_AllModels() throws IOException {
+    Path models = Paths.get("src/test/resources/model");
+    Path inputs = Paths.get("src/test/resources/input");
+    List<String> ids;
+    try (CorpusStore store = CorpusStore.open(directory)) {
+      int count = store.importResources(models, inputs);
+      assertEquals(count, store.size());
+      assertEquals(0, store.importResources(models, inputs));
+      ids = store.getIds();
+    }
+
+    try (CorpusStore store = CorpusStore.open(directory)) {
+      assertEquals(ids, store.getIds());
+      for (String id : ids) {
+        Program program = TestUtils.loadProgramByFilePath(models.resolve(id + ".json").toString());
+        assertEquals(program.toString(), store.getProgram(id).toString());
+        assertEquals(program.toString(), store.getEntry(id).readLazyProgram().toString());
+        List<Input> expected = TestUtils.loadInputsByProgramName(id, true);
+        List<Input> actual = store.getInputs(id);
+        if (actual == null) {
+          assertEquals(Arrays.asList(new Input(null, null)).toString(), expected.toString());
+        } else {
+          assertEquals(expected.toString(), actual.toString());
+        }
+      }
+
+      List<String> scanned = new ArrayList<>();
+      for (CorpusStore.Entry entry : store) {
+        scanned.add(entry.getId());
+        assertEquals(store.getProgram(entry.getId()).toString(), entry.getProgram().toString());
+      }
+      assertEquals(ids, scanned);
+      assertNull(store.getProgram("missing"));
+    }
+  }
+
+  @Test
+  void testAdd_AppendsAfterReopen_Success() throws IOException {
+    Program program = TestUtils.loadProgramByName("c1.c");
+    List<Input> inputs = Arrays.asList(new Input(new String[] {"1", "2"}, new String[] {"x"}));
+    try (CorpusStore store = CorpusStore.open(directory)) {
+      store.add("first", program, inputs);
+      assertEquals(program.toString(), store.getProgram("first").toString());
+      assertThrows(IllegalArgumentException.class, () -> store.add("first", program, null));
+    }
+    try (CorpusStore store = CorpusStore.open(directory)) {
+      store.add("second", program, null);
+      assertEquals(Arrays.asList("first", "second"), store.getIds());
+      assertEquals(inputs.toString(), store.getInputs("first").toString());
+      assertNull(store.getInputs("second"));
+      assertEquals(program.toString(), store.getProgram("second").toString());
+    }
+  }
+
+  @Test
+  void testRead_AfterClose_Fails() throws IOException {
+    CorpusStore store = CorpusStore.open(directory);
+    store.add("first", TestUtils.loadProgramByName("c1.c"), null);
+    CorpusStore.Entry entry = store.getEntry("first");
+    entry.readProgram();
+    store.close();
+    assertThrows(IOException.class, entry::readProgram);
+    assertThrows(IOException.class, () -> store.getInputs("first"));
+  }
+}
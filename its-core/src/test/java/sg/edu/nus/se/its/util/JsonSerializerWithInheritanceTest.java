@@ -1,12 +1,20 @@
 package sg.edu.nus.se.its.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonParseException;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.Test;
+import sg.edu.nus.se.its.model.Constant;
 import sg.edu.nus.se.its.model.Expression;
+import sg.edu.nus.se.its.model.Operation;
 import sg.edu.nus.se.its.model.Program;
+import sg.edu.nus.se.its.model.Variable;
 
 /**
  * Tests the custom de-/serialization.
@@ -38,4 +46,46 @@ public class JsonSerializerWithInheritanceTest {
     assertEquals(sourceProgram.getWarns(), targetProgram.getWarns());
   }
 
+  @Test
+  void testFactory_DeepExpression_RoundTrip() {
+    Expression expr = new Variable("x", 1);
+    for (int i = 0; i < 10000; i++) {
+      expr = new Operation("+", new ArrayList<>(List.of(expr, new Constant("1", 1))), 1);
+    }
+    Gson factoryGson = new GsonBuilder()
+        .registerTypeAdapterFactory(new ModelTypeAdapterFactory()).create();
+    Gson serializerGson = new GsonBuilder()
+        .registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>())
+        .create();
+
+    // the serializer goes through JSON trees, which Gson writes recursively
+    Expression shallow = ((Operation) expr).getArgs().get(1);
+    shallow = new Operation("-", new ArrayList<>(List.of(new Variable("y", 2), shallow)), 2);
+    assertEquals(factoryGson.toJson(shallow, Expression.class),
+        serializerGson.toJson(shallow, Expression.class));
+
+    String json = factoryGson.toJson(expr, Expression.class);
+
+    Expression target = factoryGson.fromJson(json, Expression.class);
+    assertEquals(expr.toString(), target.toString());
+    assertEquals(json, factoryGson.toJson(target, Expression.class));
+    assertThrows(JsonParseException.class,
+        () -> factoryGson.fromJson("{\"name\":\"x\",\"tokentype\":\"Unknown\"}",
+            Expression.class));
+  }
+
+  @Test
+  void testDeserialize_CallerAdapters_Applied() {
+    Expression expr = new Operation("+",
+        new ArrayList<>(List.of(new Variable("x", 1), new Constant("1", 1))), 1);
+    String json = new GsonBuilder().registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+        .create().toJson(expr, Expression.class);
+    Gson gson = new GsonBuilder()
+        .registerTypeAdapter(Expression.class, new JsonSerializerWithInheritance<Expression>())
+        .registerTypeAdapter(Constant.class,
+            (JsonDeserializer<Constant>) (element, type, context) -> new Constant("2", 1))
+        .create();
+
+    assertEquals("+(x, 2)", gson.fromJson(json, Expression.class).toString(false));
+  }
 }
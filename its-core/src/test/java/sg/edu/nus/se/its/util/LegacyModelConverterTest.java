@@ -0,0 +1,90 @@
+package sg.edu.nus.se.its.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonSerializer;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.javatuples.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sg.edu.nus.se.its.model.Expression;
+import sg.edu.nus.se.its.model.Program;
+
+/**
+ * Tests the conversion of models from the old JSON format.
+ */
+public class LegacyModelConverterTest {
+
+  @TempDir
+  Path directory;
+
+  /**
+   * Writes the models of the test resources in the old format, in which tuples are arrays.
+   */
+  private List<Path> writeOldModels(Path models, Path target) throws IOException {
+    Gson gson = new GsonBuilder()
+        .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+        .registerTypeAdapter(Pair.class, (JsonSerializer<Pair<?, ?>>) (pair, type, context) -> {
+          JsonArray values = new JsonArray();
+          values.add(pair.getValue0() == null ? null : pair.getValue0().toString());
+          values.add(pair.getValue1() instanceof Expression
+              ? context.serialize(pair.getValue1(), Expression.class)
+              : context.serialize(pair.getValue1()));
+          return values;
+        })
+        .create();
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(models)) {
+      files = paths.filter(path -> path.toString().endsWith(".json")).sorted()
+          .collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      Program program = TestUtils.loadProgramByFilePath(file.toString());
+      Path old = target.resolve(models.relativize(file).toString());
+      Files.createDirectories(old.getParent());
+      try (Writer writer = Files.newBufferedWriter(old)) {
+        gson.toJson(program, writer);
+      }
+    }
+    return files;
+  }
+
+  @Test
+  void testConvert_EqualToOldLoader_AllModels() throws IOException {
+    Path models = Paths.get("src/test/resources/model");
+    Path old = directory.resolve("old");
+    Path converted = directory.resolve("new");
+    List<Path> files = writeOldModels(models, old);
+    Files.writeString(old.resolve("broken.json"), "{\"fncs\": {\"main\": [");
+
+    LegacyModelConverter.Report report = new LegacyModelConverter(2).convert(old, converted);
+    assertEquals(files.size(), report.getConverted());
+    assertEquals(List.of(old.resolve("broken.json")),
+        List.copyOf(report.getFailures().keySet()));
+    assertFalse(Files.exists(converted.resolve("broken.json")));
+    assertTrue(report.toString().startsWith(
+        String.format("Converted %d files (1 failed)", files.size())));
+
+    for (Path file : files) {
+      String relative = models.relativize(file).toString();
+      Program expected = TestUtils.loadProgramByFilePathOld(old.resolve(relative).toString());
+      Path reference = directory.resolve("reference.json");
+      assertTrue(TestUtils.storeProgramAsJsonFile(expected, reference.toString()));
+      assertEquals(Files.readString(reference), Files.readString(converted.resolve(relative)));
+      assertEquals(TestUtils.loadProgramByFilePath(file.toString()).toString(),
+          TestUtils.loadProgramByFilePath(converted.resolve(relative).toString()).toString());
+    }
+  }
+}